@@ -4,20 +4,40 @@
 *******************************************************************************/
 package com.ibm.streamsx.hdfs;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
 
 import com.ibm.streams.operator.logging.LogLevel;
 import com.ibm.streams.operator.logging.LoggerNames;
+import com.ibm.streams.operator.logging.TraceLevel;
+import com.ibm.streams.operator.metrics.Metric;
 
 
 public class AsyncBufferWriter extends Writer {
@@ -25,99 +45,943 @@ public class AsyncBufferWriter extends Writer {
 	private static final String CLASS_NAME = "com.ibm.streamsx.hdfs.AsyncBufferWriter"; 
 	private static Logger LOGGER = Logger.getLogger(LoggerNames.LOG_FACILITY + "." + CLASS_NAME); 
 	
-	private static final int BUFFER_QUEUE_SIZE = 3;
+	// lower limits of the adaptive sizing
+	static final int MIN_BUFFER_SIZE = 64 * 1024;
+	static final int MIN_BUFFER_COUNT = 2;
+	// shrink when filling a buffer takes this many times longer than flushing it ...
+	private static final int SHRINK_RATIO = 4;
+	// ... for this many buffers in a row
+	private static final int SHRINK_AFTER = 8;
+	// milliseconds between attempts to replay the spill log
+	private static final long SPILL_RETRY_INTERVAL = 2000;
 
 	
 	private byte[] buffer;
+	// view of the buffer that characters are encoded into, rewrapped when the buffer changes
+	private ByteBuffer fBufferView;
 	private byte[] fNewline;
+	// stream the flush thread writes to, the compression stream when compressing
+	// on the flush thread, otherwise the stream of the file
 	private OutputStream out;
-	private int size;
+	private OutputStream fRawOut;
 	private int position;
+
+	// size of new buffers and maximum number of buffers owned by this writer,
+	// the buffer being filled, the idle buffers and the buffers being flushed.
+	// Content that is too large for a buffer and written directly counts as
+	// as many buffers as it would fill while it is in flight.
+	private int fBufferSize;
+	private int fBufferCount;
+	private final int fMaxBufferSize;
+	private final int fMaxBufferCount;
+	private final boolean fAdaptive;
+	private int fBuffersOwned = 0;
+	private final Object bufferLock = new Object();
+	// set by the pool when its budget runs short, handled by the writing thread
+	private volatile boolean fShrinkRequested = false;
+
+	// adaptive sizing statistics
+	private long bufferStartTime;
+	private volatile long lastFlushLatency = 0;
+	private int slowFills = 0;
+
+	// counts the writes that had to wait for the in-flight budget
+	private Metric fStallMetric;
+	// time the writes waited, and time the syncs of the stream took
+	private LatencyStatistics fStallTime;
+	private LatencyStatistics fSyncLatency;
+
+	// content handed to the flush thread that is not written yet
+	private final AtomicInteger fInFlightBuffers = new AtomicInteger();
+	private final AtomicLong fInFlightBytes = new AtomicLong();
+
 	private boolean isClosed = false;
 	private ExecutorService exService;
 	private LinkedBlockingQueue<byte[]> bufferQueue;
-	private ThreadFactory fThreadFactory;
+	private BufferPool fBufferPool;
+	
+	private SyncMode fSyncMode = SyncMode.hflush;
+	private SyncPolicy fSyncPolicy = SyncPolicy.perBuffer;
+	private long fSyncBytes;
+	private long fSyncTime;
+	// only accessed by the flush thread, or after the flush jobs are finished
+	private long bytesSinceSync = 0;
+	private long lastSyncTime = System.currentTimeMillis();
+	// content written to the stream that is not synced yet, read by the linger check
+	private volatile boolean fUnsynced = false;
+	// time the linger check first saw content that is not written or not synced,
+	// only accessed by the writing thread
+	private boolean fLingering = false;
+	private long fLingerStart;
+	
+	// compression, the blocks are compressed independently on the compression 
+	// service if set, otherwise the flush thread writes through the codec stream
+	private CompressionCodec fCodec;
+	private ExecutorService fCompressionService;
+	private Compressor fStreamCompressor;
+	
+	// write-ahead spill, holds the content written since the last sync and
+	// all content while the stream fails, only accessed by the flush thread
+	private SpillLog fSpill;
+	private StreamReopener fReopener;
+	private FileTimerScheduler fSpillScheduler;
+	private boolean fSpilling = false;
+	private boolean fReplayScheduled = false;
+	private long fSyncedLength = 0;
+	// jobs that wait for the stream because the spill log is full, in order, they
+	// keep their buffers, so the writing thread waits for a buffer or for budget
+	private final ArrayDeque<Runnable> fBlocked = new ArrayDeque<Runnable>();
+	private boolean fResuming = false;
+	// set once the content of the spill log cannot be written, the file is failed
+	private volatile IOException fSpillError;
+	// set when close is interrupted, the writer stops waiting for the stream
+	private volatile boolean fGiveUp = false;
 	
 	private Object exServiceLock = new Object();
 	
+	/**
+	 * Opens the file again after its stream failed.
+	 */
+	interface StreamReopener {
+		/**
+		 * @param length	length of the content that is durable, the file is continued from there
+		 * @return the new stream of the file, positioned at the length
+		 */
+		FSDataOutputStream reopen(long length) throws IOException;
+	}
+	
 	private class FlushRunnable implements Runnable {
 		
 		protected byte[] flushBuffer;
 		private boolean isAddBuffer;
 		private int bufferPosition;
+		// start of the content, only content written directly may not start at 0
+		private int bufferOffset = 0;
 		private boolean newline;
+		private boolean policySync;
+		// buffers of the in-flight budget reserved for content written directly
+		private int budgetSlots = 0;
+		// the content compressed in parallel, written in the order of the runnables
+		private Future<byte[]> compressedBlock;
+		// counted as in flight until it is written
+		private boolean inFlight = false;
 		
-		public FlushRunnable(byte[] buffer, boolean addBuffer, int position, boolean newline) {
+		/**
+		 * @param policySync	if true, sync the stream after the write when the sync policy says so,
+		 * otherwise the caller is responsible for syncing
+		 */
+		public FlushRunnable(byte[] buffer, boolean addBuffer, int position, boolean newline, boolean policySync) {
 			flushBuffer = buffer;		
 			isAddBuffer = addBuffer;
 			bufferPosition = position;
 			this.newline = newline;
+			this.policySync = policySync;
 		}
 
 		@Override
 		public void run() {
+			if (waitsForBlocked(this)) {
+				return;
+			}
+			long start = System.nanoTime();
+			boolean blocked = false;
 			try {
-				out.write(flushBuffer, 0, bufferPosition);	
-				
-				if (newline && fNewline.length > 0)
-					out.write(fNewline, 0, fNewline.length);
-				
-				// force HDFS output stream to flush
-				if (out instanceof FSDataOutputStream)
-				{
-					((FSDataOutputStream)out).hflush();
+				if (fCompressionService != null) {
+					byte[] block = (compressedBlock != null) ? compressedBlock.get()
+							: compressBlock(flushBuffer, bufferOffset, bufferPosition, newline);
+					if (fSpill != null) {
+						blocked = !writeOrSpill(block, 0, block.length, false, policySync);
+					}
+					else {
+						out.write(block, 0, block.length);
+					}
+				}
+				else if (fSpill != null) {
+					blocked = !writeOrSpill(flushBuffer, bufferOffset, bufferPosition, newline, policySync);
 				}
 				else {
-					out.flush();
+					out.write(flushBuffer, bufferOffset, bufferPosition);	
+					
+					if (newline && fNewline.length > 0) {
+						out.write(fNewline, 0, fNewline.length);
+					}
+				}
+				if (blocked) {
+					// keeps its buffer until the stream is back
+					fBlocked.addFirst(this);
+					return;
 				}
+				if (fSpill == null) {
+					bytesSinceSync += bufferPosition;
+					if (newline)
+						bytesSinceSync += fNewline.length;
+					
+					if (policySync && isSyncDue()) {
+						sync();
+					}
+				}
+				fUnsynced = bytesSinceSync > 0;
+				if (isAddBuffer)
+					lastFlushLatency = System.nanoTime() - start;
 			} catch (IOException e) {
+				// the failure of the spill is logged once, and thrown to the writing thread
+				if (e != fSpillError)
+					LOGGER.log(LogLevel.ERROR, Messages.getString("HDFS_ASYNC_UNABLE_WRITE_TO_STREAMS"), e); 
+			} catch (ExecutionException e) {
+				LOGGER.log(LogLevel.ERROR, Messages.getString("HDFS_ASYNC_UNABLE_WRITE_TO_STREAMS"), e.getCause()); 
+			} catch (InterruptedException e) {
 				LOGGER.log(LogLevel.ERROR, Messages.getString("HDFS_ASYNC_UNABLE_WRITE_TO_STREAMS"), e); 
 			}		
 			finally {
-				if (isAddBuffer)
-					addBuffer();
+				if (!blocked)
+					release();
 			}
 		}
 
+		/**
+		 * Give the buffer or the budget of the written content back.
+		 */
+		private void release() {
+			if (inFlight) {
+				fInFlightBuffers.decrementAndGet();
+				fInFlightBytes.addAndGet(-bufferPosition);
+			}
+			if (isAddBuffer)
+				addBuffer();
+			else if (budgetSlots > 0)
+				releaseBudget(budgetSlots);
+		}
+
 		private void addBuffer() {
 			try {					
-				if (!isClosed && bufferQueue.size() <= BUFFER_QUEUE_SIZE)
-					bufferQueue.put(new byte[size]);
+				synchronized (bufferLock) {
+					// a direct write may wait for budget or an idle buffer
+					bufferLock.notifyAll();
+					// once closed, or when the writer owns more buffers than the
+					// current sizing, the flushed buffer goes back to the pool
+					if (isClosed || fBuffersOwned > fBufferCount) {
+						fBufferPool.release(flushBuffer);
+						fBuffersOwned--;
+						return;
+					}
+					// replace a buffer of the old size, the writer may wait for it,
+					// a smaller one is kept if the budget has no room for a larger one
+					if (flushBuffer.length != fBufferSize) {
+						flushBuffer = fBufferPool.exchange(flushBuffer, fBufferSize);
+					}
+					bufferQueue.put(flushBuffer);
+				}
 			} catch (InterruptedException e) {
 				LOGGER.log(LogLevel.INFO, Messages.getString("HDFS_ASYNC_UNABLE_ADD_TO_QUEUE"), e); 
 			}
 		}		
 	}
 
-	public AsyncBufferWriter(OutputStream outputStream, int size, ThreadFactory threadFactory, byte[] newline)  {
+	private boolean isSyncDue() {
+		switch (fSyncPolicy) {
+		case perBuffer:
+			return true;
+		case perBytes:
+			return bytesSinceSync >= fSyncBytes;
+		case perTime:
+			return System.currentTimeMillis() - lastSyncTime >= fSyncTime;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Force the output stream to make the written data durable as configured
+	 * by the sync mode.
+	 */
+	private void sync() throws IOException {
+		if (fSyncMode != SyncMode.none) {
+			long start = System.nanoTime();
+			if (out instanceof CompressionOutputStream) {
+				// end the compressed block, so that everything written
+				// so far can be decompressed, and start a new one
+				((CompressionOutputStream)out).finish();
+				((CompressionOutputStream)out).resetState();
+			}
+			if (fRawOut instanceof FSDataOutputStream)
+			{
+				if (fSyncMode == SyncMode.hsync)
+					((FSDataOutputStream)fRawOut).hsync();
+				else
+					((FSDataOutputStream)fRawOut).hflush();
+			}
+			else {
+				fRawOut.flush();
+			}
+			if (fSyncLatency != null)
+				fSyncLatency.record(System.nanoTime() - start);
+			if (fSpill != null && fSpillError == null) {
+				// everything written so far is durable, the copy is not needed anymore
+				fSyncedLength = ((FSDataOutputStream)fRawOut).getPos();
+				fSpill.clear();
+			}
+		}
+		bytesSinceSync = 0;
+		lastSyncTime = System.currentTimeMillis();
+		fUnsynced = false;
+	}
+
+	/**
+	 * Configure how and when written data is made durable.  Must be called
+	 * before the first write.
+	 * @param mode		hflush, hsync or none
+	 * @param policy	when to apply the sync mode
+	 * @param syncBytes	number of bytes between syncs for the perBytes policy
+	 * @param syncTime	milliseconds between syncs for the perTime policy
+	 */
+	public void setSync(SyncMode mode, SyncPolicy policy, long syncBytes, long syncTime) {
+		fSyncMode = mode;
+		fSyncPolicy = policy;
+		fSyncBytes = syncBytes;
+		fSyncTime = syncTime;
+	}
+
+	/**
+	 * Keep a local copy of the content that is not synced yet, and write to the
+	 * spill log instead of the stream once the stream fails.  The stream is opened
+	 * again in the background, and the content of the log is replayed in order
+	 * before the writer continues with the stream.  The sync mode must not be none,
+	 * and the stream of the writer must be an FSDataOutputStream.  Must be called
+	 * before the first write.
+	 * @param spill		the log, closed by the writer
+	 * @param reopener	opens the file again after the stream failed
+	 * @param scheduler	times the attempts to replay the log, the attempts run on the flush thread
+	 */
+	public void setSpill(SpillLog spill, StreamReopener reopener, FileTimerScheduler scheduler) {
+		fSpill = spill;
+		fReopener = reopener;
+		fSpillScheduler = scheduler;
+	}
+
+	/**
+	 * Write the content to the stream, or to the spill log while the stream fails.
+	 * Content written to the stream is also appended to the log until it is synced.
+	 * A full log syncs the stream, or replays the log while spilling.  If the stream
+	 * is still not back, the content is blocked until the replay timer brings the
+	 * stream back, so the writing thread waits for the stream instead of losing data.
+	 * Once the operator shuts down, the file fails instead.
+	 * @return true if the content is written or spilled, false if it is blocked
+	 * @throws IOException the failure of the file if the spill log cannot take the content
+	 */
+	private boolean writeOrSpill(byte[] src, int offset, int length, boolean newline, boolean policySync) throws IOException {
+		if (fSpillError != null) {
+			throw fSpillError;
+		}
+		int newlineLength = newline ? fNewline.length : 0;
+		if (!fSpilling) {
+			try {
+				out.write(src, offset, length);
+				if (newlineLength > 0) {
+					out.write(fNewline, 0, newlineLength);
+				}
+				bytesSinceSync += length + newlineLength;
+				if ((policySync && isSyncDue()) || !fSpill.fits(length + newlineLength)) {
+					sync();
+					return true;
+				}
+			} catch (IOException e) {
+				startSpilling(e);
+			}
+		}
+		if (fSpilling && !fSpill.fits(length + newlineLength)) {
+			if (replay()) {
+				return writeOrSpill(src, offset, length, newline, policySync);
+			}
+			if (isReplayStopped()) {
+				throw failSpill(null);
+			}
+			return false;
+		}
+		try {
+			fSpill.append(src, offset, length);
+			if (newlineLength > 0) {
+				fSpill.append(fNewline, 0, newlineLength);
+			}
+		} catch (IOException e) {
+			throw failSpill(e);
+		}
+		return true;
+	}
+
+	private void startSpilling(IOException cause) {
+		if (fSpillError != null) {
+			LOGGER.log(LogLevel.ERROR, Messages.getString("HDFS_ASYNC_UNABLE_WRITE_TO_STREAMS"), cause); 
+			return;
+		}
+		LOGGER.log(LogLevel.WARN, Messages.getString("HDFS_ASYNC_SPILL_START", fSpill.getPath()), cause); 
+		fSpilling = true;
+		scheduleReplay();
+	}
+
+	/**
+	 * Open the file again at the synced length, write the content of the spill log
+	 * to it and sync it.
+	 * @return true if the writer continues with the stream, false if it is still spilling
+	 */
+	private boolean replay() {
+		try {
+			// the failed stream may not close, the file is recovered by the reopener
+			try {
+				fRawOut.close();
+			} catch (IOException e) {
+				LOGGER.log(TraceLevel.DEBUG, "Unable to close failed stream", e); 
+			}
+			fRawOut = fReopener.reopen(fSyncedLength);
+			out = fRawOut;
+			if (fStreamCompressor != null) {
+				// continue with a new compressed block, the file is synced at a block boundary
+				fStreamCompressor.reset();
+				out = fCodec.createOutputStream(fRawOut, fStreamCompressor);
+			}
+			fSpill.replay(out);
+			sync();
+			fSpilling = false;
+			LOGGER.log(LogLevel.INFO, Messages.getString("HDFS_ASYNC_SPILL_END", fSpill.getPath())); 
+			return true;
+		} catch (IOException e) {
+			LOGGER.log(TraceLevel.DEBUG, "Unable to replay spill file " + fSpill.getPath(), e); 
+			return false;
+		}
+	}
+
+	/**
+	 * Try to replay the spill log on the flush thread after the retry interval,
+	 * and again after every failed attempt as long as the writer spills.  Once the
+	 * stream is back, the blocked content is written.
+	 */
+	private void scheduleReplay() {
+		if (fReplayScheduled)
+			return;
+		fReplayScheduled = true;
+		final Runnable replay = new Runnable() {
+			@Override
+			public void run() {
+				fReplayScheduled = false;
+				if (fSpilling && replay()) {
+					resumeBlocked();
+				}
+				if (fSpilling) {
+					scheduleReplay();
+				}
+			}
+		};
+		try {
+			fSpillScheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						exService.execute(replay);
+					} catch (RejectedExecutionException e) {
+						// closed, nothing is spilled anymore
+					}
+				}
+			}, SPILL_RETRY_INTERVAL, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// the operator shuts down, the waiting threads give up the file
+			fReplayScheduled = false;
+		}
+	}
+
+	/**
+	 * @return true once the replay of the spill log is no longer timed, because the
+	 * operator shuts down or close was interrupted
+	 */
+	private boolean isReplayStopped() {
+		return fGiveUp || fSpillScheduler.isShutdown();
+	}
+
+	/**
+	 * Queue the job behind the blocked content, so that the content is written
+	 * in order.  Called by the jobs of the flush thread before they write or sync.
+	 * @return true if the job is queued, it runs once the content before it is written
+	 */
+	private boolean waitsForBlocked(Runnable job) {
+		if (fResuming || fBlocked.isEmpty()) {
+			return false;
+		}
+		fBlocked.addLast(job);
+		return true;
+	}
+
+	/**
+	 * Run the blocked jobs in order, until one is blocked again.
+	 */
+	private void resumeBlocked() {
+		boolean resuming = fResuming;
+		fResuming = true;
+		try {
+			Runnable next;
+			while ((next = fBlocked.pollFirst()) != null) {
+				next.run();
+				if (fBlocked.peekFirst() == next) {
+					break;
+				}
+			}
+		} finally {
+			fResuming = resuming;
+		}
+	}
+
+	/**
+	 * Replay the spill log a last time if content is blocked and the replay is
+	 * no longer timed, and fail the file if the stream is still not back.  Called
+	 * by the threads that wait for the blocked content, so they do not wait forever
+	 * once the operator shuts down.
+	 */
+	private void giveUpIfStopped() {
+		if (fSpill == null || !isReplayStopped())
+			return;
+		try {
+			exService.execute(new Runnable() {
+				@Override
+				public void run() {
+					if (fBlocked.isEmpty())
+						return;
+					if (replay()) {
+						resumeBlocked();
+					}
+					if (!fBlocked.isEmpty()) {
+						failSpill(null);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// closed, nothing is blocked anymore
+		}
+	}
+
+	/**
+	 * Stop spilling and keep the spill log, its content cannot be written.  The
+	 * blocked content is dropped, which wakes up the writing thread.
+	 * @param cause		failure of the spill log, null if the stream is not back
+	 * @return the error of the file, thrown by every further write and by close
+	 */
+	private IOException failSpill(IOException cause) {
+		fSpilling = false;
+		fSpillError = new IOException(Messages.getString("HDFS_ASYNC_SPILL_KEPT", fSpill.getPath()), cause);
+		LOGGER.log(LogLevel.ERROR, fSpillError.getMessage(), cause); 
+		try {
+			fSpill.close(false);
+		} catch (IOException e) {
+			LOGGER.log(TraceLevel.DEBUG, "Unable to close spill file " + fSpill.getPath(), e); 
+		}
+		resumeBlocked();
+		return fSpillError;
+	}
+
+	/**
+	 * Make everything durable before the stream is closed.  While the stream fails,
+	 * the job is blocked like the content until the replay timer brings the stream
+	 * back; once the operator shuts down, the spill log is replayed a last time and
+	 * kept if that fails.  The spill log is deleted once its content is written.
+	 * @param job		the job that finishes the spill, blocked while the stream fails
+	 * @param finished	counted down once the spill is finished or failed
+	 */
+	private void finishSpill(Runnable job, CountDownLatch finished) {
+		if (waitsForBlocked(job)) {
+			return;
+		}
+		if (fSpillError == null && !fSpilling) {
+			try {
+				sync();
+			} catch (IOException e) {
+				startSpilling(e);
+			}
+		}
+		if (fSpilling && !replay()) {
+			if (!isReplayStopped()) {
+				fBlocked.addFirst(job);
+				return;
+			}
+			failSpill(null);
+		}
+		if (fSpillError == null) {
+			try {
+				fSpill.close(true);
+			} catch (IOException e) {
+				LOGGER.log(TraceLevel.DEBUG, "Unable to close spill file " + fSpill.getPath(), e); 
+			}
+		}
+		finished.countDown();
+	}
+
+	/**
+	 * Wait for the flush thread to count down the latch.  While content is blocked
+	 * the wait gives up the file once the operator shuts down.
+	 */
+	private void awaitSpill(CountDownLatch done) throws InterruptedException {
+		while (!done.await(SPILL_RETRY_INTERVAL, TimeUnit.MILLISECONDS)) {
+			giveUpIfStopped();
+		}
+	}
+
+	/**
+	 * Compress the written data with the codec.  Must be called before the first write.
+	 * @param codec					the codec to compress with
+	 * @param compressionService	if set, every buffer is compressed on this service into
+	 * an independent block and the blocks are written in order, the format of the codec must 
+	 * allow concatenated blocks; if null, the data is compressed on the flush thread as one stream 
+	 */
+	public void setCompression(CompressionCodec codec, ExecutorService compressionService) throws IOException {
+		fCodec = codec;
+		fCompressionService = compressionService;
+		if (compressionService == null) {
+			fStreamCompressor = CodecPool.getCompressor(codec);
+			out = codec.createOutputStream(fRawOut, fStreamCompressor);
+		}
+	}
+
+	/**
+	 * Compress the content into a complete block of the codec's format, that 
+	 * can be decompressed on its own.
+	 */
+	private byte[] compressBlock(byte[] src, int offset, int length, boolean newline) throws IOException {
+		Compressor compressor = CodecPool.getCompressor(fCodec);
+		try {
+			ByteArrayOutputStream block = new ByteArrayOutputStream(length / 2 + 64);
+			CompressionOutputStream compressed = fCodec.createOutputStream(block, compressor);
+			compressed.write(src, offset, length);
+			if (newline && fNewline.length > 0) {
+				compressed.write(fNewline, 0, fNewline.length);
+			}
+			compressed.finish();
+			return block.toByteArray();
+		} finally {
+			CodecPool.returnCompressor(compressor);
+		}
+	}
+
+	/**
+	 * Start compressing the content on the compression service, the content
+	 * must not be changed until the returned block is written.
+	 */
+	private Future<byte[]> submitCompression(final byte[] src, final int offset, final int length, final boolean newline) {
+		return fCompressionService.submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				return compressBlock(src, offset, length, newline);
+			}
+		});
+	}
+
+	/**
+	 * @param size			size of the buffers in bytes, the upper limit in adaptive mode
+	 * @param bufferCount	number of buffers, including the one being filled and the ones
+	 * being flushed, the upper limit in adaptive mode
+	 * @param adaptive		if true, start with small buffers and grow or shrink size and number
+	 * of the buffers depending on how fast they are filled compared to how fast they are flushed 
+	 */
+	public AsyncBufferWriter(OutputStream outputStream, int size, int bufferCount, boolean adaptive,
+			ThreadFactory threadFactory, byte[] newline, BufferPool bufferPool)  {
 	
 		out = outputStream;
-		this.size = size;
+		fRawOut = outputStream;
+		if (outputStream instanceof FSDataOutputStream)
+			fSyncedLength = ((FSDataOutputStream)outputStream).getPos();
+		fMaxBufferSize = size;
+		fMaxBufferCount = Math.max(1, bufferCount);
+		fAdaptive = adaptive;
+		if (adaptive) {
+			fBufferSize = Math.min(MIN_BUFFER_SIZE, fMaxBufferSize);
+			fBufferCount = Math.min(MIN_BUFFER_COUNT, fMaxBufferCount);
+		} else {
+			fBufferSize = fMaxBufferSize;
+			fBufferCount = fMaxBufferCount;
+		}
 		fNewline = newline;
-		fThreadFactory = threadFactory;
+		fBufferPool = bufferPool;
 		
-		initExServiceAndBuffer(size, threadFactory);
+		initExServiceAndBuffer(threadFactory);
 	}
 
-	private void initExServiceAndBuffer(int size, ThreadFactory threadFactory) {
+	private void initExServiceAndBuffer(ThreadFactory threadFactory) {
 
 		synchronized (exServiceLock) {
 			exService = Executors.newSingleThreadExecutor(threadFactory);
-			bufferQueue = new LinkedBlockingQueue<byte[]>(BUFFER_QUEUE_SIZE);
-			try {
-				for (int i = 0; i < BUFFER_QUEUE_SIZE; i++) {
-					bufferQueue.put(new byte[size]);
+			bufferQueue = new LinkedBlockingQueue<byte[]>();
+			// only the buffer to fill is taken now, the others 
+			// are taken from the pool when they are needed
+			synchronized (bufferLock) {
+				buffer = fBufferPool.acquire(fBufferSize);
+				fBuffersOwned = 1;
+			}
+			fBufferPool.register(this);
+			bufferStartTime = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Return the next buffer to fill, an idle one, a new one as long as the writer
+	 * owns less than the buffer count and the budget of the pool has room for it,
+	 * or else the next one that is flushed.
+	 * @return time in nanoseconds the caller had to wait for the buffer
+	 */
+	private long nextBuffer() throws InterruptedException {
+		synchronized (bufferLock) {
+			byte[] idle = bufferQueue.poll();
+			if (idle == null && fBuffersOwned < fBufferCount) {
+				idle = fBufferPool.tryAcquire(fBufferSize);
+				if (idle != null)
+					fBuffersOwned++;
+			}
+			if (idle != null) {
+				buffer = idle;
+				return 0;
+			}
+		}
+		countStall();
+		long start = System.nanoTime();
+		buffer = takeBuffer();
+		long waitTime = System.nanoTime() - start;
+		recordStall(waitTime);
+		return waitTime;
+	}
+
+	/**
+	 * Wait for a buffer that comes back from flushing.  While content is blocked
+	 * by a full spill log, the wait gives up the file once the operator shuts down.
+	 */
+	private byte[] takeBuffer() throws InterruptedException {
+		if (fSpill == null)
+			return bufferQueue.take();
+		byte[] next;
+		while ((next = bufferQueue.poll(SPILL_RETRY_INTERVAL, TimeUnit.MILLISECONDS)) == null) {
+			giveUpIfStopped();
+		}
+		return next;
+	}
+
+	/**
+	 * Reserve room in the in-flight budget for content that is written directly,
+	 * blocking while the budget is exhausted.  Idle buffers are returned to the
+	 * pool to make room.  Content larger than the whole budget is let through
+	 * once nothing but the buffer being filled is left.
+	 * @param length	number of bytes to write
+	 * @return number of buffers reserved, to be passed to releaseBudget
+	 */
+	private int acquireBudget(int length) throws InterruptedException {
+		synchronized (bufferLock) {
+			int slots = (int) ((length + (long) fBufferSize - 1) / fBufferSize);
+			boolean stalled = false;
+			long start = 0;
+			while (!isClosed) {
+				byte[] idle;
+				while (fBuffersOwned + slots > fBufferCount && (idle = bufferQueue.poll()) != null) {
+					fBufferPool.release(idle);
+					fBuffersOwned--;
+				}
+				if (fBuffersOwned + slots <= fBufferCount || fBuffersOwned <= 1)
+					break;
+				if (!stalled) {
+					stalled = true;
+					start = System.nanoTime();
+				}
+				if (fSpill != null) {
+					bufferLock.wait(SPILL_RETRY_INTERVAL);
+					giveUpIfStopped();
+				}
+				else {
+					bufferLock.wait();
+				}
+			}
+			if (stalled) {
+				countStall();
+				recordStall(System.nanoTime() - start);
+			}
+			fBuffersOwned += slots;
+			return slots;
+		}
+	}
+
+	private void releaseBudget(int slots) {
+		synchronized (bufferLock) {
+			fBuffersOwned -= slots;
+			bufferLock.notifyAll();
+		}
+	}
+
+	private void countStall() {
+		if (fStallMetric != null)
+			fStallMetric.increment();
+	}
+
+	private void recordStall(long nanos) {
+		if (fStallTime != null)
+			fStallTime.record(nanos);
+	}
+
+	/**
+	 * @param stallMetric	metric to count the writes that had to wait for a buffer
+	 * or for room in the in-flight budget, may be shared by several writers
+	 */
+	public void setStallMetric(Metric stallMetric) {
+		fStallMetric = stallMetric;
+	}
+
+	/**
+	 * The statistics may be shared by several writers.
+	 * @param stallTime		records how long the writes waited for a buffer or for room in the in-flight budget
+	 * @param syncLatency	records how long the syncs of the stream took
+	 */
+	public void setLatencyStatistics(LatencyStatistics stallTime, LatencyStatistics syncLatency) {
+		fStallTime = stallTime;
+		fSyncLatency = syncLatency;
+	}
+
+	/**
+	 * @return number of buffers, and of direct writes, handed to the flush thread and not written yet
+	 */
+	public int getInFlightBuffers() {
+		return fInFlightBuffers.get();
+	}
+
+	/**
+	 * @return number of bytes in the buffer being filled and handed to the flush thread
+	 * and not written yet, the buffer being filled is read without synchronization
+	 */
+	public long getBufferedBytes() {
+		return position + fInFlightBytes.get();
+	}
+
+	/**
+	 * Hand the runnable to the flush thread, must be called with the exServiceLock.
+	 */
+	private void submit(FlushRunnable runnable) {
+		runnable.inFlight = true;
+		fInFlightBuffers.incrementAndGet();
+		fInFlightBytes.addAndGet(runnable.bufferPosition);
+		exService.execute(runnable);
+	}
+
+	/**
+	 * Adjust size and number of the buffers after a full buffer was handed to the 
+	 * flush thread.  If the writer had to wait for a buffer, or flushing takes longer 
+	 * than filling, first add a buffer, then double the buffer size.  If filling takes 
+	 * much longer than flushing for a while, first halve the buffer size, then remove 
+	 * a buffer.  Buffers of the old size are replaced as they come back from flushing.
+	 * The buffering does not grow while the pool is under pressure.
+	 */
+	private void adapt(long fillTime, long waitTime) {
+		long flushLatency = lastFlushLatency;
+		synchronized (bufferLock) {
+			if (waitTime > 0 || flushLatency > fillTime) {
+				slowFills = 0;
+				if (fBufferPool.isUnderPressure())
+					return;
+				if (fBufferCount < fMaxBufferCount)
+					fBufferCount++;
+				else if (fBufferSize < fMaxBufferSize)
+					fBufferSize = (int) Math.min((long) fBufferSize * 2, fMaxBufferSize);
+			} else if (fillTime > SHRINK_RATIO * flushLatency && ++slowFills >= SHRINK_AFTER) {
+				slowFills = 0;
+				shrink();
+			}
+		}
+	}
+
+	/**
+	 * Halve the buffer size, or remove a buffer once the size is at its lower
+	 * limit.  Must be called with the bufferLock.
+	 */
+	private void shrink() {
+		int minSize = Math.min(MIN_BUFFER_SIZE, fMaxBufferSize);
+		if (fBufferSize > minSize)
+			fBufferSize = Math.max(fBufferSize / 2, minSize);
+		else if (fBufferCount > Math.min(MIN_BUFFER_COUNT, fMaxBufferCount))
+			fBufferCount--;
+	}
+
+	/**
+	 * Go back to the configured sizing of a writer that is not adaptive once
+	 * the pool is no longer under pressure.
+	 */
+	private void restoreSizing() {
+		synchronized (bufferLock) {
+			if ((fBufferSize < fMaxBufferSize || fBufferCount < fMaxBufferCount)
+					&& !fBufferPool.isUnderPressure()) {
+				fBufferSize = fMaxBufferSize;
+				fBufferCount = fMaxBufferCount;
+			}
+		}
+	}
+
+	/**
+	 * Ask the writer to flush early and to shrink its buffering, because the
+	 * budget of the pool runs short.  The flush thread shrinks the buffering and
+	 * gives the idle buffers that no longer match it back to the pool right away,
+	 * so writers that receive no records give memory back too.  The buffer being
+	 * filled is written early by {@link #shrinkIfRequested()}.
+	 */
+	void requestShrink() {
+		if (fShrinkRequested)
+			return;
+		fShrinkRequested = true;
+		try {
+			exService.execute(new Runnable() {
+				@Override
+				public void run() {
+					releaseSurplusBuffers();
 				}
+			});
+		} catch (RejectedExecutionException e) {
+			// closed, the buffers are back in the pool
+		}
+	}
 
-				// take one buffer, two left in the queue
-				buffer = bufferQueue.take();
-			} catch (InterruptedException e) {
-				LOGGER.log(LogLevel.ERROR,
-						Messages.getString("HDFS_ASYNC_INVALID_BUFFER_QUEUE"), e); 
+	/**
+	 * Shrink the buffering and give the idle buffers that no longer match the
+	 * sizing back to the pool, the others go back as they come back from flushing.
+	 */
+	private void releaseSurplusBuffers() {
+		synchronized (bufferLock) {
+			if (isClosed)
+				return;
+			shrink();
+			Iterator<byte[]> idle = bufferQueue.iterator();
+			while (idle.hasNext()) {
+				byte[] idleBuffer = idle.next();
+				if (fBuffersOwned > fBufferCount || idleBuffer.length != fBufferSize) {
+					idle.remove();
+					fBufferPool.release(idleBuffer);
+					fBuffersOwned--;
+				}
 			}
 		}
 	}
 
+	/**
+	 * Flush the current buffer early if the pool asked for it.  Must be called
+	 * by the writing thread between two records, or synchronized with it.
+	 * @throws IOException 
+	 */
+	public void shrinkIfRequested() throws IOException {
+		if (!fShrinkRequested)
+			return;
+		fShrinkRequested = false;
+		synchronized (exServiceLock) {
+			if (isClosed)
+				return;
+			flush(false);
+		}
+	}
+
+	public int getBufferSize() {
+		synchronized (bufferLock) {
+			return fBufferSize;
+		}
+	}
+
+	public int getBufferCount() {
+		synchronized (bufferLock) {
+			return fBufferCount;
+		}
+	}
+
 	@Override
 	public void close() throws IOException {		
 		synchronized(exServiceLock) {
@@ -125,6 +989,31 @@ public class AsyncBufferWriter extends Writer {
 		{
 			isClosed = true;
 			
+			if (fSpill != null) {
+				// the last buffer is written behind the blocked content, and the spill
+				// is finished on the flush thread, which waits for the stream
+				if (position > 0) {
+					submit(new FlushRunnable(buffer, false, position, false, false));
+					position = 0;
+				}
+				final CountDownLatch finished = new CountDownLatch(1);
+				exService.execute(new Runnable() {
+					@Override
+					public void run() {
+						finishSpill(this, finished);
+					}
+				});
+				while (true) {
+					try {
+						awaitSpill(finished);
+						break;
+					} catch (InterruptedException e) {
+						LOGGER.log(LogLevel.WARN, Messages.getString("HDFS_ASYNC_SERVICE_SHUTDOWN_INTERRUPTED"), e); 
+						fGiveUp = true;
+					}
+				}
+			}
+			
 			// shut down the execution service, so no other flush runnable can be scheduled 
 			// and wait for any flush job currently scheduled or running to finish
 			exService.shutdown();
@@ -134,28 +1023,87 @@ public class AsyncBufferWriter extends Writer {
 				LOGGER.log(LogLevel.WARN, Messages.getString("HDFS_ASYNC_SERVICE_SHUTDOWN_INTERRUPTED"), e); 
 			}finally {
 				
-				// do final flushing of buffer
-				flushNow();
-				out.close();
-				bufferQueue.clear();
+				// do final flushing of buffer, closing the stream
+				// makes the data durable
+				try {
+					if (fSpill == null)
+						flushNow();
+					if (fSpillError != null) {
+						try {
+							fRawOut.close();
+						} catch (IOException e) {
+							LOGGER.log(TraceLevel.DEBUG, "Unable to close failed stream", e); 
+						}
+						throw fSpillError;
+					}
+					out.close();
+				} finally {
+					if (fStreamCompressor != null) {
+						CodecPool.returnCompressor(fStreamCompressor);
+						fStreamCompressor = null;
+					}
+					releaseBuffers();
+				}
 			}
 		}		
 	}
 	}
 
+	/**
+	 * Return the current buffer and the idle buffers of the queue to the pool.
+	 * Must only be called when no flush job is scheduled or running.
+	 */
+	private void releaseBuffers() {
+		fBufferPool.unregister(this);
+		synchronized (bufferLock) {
+			fBufferPool.release(buffer);
+			buffer = null;
+			byte[] queued;
+			while ((queued = bufferQueue.poll()) != null) {
+				fBufferPool.release(queued);
+			}
+			fBuffersOwned = 0;
+		}
+	}
+
 	@Override
 	public void flush() throws IOException {
+		flush(false);
+	}
+
+	/**
+	 * Hand the current buffer to the flush thread and continue with the next one.
+	 * @param full	true if the buffer is flushed because it is full, only then the
+	 * timing is representative for the adaptive sizing
+	 */
+	private void flush(boolean full) throws IOException {
 
-		if (buffer.length > 0) {
+		if (fSpillError != null) {
+			throw fSpillError;
+		}
+		if (buffer != null && position > 0) {
 			synchronized (exServiceLock) {
 				FlushRunnable runnable = new FlushRunnable(buffer, true,
-						position, false);
-				exService.execute(runnable);
+						position, false, true);
+				if (fCompressionService != null)
+					runnable.compressedBlock = submitCompression(buffer, 0, position, false);
+				submit(runnable);
+				long fillTime = System.nanoTime() - bufferStartTime;
 
 				try {
-					if (!isClosed)
-						buffer = bufferQueue.take();
+					if (!isClosed) {
+						long waitTime = nextBuffer();
+						if (fAdaptive && full)
+							adapt(fillTime, waitTime);
+						else if (full)
+							restoreSizing();
+					}
 					position = 0;
+					bufferStartTime = System.nanoTime();
+					if (fSyncPolicy == SyncPolicy.perBuffer) {
+						// the flushed content is synced, the content that lingers now is newer
+						fLingering = false;
+					}
 				} catch (InterruptedException e) {
 					LOGGER.log(LogLevel.ERROR,
 							Messages.getString("HDFS_ASYNC_UNABLE_GET_BUFFER_QUEUE"), e); 
@@ -165,36 +1113,122 @@ public class AsyncBufferWriter extends Writer {
 	}
 	
 	protected void flushNow() throws IOException {
-		if (buffer.length > 0)
+		if (buffer != null && buffer.length > 0)
 		{
-			FlushRunnable runnable = new FlushRunnable(buffer, false, position, false);
+			FlushRunnable runnable = new FlushRunnable(buffer, false, position, false, false);
 			runnable.run();
 			position = 0;
 		}
 	}
 	
+	/**
+	 * Write everything written so far and make it durable, regardless of the sync
+	 * policy.  The current buffer is handed to the flush thread like a full one,
+	 * followed by a barrier that syncs the stream once the buffers submitted before
+	 * it are written.  Content blocked by a full spill log is waited for.  The flush
+	 * thread and the buffers are kept.
+	 * @throws IOException the failure of the spill, if the content cannot be written
+	 */
 	public void flushAll() throws IOException
 	{
+		final CountDownLatch barrier = new CountDownLatch(1);
 		synchronized(exServiceLock) {
-			// shut down the execution service, so no other flush runnable can be scheduled 
-			// and wait for any flush job currently scheduled or running to finish
-			exService.shutdown();
-			try {
-				exService.awaitTermination(Integer.MAX_VALUE, TimeUnit.SECONDS);
-			} catch (InterruptedException e) {
-				LOGGER.log(LogLevel.WARN, Messages.getString("HDFS_ASYNC_SERVICE_SHUTDOWN_INTERRUPTED"), e); 
-			}finally {
+			if (isClosed)
+				return;
 
-				// do final flushing of buffer
-				flushNow();
-				
-				// after flushing, recreate exService
-				initExServiceAndBuffer(size, fThreadFactory);
-			}
+			flush(false);
+			exService.execute(new Runnable() {
+				@Override
+				public void run() {
+					if (waitsForBlocked(this)) {
+						return;
+					}
+					try {
+						if (fSpillError != null) {
+							return;
+						}
+						if (fSpilling) {
+							// durable once the spill log is replayed
+							replay();
+						}
+						else {
+							sync();
+						}
+					} catch (IOException e) {
+						if (fSpill != null) {
+							startSpilling(e);
+						}
+						else {
+							LOGGER.log(LogLevel.ERROR, Messages.getString("HDFS_ASYNC_UNABLE_WRITE_TO_STREAMS"), e); 
+						}
+					} finally {
+						barrier.countDown();
+					}
+				}
+			});
+		}
+
+		// wait outside the lock, so that direct writes of other threads are not held up
+		try {
+			awaitSpill(barrier);
+		} catch (InterruptedException e) {
+			LOGGER.log(LogLevel.WARN, Messages.getString("HDFS_ASYNC_SERVICE_SHUTDOWN_INTERRUPTED"), e); 
+		}
+		if (fSpillError != null) {
+			throw fSpillError;
 		}
 	}
 	
 
+	/**
+	 * Write and sync the content once it has been held back for the delay, even
+	 * if the buffer is not full and the sync policy does not sync yet.  Called
+	 * periodically by the writing thread, or synchronized with it, the age of the
+	 * content is counted from the first call that sees it, so content waits at most
+	 * the delay plus the period of the calls.  Does not wait for the write.
+	 * @param maxDelay	milliseconds content may be held back
+	 * @return true if the content was handed to the flush thread
+	 */
+	public boolean flushIfLingering(long maxDelay) throws IOException
+	{
+		synchronized(exServiceLock) {
+			if (isClosed || (position == 0 && !fUnsynced)) {
+				fLingering = false;
+				return false;
+			}
+			long now = System.currentTimeMillis();
+			if (!fLingering) {
+				fLingering = true;
+				fLingerStart = now;
+			}
+			if (now - fLingerStart < maxDelay)
+				return false;
+
+			flush(false);
+			fLingering = false;
+			exService.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						// the buffer may be synced by its policy already, a spilling
+						// writer syncs once the spill log is replayed
+						if (!fSpilling && fSpillError == null && bytesSinceSync > 0) {
+							sync();
+						}
+					} catch (IOException e) {
+						if (fSpill != null) {
+							startSpilling(e);
+						}
+						else {
+							LOGGER.log(LogLevel.ERROR, Messages.getString("HDFS_ASYNC_UNABLE_WRITE_TO_STREAMS"), e); 
+						}
+					}
+				}
+			});
+			return true;
+		}
+	}
+
 	@Override
 	public void write(char[] src, int offset, int len) throws IOException {		
 		throw new UnsupportedOperationException();
@@ -209,29 +1243,197 @@ public class AsyncBufferWriter extends Writer {
 	public void write(byte[] src) throws IOException {
 		
 		// if exceed buffer
-		if((position+src.length+fNewline.length) > size)
+		if((position+src.length+fNewline.length) > buffer.length)
 		{
 			// flush the buffer
-			flush();
+			flush(true);
 			
-			// write new content			
-			synchronized (exServiceLock) {
-				FlushRunnable runnable = new FlushRunnable(src, false,
-						src.length, true);
-				exService.execute(runnable);
+			// content that does not fit into the next buffer either,
+			// which may have grown, is written directly once there
+			// is room for it in the in-flight budget
+			if ((src.length+fNewline.length) > buffer.length) {
+				writeDirect(src, 0, src.length);
+				return;
 			}
+		}
+		
+		// store in buffer			
+		System.arraycopy(src, 0, buffer, position, src.length);
+		position += src.length;
+		System.arraycopy(fNewline, 0, buffer, position, fNewline.length);
+		position+= fNewline.length;
+	}
+	
+	/**
+	 * Hand the content to the flush thread without copying it, once there is
+	 * room for it in the in-flight budget.  The content is followed by a newline, 
+	 * and must not be changed until it is written.
+	 */
+	private void writeDirect(byte[] src, int offset, int length) throws IOException {
+		if (fSpillError != null) {
+			throw fSpillError;
+		}
+		FlushRunnable runnable = new FlushRunnable(src, false,
+				length, true, true);
+		runnable.bufferOffset = offset;
+		try {
+			runnable.budgetSlots = acquireBudget(length + fNewline.length);
+		} catch (InterruptedException e) {
+			LOGGER.log(LogLevel.ERROR,
+					Messages.getString("HDFS_ASYNC_UNABLE_GET_BUFFER_QUEUE"), e); 
+		}
+		synchronized (exServiceLock) {
+			if (fCompressionService != null)
+				runnable.compressedBlock = submitCompression(src, offset, length, true);
+			submit(runnable);
+		}
+	}
+
+	/**
+	 * Write the content of the byte buffer, followed by a newline.  The content is
+	 * copied once into the buffer, content that does not fit into a buffer is 
+	 * handed to the flush thread without copying if it is backed by an array, 
+	 * otherwise it is copied into as many buffers as it needs.
+	 * @param src	content to write, from its position to its limit, consumed by the call
+	 * @throws IOException 
+	 */
+	public void write(ByteBuffer src) throws IOException {
+		int length = src.remaining();
+		
+		if((position+length+fNewline.length) > buffer.length)
+		{
+			flush(true);
 			
+			if ((length+fNewline.length) > buffer.length) {
+				if (src.hasArray()) {
+					writeDirect(src.array(), src.arrayOffset() + src.position(), length);
+					src.position(src.limit());
+					return;
+				}
+				while (src.hasRemaining()) {
+					if (position == buffer.length)
+						flush(true);
+					int chunk = Math.min(src.remaining(), buffer.length - position);
+					src.get(buffer, position, chunk);
+					position += chunk;
+				}
+				writeNewline();
+				return;
+			}
+		}
+		
+		src.get(buffer, position, length);
+		position += length;
+		System.arraycopy(fNewline, 0, buffer, position, fNewline.length);
+		position+= fNewline.length;
+	}
+
+	/**
+	 * Append content to the record being written, the content continues in the
+	 * next buffer if it does not fit.  The record is ended by writeNewline.
+	 * @throws IOException 
+	 */
+	public void append(byte[] src, int offset, int length) throws IOException {
+		while (length > 0) {
+			if (position == buffer.length)
+				flush(true);
+			int chunk = Math.min(length, buffer.length - position);
+			System.arraycopy(src, offset, buffer, position, chunk);
+			position += chunk;
+			offset += chunk;
+			length -= chunk;
+		}
+	}
+
+	/**
+	 * Append a byte to the record being written.
+	 * @throws IOException 
+	 */
+	public void append(byte b) throws IOException {
+		if (position == buffer.length)
+			flush(true);
+		buffer[position++] = b;
+	}
+
+	/**
+	 * Write the newline that ends content written in pieces.
+	 * @throws IOException 
+	 */
+	public void writeNewline() throws IOException {
+		if ((position+fNewline.length) > buffer.length) {
+			flush(true);
+		}
+		if (fNewline.length > buffer.length) {
+			// buffer too small for the newline, written directly
+			write(new byte[0]);
 		}
 		else {
-			// store in buffer			
-			System.arraycopy(src, 0, buffer, position, src.length);
-			position += src.length;
 			System.arraycopy(fNewline, 0, buffer, position, fNewline.length);
-			position+= fNewline.length;
+			position += fNewline.length;
+		}
+	}
 
-		}		
+	/**
+	 * Encode the characters directly into the buffer, followed by a newline.
+	 * Content that does not fit into the buffer continues in the next one.
+	 * @param src		characters to write, consumed by the call
+	 * @param encoder	encoder of the charset of the file
+	 * @return the number of bytes of the encoded characters, without the newline
+	 * @throws IOException 
+	 */
+	public int write(CharBuffer src, CharsetEncoder encoder) throws IOException {
+		int written = 0;
+		boolean flushed = false;
+		encoder.reset();
+		while (true) {
+			if (fBufferView == null || fBufferView.array() != buffer) {
+				fBufferView = ByteBuffer.wrap(buffer);
+			}
+			fBufferView.limit(buffer.length);
+			fBufferView.position(position);
+			CoderResult result = flushed ? encoder.flush(fBufferView) 
+					: encoder.encode(src, fBufferView, true);
+			written += fBufferView.position() - position;
+			position = fBufferView.position();
+			if (result.isUnderflow()) {
+				if (flushed)
+					break;
+				flushed = true;
+				continue;
+			}
+			if (result.isOverflow()) {
+				if (position == 0) {
+					// buffer too small for a single character
+					byte[] rest = encodeRest(src, encoder, flushed);
+					written += rest.length;
+					write(rest);
+					return written;
+				}
+				flush(true);
+				continue;
+			}
+			result.throwException();
+		}
+		
+		writeNewline();
+		return written;
 	}
-	
+
+	private static byte[] encodeRest(CharBuffer src, CharsetEncoder encoder, boolean flushed) throws IOException {
+		ByteBuffer rest = ByteBuffer.allocate((int) (src.remaining() * encoder.maxBytesPerChar()) + 16);
+		CoderResult result = flushed ? CoderResult.UNDERFLOW : encoder.encode(src, rest, true);
+		if (result.isUnderflow()) {
+			result = encoder.flush(rest);
+		}
+		if (!result.isUnderflow()) {
+			result.throwException();
+		}
+		byte[] bytes = new byte[rest.position()];
+		rest.flip();
+		rest.get(bytes);
+		return bytes;
+	}
+
 	public boolean isClosed() {
 		return isClosed;
 	}
@@ -0,0 +1,178 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+
+import com.ibm.streams.operator.Attribute;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.Type.MetaType;
+
+/**
+ * Avro object container file format.  The schema is a record with one field per
+ * attribute of the input tuple, except the one with the file name.
+ *
+ * Integers up to 32 bits map to int, uint32 and 64 bit integers to long, floats to
+ * float and double, strings and enums to string, blobs to bytes and timestamps to
+ * long with the timestamp-micros logical type.  Other types are not supported.
+ */
+public class AvroRecordFormat implements IRecordFormat {
+
+	// default level of the zstd library
+	private static final int ZSTD_LEVEL = 3;
+
+	private final Schema fSchema;
+	// input attributes that are written, in field order
+	private final int[] fAttributeIndexes;
+	private final MetaType[] fAttributeTypes;
+
+	private final CodecFactory fCodec;
+	private final int fSyncInterval;
+
+	/**
+	 * @param schema			schema of the input port
+	 * @param excludedIndexes	indexes of the attributes that are not written
+	 * @param codec				codec of the blocks
+	 * @param syncInterval		approximate number of bytes of a block, a sync marker follows each block
+	 */
+	public AvroRecordFormat(StreamSchema schema, Collection<Integer> excludedIndexes, CodecFactory codec, int syncInterval) {
+		List<Schema.Field> fields = new ArrayList<Schema.Field>();
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		for (Attribute attribute : schema) {
+			if (!excludedIndexes.contains(attribute.getIndex())) {
+				fields.add(new Schema.Field(attribute.getName(), toAvroSchema(attribute.getType().getMetaType())));
+				attributes.add(attribute);
+			}
+		}
+		fSchema = Schema.createRecord("tuple", null, "com.ibm.streamsx.hdfs", false, fields);
+
+		fAttributeIndexes = new int[attributes.size()];
+		fAttributeTypes = new MetaType[attributes.size()];
+		for (int i = 0; i < attributes.size(); i++) {
+			fAttributeIndexes[i] = attributes.get(i).getIndex();
+			fAttributeTypes[i] = attributes.get(i).getType().getMetaType();
+		}
+
+		fCodec = codec;
+		fSyncInterval = syncInterval;
+	}
+
+	/**
+	 * @return true if attributes of the type can be written to an Avro file
+	 */
+	public static boolean isSupported(MetaType type) {
+		switch (type) {
+		case BOOLEAN:
+		case INT8:
+		case INT16:
+		case INT32:
+		case INT64:
+		case UINT8:
+		case UINT16:
+		case UINT32:
+		case UINT64:
+		case FLOAT32:
+		case FLOAT64:
+		case RSTRING:
+		case BSTRING:
+		case USTRING:
+		case ENUM:
+		case BLOB:
+		case TIMESTAMP:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @param compression	compression of the operator, null for none
+	 * @return the Avro codec, or null if Avro does not support the compression
+	 */
+	public static CodecFactory toCodec(CompressionType compression) {
+		if (compression == null) {
+			return CodecFactory.nullCodec();
+		}
+		switch (compression) {
+		case gzip:
+			// same compression as gzip, without the gzip header
+			return CodecFactory.deflateCodec(Deflater.DEFAULT_COMPRESSION);
+		case bzip2:
+			return CodecFactory.bzip2Codec();
+		case snappy:
+			return CodecFactory.snappyCodec();
+		case zstd:
+			return CodecFactory.zstandardCodec(ZSTD_LEVEL);
+		default:
+			return null;
+		}
+	}
+
+	private static Schema toAvroSchema(MetaType type) {
+		switch (type) {
+		case BOOLEAN:
+			return Schema.create(Schema.Type.BOOLEAN);
+		case INT8:
+		case INT16:
+		case INT32:
+		case UINT8:
+		case UINT16:
+			return Schema.create(Schema.Type.INT);
+		case UINT32:
+		case INT64:
+		case UINT64:
+			return Schema.create(Schema.Type.LONG);
+		case FLOAT32:
+			return Schema.create(Schema.Type.FLOAT);
+		case FLOAT64:
+			return Schema.create(Schema.Type.DOUBLE);
+		case RSTRING:
+		case BSTRING:
+		case USTRING:
+		case ENUM:
+			return Schema.create(Schema.Type.STRING);
+		case BLOB:
+			return Schema.create(Schema.Type.BYTES);
+		case TIMESTAMP:
+			return LogicalTypes.timestampMicros().addToSchema(Schema.create(Schema.Type.LONG));
+		default:
+			throw new IllegalArgumentException("Unsupported type " + type);
+		}
+	}
+
+	@Override
+	public IRecordWriter createWriter(OutputStream out) throws IOException {
+		return new AvroRecordWriter(this, out);
+	}
+
+	Schema getSchema() {
+		return fSchema;
+	}
+
+	int[] getAttributeIndexes() {
+		return fAttributeIndexes;
+	}
+
+	MetaType[] getAttributeTypes() {
+		return fAttributeTypes;
+	}
+
+	CodecFactory getCodec() {
+		return fCodec;
+	}
+
+	int getSyncInterval() {
+		return fSyncInterval;
+	}
+}
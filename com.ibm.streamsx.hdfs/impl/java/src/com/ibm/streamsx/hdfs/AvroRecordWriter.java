@@ -0,0 +1,191 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.Encoder;
+import org.apache.hadoop.fs.FSDataOutputStream;
+
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type.MetaType;
+import com.ibm.streams.operator.types.RString;
+import com.ibm.streams.operator.types.Timestamp;
+
+/**
+ * Writes tuples to an Avro object container file.  The tuples are encoded 
+ * directly into the binary block of the container, the block is compressed
+ * and written with a sync marker when it reaches the sync interval.
+ */
+public class AvroRecordWriter implements IRecordWriter {
+
+	private final DataFileWriter<Tuple> fWriter;
+	private final CountingOutputStream fOut;
+	private boolean fIsClosed = false;
+
+	AvroRecordWriter(AvroRecordFormat format, OutputStream out) throws IOException {
+		fOut = new CountingOutputStream(out);
+		fWriter = new DataFileWriter<Tuple>(new TupleDatumWriter(format));
+		fWriter.setCodec(format.getCodec());
+		fWriter.setSyncInterval(format.getSyncInterval());
+		fWriter.create(format.getSchema(), fOut);
+	}
+
+	@Override
+	public void write(Tuple tuple) throws IOException {
+		fWriter.append(tuple);
+	}
+
+	/**
+	 * Ends the current block and flushes the file, a reader sees all
+	 * tuples written so far.
+	 */
+	@Override
+	public void flush() throws IOException {
+		fWriter.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!fIsClosed) {
+			fIsClosed = true;
+			// writes the last block and closes the stream
+			fWriter.close();
+		}
+	}
+
+	/**
+	 * The current block is not included, it is at most the sync interval.
+	 */
+	@Override
+	public long getDataSize() {
+		return fOut.getCount();
+	}
+
+	@Override
+	public boolean isClosed() {
+		return fIsClosed;
+	}
+
+	/**
+	 * Encodes the attributes of a tuple as the fields of the record, using the
+	 * field layout computed once by the format.
+	 */
+	private static class TupleDatumWriter implements DatumWriter<Tuple> {
+
+		private final int[] fIndexes;
+		private final MetaType[] fTypes;
+
+		private TupleDatumWriter(AvroRecordFormat format) {
+			fIndexes = format.getAttributeIndexes();
+			fTypes = format.getAttributeTypes();
+		}
+
+		@Override
+		public void setSchema(Schema schema) {
+			// the layout is fixed by the format
+		}
+
+		@Override
+		public void write(Tuple tuple, Encoder out) throws IOException {
+			for (int i = 0; i < fIndexes.length; i++) {
+				int index = fIndexes[i];
+				switch (fTypes[i]) {
+				case BOOLEAN:
+					out.writeBoolean(tuple.getBoolean(index));
+					break;
+				case INT8:
+					out.writeInt(tuple.getByte(index));
+					break;
+				case UINT8:
+					out.writeInt(tuple.getByte(index) & 0xFF);
+					break;
+				case INT16:
+					out.writeInt(tuple.getShort(index));
+					break;
+				case UINT16:
+					out.writeInt(tuple.getShort(index) & 0xFFFF);
+					break;
+				case INT32:
+					out.writeInt(tuple.getInt(index));
+					break;
+				case UINT32:
+					out.writeLong(tuple.getInt(index) & 0xFFFFFFFFL);
+					break;
+				case INT64:
+				case UINT64:
+					out.writeLong(tuple.getLong(index));
+					break;
+				case FLOAT32:
+					out.writeFloat(tuple.getFloat(index));
+					break;
+				case FLOAT64:
+					out.writeDouble(tuple.getDouble(index));
+					break;
+				case RSTRING:
+				case BSTRING:
+					// a string is encoded like bytes, write the UTF-8 
+					// bytes of the rstring without decoding them
+					out.writeBytes(((RString) tuple.getObject(index)).getData());
+					break;
+				case USTRING:
+				case ENUM:
+					out.writeString(tuple.getString(index));
+					break;
+				case BLOB:
+					out.writeBytes(tuple.getBlob(index).getByteBuffer());
+					break;
+				case TIMESTAMP:
+					Timestamp ts = tuple.getTimestamp(index);
+					out.writeLong(ts.getSeconds() * 1000000L + ts.getNanoseconds() / 1000);
+					break;
+				default:
+					throw new IllegalStateException("Unsupported type " + fTypes[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts the bytes written to the file, and makes a flush visible to readers.
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		private long fCount = 0;
+
+		private CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			fCount++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			fCount += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (out instanceof FSDataOutputStream)
+				((FSDataOutputStream) out).hflush();
+			else
+				out.flush();
+		}
+
+		long getCount() {
+			return fCount;
+		}
+	}
+}
@@ -0,0 +1,305 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pool of the byte buffers used by {@link AsyncBufferWriter}.
+ *
+ * A writer takes its buffers from the pool when it is created and returns them
+ * when it is closed, so the next writer that asks for buffers of the same size
+ * reuses them instead of allocating new arrays.  The pool keeps at most
+ * maxPooledBytes of idle buffers, buffers returned beyond that limit are left
+ * to the garbage collector.
+ *
+ * The pool can also limit the memory of the buffers that the writers hold,
+ * the budget.  A writer always gets the buffer it fills, further buffers only
+ * while the budget has room for them.  Once the writers hold most of the
+ * budget, the pool is under pressure: the writers with the most buffered data
+ * are asked to flush early and to use fewer or smaller buffers, and writers
+ * do not grow their buffering.
+ *
+ * All methods are thread safe.
+ */
+public class BufferPool {
+
+	// pool shared by all operators of the toolkit in the PE
+	private static BufferPool sharedPool = null;
+
+	// share of the budget held by the writers above which the pool is under
+	// pressure, and the share that the writers asked to shrink should get it to
+	private static final double PRESSURE_RATIO = 0.9;
+	private static final double RELIEF_RATIO = 0.75;
+
+	private final Map<Integer, ArrayDeque<byte[]>> fFreeBuffers = new HashMap<Integer, ArrayDeque<byte[]>>();
+	private long fMaxPooledBytes;
+	private long fPooledBytes = 0;
+
+	// bytes of the buffers held by the writers, limited by the budget if it is not 0
+	private long fMaxLeasedBytes;
+	private long fLeasedBytes = 0;
+	private final Set<AsyncBufferWriter> fWriters = Collections.newSetFromMap(new IdentityHashMap<AsyncBufferWriter, Boolean>());
+
+	private long fHits = 0;
+	private long fMisses = 0;
+
+	/**
+	 * Create a pool
+	 * @param maxPooledBytes	maximum number of bytes of idle buffers kept in the pool,
+	 * 0 disables pooling
+	 */
+	public BufferPool(long maxPooledBytes) {
+		this(maxPooledBytes, 0);
+	}
+
+	/**
+	 * Create a pool with a budget
+	 * @param maxPooledBytes	maximum number of bytes of idle buffers kept in the pool,
+	 * 0 disables pooling
+	 * @param maxLeasedBytes	budget of the buffers held by the writers, 0 for no budget
+	 */
+	public BufferPool(long maxPooledBytes, long maxLeasedBytes) {
+		fMaxPooledBytes = maxPooledBytes;
+		fMaxLeasedBytes = maxLeasedBytes;
+	}
+
+	/**
+	 * Return the pool that is shared by all operators in the PE.  The pool is
+	 * created on first use; if operators ask for different limits, the largest
+	 * limit is used.
+	 * @param maxPooledBytes	maximum number of bytes of idle buffers kept in the pool
+	 * @return the shared pool
+	 */
+	public static synchronized BufferPool getSharedPool(long maxPooledBytes) {
+		return getSharedPool(maxPooledBytes, 0);
+	}
+
+	/**
+	 * Return the pool that is shared by all operators in the PE, with a budget.
+	 * If operators ask for different budgets, the largest budget is used.
+	 * @param maxPooledBytes	maximum number of bytes of idle buffers kept in the pool
+	 * @param maxLeasedBytes	budget of the buffers held by the writers of all operators,
+	 * 0 for no budget
+	 * @return the shared pool
+	 */
+	public static synchronized BufferPool getSharedPool(long maxPooledBytes, long maxLeasedBytes) {
+		if (sharedPool == null) {
+			sharedPool = new BufferPool(maxPooledBytes, maxLeasedBytes);
+		} else {
+			if (maxPooledBytes > sharedPool.getMaxPooledBytes()) {
+				sharedPool.setMaxPooledBytes(maxPooledBytes);
+			}
+			if (maxLeasedBytes > sharedPool.getMaxLeasedBytes()) {
+				sharedPool.setMaxLeasedBytes(maxLeasedBytes);
+			}
+		}
+		return sharedPool;
+	}
+
+	/**
+	 * Take a buffer out of the pool, or allocate a new one if the pool has no
+	 * idle buffer of the requested size.
+	 * @param size	size of the buffer in bytes
+	 * @return a buffer of exactly size bytes, its content is undefined
+	 */
+	public byte[] acquire(int size) {
+		byte[] buffer = null;
+		List<AsyncBufferWriter> victims = null;
+		synchronized (this) {
+			fLeasedBytes += size;
+			if (isUnderPressure()) {
+				victims = selectShrinks();
+			}
+			ArrayDeque<byte[]> free = fFreeBuffers.get(size);
+			if (free != null && !free.isEmpty()) {
+				fPooledBytes -= size;
+				fHits++;
+				buffer = free.pop();
+			} else {
+				fMisses++;
+			}
+		}
+		// the writers take their own locks, so they are asked outside of the lock
+		requestShrinks(victims);
+		// allocate outside of the lock
+		return (buffer != null) ? buffer : new byte[size];
+	}
+
+	/**
+	 * Take a buffer like {@link #acquire(int)} if the budget has room for it.
+	 * @param size	size of the buffer in bytes
+	 * @return a buffer of exactly size bytes, or null if the budget is used up
+	 */
+	public byte[] tryAcquire(int size) {
+		List<AsyncBufferWriter> victims = null;
+		synchronized (this) {
+			if (fMaxLeasedBytes > 0 && fLeasedBytes + size > fMaxLeasedBytes) {
+				victims = selectShrinks();
+			}
+		}
+		if (victims != null) {
+			requestShrinks(victims);
+			return null;
+		}
+		return acquire(size);
+	}
+
+	/**
+	 * Replace a buffer by one of another size.  The buffer is kept if it is
+	 * smaller and the budget has no room for the larger one.
+	 * @param buffer	the buffer to replace
+	 * @param size		size of the new buffer in bytes
+	 * @return the new buffer, or the given buffer if it is kept
+	 */
+	public byte[] exchange(byte[] buffer, int size) {
+		synchronized (this) {
+			if (fMaxLeasedBytes > 0 && size > buffer.length
+					&& fLeasedBytes - buffer.length + size > fMaxLeasedBytes) {
+				return buffer;
+			}
+		}
+		release(buffer);
+		return acquire(size);
+	}
+
+	/**
+	 * Return a buffer to the pool.  The caller must not use the buffer afterwards.
+	 * @param buffer	the buffer to return, null is ignored
+	 */
+	public synchronized void release(byte[] buffer) {
+		if (buffer == null) {
+			return;
+		}
+		fLeasedBytes -= buffer.length;
+		// idle buffers count against the budget as well
+		if (fPooledBytes + buffer.length > fMaxPooledBytes || (fMaxLeasedBytes > 0
+				&& fLeasedBytes + fPooledBytes + buffer.length > fMaxLeasedBytes)) {
+			return;
+		}
+		ArrayDeque<byte[]> free = fFreeBuffers.get(buffer.length);
+		if (free == null) {
+			free = new ArrayDeque<byte[]>();
+			fFreeBuffers.put(buffer.length, free);
+		}
+		free.push(buffer);
+		fPooledBytes += buffer.length;
+	}
+
+	/**
+	 * Select the writers with the most buffered data, until their buffered data
+	 * covers what the writers hold beyond the relief share of the budget.  Must be
+	 * called with the lock of the pool.
+	 * @return the writers to ask to flush early and shrink
+	 */
+	private List<AsyncBufferWriter> selectShrinks() {
+		List<AsyncBufferWriter> victims = new ArrayList<AsyncBufferWriter>();
+		long excess = fLeasedBytes - (long) (fMaxLeasedBytes * RELIEF_RATIO);
+		// the buffered bytes change while they are sorted, so they are read once
+		List<long[]> candidates = new ArrayList<long[]>();
+		List<AsyncBufferWriter> writers = new ArrayList<AsyncBufferWriter>(fWriters);
+		for (int i = 0; i < writers.size(); i++) {
+			candidates.add(new long[] { writers.get(i).getBufferedBytes(), i });
+		}
+		Collections.sort(candidates, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] c1, long[] c2) {
+				return Long.compare(c2[0], c1[0]);
+			}
+		});
+		for (long[] candidate : candidates) {
+			if (excess <= 0 || candidate[0] == 0) {
+				break;
+			}
+			victims.add(writers.get((int) candidate[1]));
+			excess -= candidate[0];
+		}
+		return victims;
+	}
+
+	/**
+	 * Ask the selected writers to flush early and shrink, must be called without
+	 * the lock of the pool.
+	 * @param victims	the writers, or null for none
+	 */
+	private static void requestShrinks(List<AsyncBufferWriter> victims) {
+		if (victims == null) {
+			return;
+		}
+		for (AsyncBufferWriter victim : victims) {
+			victim.requestShrink();
+		}
+	}
+
+	/**
+	 * @return true if the writers hold most of the budget
+	 */
+	public synchronized boolean isUnderPressure() {
+		return fMaxLeasedBytes > 0 && fLeasedBytes > fMaxLeasedBytes * PRESSURE_RATIO;
+	}
+
+	/**
+	 * Add a writer that may be asked to shrink under pressure.
+	 */
+	public synchronized void register(AsyncBufferWriter writer) {
+		fWriters.add(writer);
+	}
+
+	public synchronized void unregister(AsyncBufferWriter writer) {
+		fWriters.remove(writer);
+	}
+
+	public synchronized long getMaxLeasedBytes() {
+		return fMaxLeasedBytes;
+	}
+
+	public synchronized void setMaxLeasedBytes(long maxLeasedBytes) {
+		fMaxLeasedBytes = maxLeasedBytes;
+	}
+
+	/**
+	 * @return number of bytes of the buffers held by the writers
+	 */
+	public synchronized long getLeasedBytes() {
+		return fLeasedBytes;
+	}
+
+	public synchronized long getMaxPooledBytes() {
+		return fMaxPooledBytes;
+	}
+
+	public synchronized void setMaxPooledBytes(long maxPooledBytes) {
+		fMaxPooledBytes = maxPooledBytes;
+	}
+
+	/**
+	 * @return number of bytes of idle buffers currently held by the pool
+	 */
+	public synchronized long getPooledBytes() {
+		return fPooledBytes;
+	}
+
+	/**
+	 * @return number of buffer requests served from the pool
+	 */
+	public synchronized long getHits() {
+		return fHits;
+	}
+
+	/**
+	 * @return number of buffer requests that allocated a new buffer
+	 */
+	public synchronized long getMisses() {
+		return fMisses;
+	}
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.io.compress.Lz4Codec;
+import org.apache.hadoop.io.compress.SnappyCodec;
+import org.apache.hadoop.io.compress.ZStandardCodec;
+
+/**
+ * Compression of the files written by HDFS2FileSink, backed by the Hadoop codecs.
+ */
+public enum CompressionType {
+	gzip(GzipCodec.class, true),
+	bzip2(BZip2Codec.class, false),
+	snappy(SnappyCodec.class, false),
+	lz4(Lz4Codec.class, false),
+	zstd(ZStandardCodec.class, true);
+
+	private final Class<? extends CompressionCodec> fCodecClass;
+	private final boolean fConcatenable;
+
+	private CompressionType(Class<? extends CompressionCodec> codecClass, boolean concatenable) {
+		fCodecClass = codecClass;
+		fConcatenable = concatenable;
+	}
+
+	public Class<? extends CompressionCodec> getCodecClass() {
+		return fCodecClass;
+	}
+
+	/**
+	 * @return true if a file of independently compressed blocks, concatenated
+	 * in order, is read back as one stream, so blocks can be compressed in parallel
+	 */
+	public boolean isConcatenable() {
+		return fConcatenable;
+	}
+}
@@ -0,0 +1,313 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.fs.FileStatus;
+
+import com.ibm.streams.operator.logging.TraceLevel;
+import com.ibm.streamsx.hdfs.client.IHdfsClient;
+
+/**
+ * Parts of the files written in exactly-once mode.  The tuples of each epoch
+ * between two checkpoints are written to hidden part files, which are committed
+ * to their files when the checkpoint is retired and deleted on reset.
+ *
+ * The parts are closed and committed on the commit thread of the operator, the
+ * checkpoint and the reset run when the commit thread is idle.
+ */
+class EpochParts {
+
+	private static final String CLASS_NAME = "com.ibm.streamsx.hdfs.EpochParts";
+
+	private static Logger TRACE = Logger.getLogger(CLASS_NAME);
+
+	// separates the file and operator name from the epoch of a part
+	static final String EPOCH_PART_INFIX = ".epoch-";
+
+	/**
+	 * Reports a file once its last part is committed.
+	 */
+	interface CommitListener {
+		void fileCommitted(String target) throws Exception;
+	}
+
+	/**
+	 * Part of a file written in one epoch.  A part is committed by renaming it
+	 * to its file, or by appending it to the file when an earlier part of the
+	 * file is committed already.
+	 */
+	static class Part {
+		// null for the end of a file whose last part has no tuples
+		final String path;
+		final String target;
+		// the file starts with this part, it replaces an existing file
+		final boolean first;
+		// the file ends with this part, it is reported when committed
+		final boolean last;
+
+		Part(String path, String target, boolean first, boolean last) {
+			this.path = path;
+			this.target = target;
+			this.first = first;
+			this.last = last;
+		}
+	}
+
+	private final IHdfsClient fHdfsClient;
+	private final String fOperatorName;
+	private final LatencyStatistics fRenameLatency;
+	private final CommitListener fListener;
+
+	// sequence id of the last checkpoint, the label of the parts written after it
+	private long fEpoch = 0;
+	private int fPartNum = 0;
+	// file of the last recorded part, until its last part is recorded
+	private volatile String fRecordTarget = null;
+	// parts closed since the last checkpoint, and the parts of the checkpoints
+	// that are not committed yet, in order
+	private final List<Part> fClosedParts = Collections.synchronizedList(new ArrayList<Part>());
+	private final TreeMap<Long, List<Part>> fUncommittedParts = new TreeMap<Long, List<Part>>();
+	// parts created and not committed, deleted on reset
+	private final Set<String> fCreatedParts = Collections.synchronizedSet(new HashSet<String>());
+
+	/**
+	 * @param hdfsClient	client of the file system of the parts
+	 * @param operatorName	name of the operator, labels its parts
+	 * @param renameLatency	records the latency of the renames
+	 * @param listener	reports the committed files
+	 */
+	EpochParts(IHdfsClient hdfsClient, String operatorName, LatencyStatistics renameLatency, CommitListener listener) {
+		fHdfsClient = hdfsClient;
+		fOperatorName = operatorName;
+		fRenameLatency = renameLatency;
+		fListener = listener;
+	}
+
+	/**
+	 * @return the path of a new part of the file, a hidden file in the directory
+	 * of the file, labeled with the epoch and the operator
+	 */
+	String newPartPath(String target) {
+		int slash = target.lastIndexOf('/');
+		String partPath = target.substring(0, slash + 1) + "." + target.substring(slash + 1) + "."
+				+ fOperatorName + EPOCH_PART_INFIX + fEpoch + "-" + (fPartNum++);
+		fCreatedParts.add(partPath);
+		return partPath;
+	}
+
+	/**
+	 * Record the closed part to be committed with the next checkpoint, an empty
+	 * part is deleted.
+	 * @param hasTuples	true if tuples were written to the part
+	 * @param last	true if the file ends with the part, false if it continues in the next epoch
+	 */
+	void partClosed(String path, String target, boolean hasTuples, boolean last) throws IOException {
+		if (hasTuples) {
+			fClosedParts.add(new Part(path, target, !target.equals(fRecordTarget), last));
+			fRecordTarget = last ? null : target;
+			return;
+		}
+		// the part was opened ahead of tuples that never came
+		fHdfsClient.delete(path, false);
+		fCreatedParts.remove(path);
+		if (last && target.equals(fRecordTarget)) {
+			fClosedParts.add(new Part(null, target, false, true));
+			fRecordTarget = null;
+		}
+	}
+
+	/**
+	 * Record the parts closed in the epoch as the parts of the checkpoint, and
+	 * save the parts that are not committed yet.  The parts written after the
+	 * checkpoint are labeled with it.
+	 */
+	void checkpoint(long id, ObjectOutputStream out) throws IOException {
+		fEpoch = id;
+		List<Part> closedParts;
+		synchronized (fClosedParts) {
+			closedParts = new ArrayList<Part>(fClosedParts);
+			fClosedParts.clear();
+		}
+		List<Part> uncommittedParts = new ArrayList<Part>();
+		synchronized (fUncommittedParts) {
+			if (!closedParts.isEmpty()) {
+				fUncommittedParts.put(id, closedParts);
+			}
+			for (List<Part> parts : fUncommittedParts.values()) {
+				uncommittedParts.addAll(parts);
+			}
+		}
+
+		out.writeObject(fRecordTarget);
+		out.writeInt(uncommittedParts.size());
+		for (Part part : uncommittedParts) {
+			out.writeObject(part.path);
+			out.writeObject(part.target);
+			out.writeBoolean(part.first);
+			out.writeBoolean(part.last);
+		}
+	}
+
+	/**
+	 * Commit the parts of the checkpoints up to the given one, in order.  A part
+	 * that fails stays uncommitted, it is committed again with the next
+	 * checkpoint or the reset that follows the failed drain.
+	 */
+	void commit(long id) throws Exception {
+		while (true) {
+			List<Part> parts;
+			synchronized (fUncommittedParts) {
+				Map.Entry<Long, List<Part>> oldest = fUncommittedParts.firstEntry();
+				if (oldest == null || oldest.getKey() > id) {
+					return;
+				}
+				parts = oldest.getValue();
+				if (parts.isEmpty()) {
+					fUncommittedParts.remove(oldest.getKey());
+					continue;
+				}
+			}
+			Part part = parts.get(0);
+			try {
+				commitPart(part);
+			} catch (Exception e) {
+				TRACE.log(TraceLevel.ERROR, "Failed to commit part: " + part.path, e);
+				throw e;
+			}
+			synchronized (fUncommittedParts) {
+				parts.remove(0);
+			}
+		}
+	}
+
+	/**
+	 * Move the part to its file, unless it is moved already, and report the file
+	 * once its last part is committed.  Committing a part again does nothing.
+	 */
+	private void commitPart(Part part) throws Exception {
+		boolean committed = false;
+		if (part.path != null && fHdfsClient.exists(part.path)) {
+			if (part.first || !fHdfsClient.exists(part.target)) {
+				if (fHdfsClient.exists(part.target)) {
+					fHdfsClient.delete(part.target, false);
+				}
+				long renameStart = System.nanoTime();
+				boolean renamed = fHdfsClient.rename(part.path, part.target);
+				fRenameLatency.record(System.nanoTime() - renameStart);
+				if (!renamed) {
+					throw new IOException("Failed to rename part: " + part.path + " to: " + part.target);
+				}
+			} else {
+				fHdfsClient.concat(part.target, new String[] { part.path });
+			}
+			committed = true;
+			TRACE.log(TraceLevel.DEBUG, "Committed part: " + part.path + " to: " + part.target);
+		}
+		fCreatedParts.remove(part.path);
+
+		if (part.last && (committed || part.path == null)) {
+			fListener.fileCommitted(part.target);
+		}
+	}
+
+	/**
+	 * Forget the parts that are not committed, their tuples are replayed after
+	 * the reset.
+	 */
+	void discard() {
+		fClosedParts.clear();
+		synchronized (fUncommittedParts) {
+			fUncommittedParts.clear();
+		}
+	}
+
+	/**
+	 * Commit the parts of the checkpoint, which completed, and delete the parts
+	 * written after it.
+	 * @param openTarget	file of the checkpoint that is continued, or null
+	 */
+	void reset(long id, ObjectInputStream in, String openTarget) throws Exception {
+		discard();
+		fRecordTarget = (String) in.readObject();
+		int count = in.readInt();
+		List<Part> parts = new ArrayList<Part>(count);
+		for (int i = 0; i < count; i++) {
+			parts.add(new Part((String) in.readObject(), (String) in.readObject(), in.readBoolean(),
+					in.readBoolean()));
+		}
+
+		// the checkpoint may have failed before it was retired
+		Set<String> directories = new HashSet<String>();
+		for (Part part : parts) {
+			commitPart(part);
+			directories.add(getDirectory(part.target));
+		}
+		if (openTarget != null) {
+			directories.add(getDirectory(openTarget));
+		}
+		deleteUncommittedParts(directories, id);
+		fEpoch = id;
+	}
+
+	/**
+	 * Delete all parts that are not committed.
+	 * @param initialTarget	file of the initial state, or null
+	 */
+	void resetToInitialState(String initialTarget) throws IOException {
+		discard();
+		fRecordTarget = null;
+		Set<String> directories = new HashSet<String>();
+		if (initialTarget != null) {
+			directories.add(getDirectory(initialTarget));
+		}
+		deleteUncommittedParts(directories, 0);
+		fEpoch = 0;
+	}
+
+	/**
+	 * Delete the parts that are not committed, those created by this operator
+	 * and those of the given directories that a previous launch of the PE left.
+	 * @param fromEpoch	lowest label of the parts to delete in the directories,
+	 * parts with lower labels belong to completed checkpoints
+	 */
+	private void deleteUncommittedParts(Set<String> directories, long fromEpoch) throws IOException {
+		synchronized (fCreatedParts) {
+			for (String path : fCreatedParts) {
+				fHdfsClient.delete(path, false);
+			}
+			fCreatedParts.clear();
+		}
+		Pattern partPattern = Pattern.compile(
+				"\\..*\\." + Pattern.quote(fOperatorName) + Pattern.quote(EPOCH_PART_INFIX) + "(\\d+)-\\d+");
+		for (String directory : directories) {
+			for (FileStatus status : fHdfsClient.scanDirectory(directory, partPattern.pattern())) {
+				Matcher matcher = partPattern.matcher(status.getPath().getName());
+				if (matcher.matches() && Long.parseLong(matcher.group(1)) >= fromEpoch) {
+					TRACE.log(TraceLevel.DEBUG, "Delete uncommitted part: " + status.getPath());
+					fHdfsClient.delete(status.getPath().toString(), false);
+				}
+			}
+		}
+	}
+
+	private static String getDirectory(String path) {
+		int slash = path.lastIndexOf('/');
+		return (slash > 0) ? path.substring(0, slash) : "/";
+	}
+}
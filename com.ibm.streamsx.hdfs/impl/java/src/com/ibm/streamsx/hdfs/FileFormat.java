@@ -0,0 +1,40 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+/**
+ * Format of the files written by HDFS2FileSink.
+ */
+public enum FileFormat {
+	/** the value of the data attribute, text followed by a newline, blobs as they are */
+	raw(true),
+	/** Parquet, one column per attribute of the input tuple */
+	parquet(false),
+	/** Avro object container, one record field per attribute of the input tuple */
+	avro(false),
+	/** Hadoop SequenceFile, one key and one value attribute of the input tuple */
+	sequence(false),
+	/** comma separated values, one line per tuple, quoted where needed */
+	csv(true),
+	/** JSON lines, one object per tuple */
+	json(true),
+	/** values separated by the delimiter, one line per tuple, never quoted */
+	delimited(true);
+
+	private final boolean fBuffered;
+
+	private FileFormat(boolean buffered) {
+		fBuffered = buffered;
+	}
+
+	/**
+	 * @return true if the tuples are written through the write buffers of the
+	 * file, so the compression of the operator and appending apply, false for
+	 * the formats that write a complete file on their own
+	 */
+	public boolean isBuffered() {
+		return fBuffered;
+	}
+}
@@ -0,0 +1,262 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.SignStyle;
+import java.time.format.TextStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalField;
+import java.time.temporal.WeekFields;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * File name with % variables, parsed once into literal and variable segments.
+ *
+ * The variables that do not change while the operator runs, %HOST, %PROCID,
+ * %PEID and %PELAUNCHNUM, are resolved when the template is parsed and become
+ * part of the literal text.  %TIME, %FILENUM and %STRIPE are resolved for
+ * every file name.  A % that starts no known variable is kept as it is.
+ */
+class FileNameTemplate {
+
+	private static final String[] VARIABLES = { IHdfsConstants.FILE_VAR_HOST, IHdfsConstants.FILE_VAR_PROCID,
+			IHdfsConstants.FILE_VAR_PEID, IHdfsConstants.FILE_VAR_PELAUNCHNUM, IHdfsConstants.FILE_VAR_TIME,
+			IHdfsConstants.FILE_VAR_FILENUM, IHdfsConstants.FILE_VAR_STRIPE };
+
+	// the literal text before each variable, and the text after the last one
+	private final String[] fLiterals;
+	// the variables that are resolved per file name
+	private final String[] fVariables;
+	private final DateTimeFormatter fTimeFormatter;
+	private final int fLength;
+
+	/**
+	 * @param template			file name with variables
+	 * @param staticValues		values of the variables that do not change, by variable name
+	 * @param timeFormatter		format of %TIME, with the time zone set
+	 */
+	FileNameTemplate(String template, Map<String, String> staticValues, DateTimeFormatter timeFormatter) {
+		List<String> literals = new ArrayList<String>();
+		List<String> variables = new ArrayList<String>();
+		StringBuilder literal = new StringBuilder();
+		int pos = 0;
+		while (pos < template.length()) {
+			String variable = null;
+			if (template.startsWith(IHdfsConstants.FILE_VAR_PREFIX, pos)) {
+				for (String name : VARIABLES) {
+					if (template.startsWith(name, pos)) {
+						variable = name;
+						break;
+					}
+				}
+			}
+			if (variable == null) {
+				literal.append(template.charAt(pos++));
+				continue;
+			}
+			pos += variable.length();
+			String value = staticValues.get(variable);
+			if (value != null) {
+				literal.append(value);
+			} else {
+				literals.add(literal.toString());
+				variables.add(variable);
+				literal.setLength(0);
+			}
+		}
+		literals.add(literal.toString());
+
+		fLiterals = literals.toArray(new String[literals.size()]);
+		fVariables = variables.toArray(new String[variables.size()]);
+		fTimeFormatter = timeFormatter;
+		int length = 0;
+		for (String text : fLiterals) {
+			length += text.length();
+		}
+		fLength = length + 16 * fVariables.length;
+	}
+
+	/**
+	 * @return the file name with the variables resolved
+	 */
+	String format(Instant time, int fileNum, int stripe) {
+		if (fVariables.length == 0) {
+			return fLiterals[0];
+		}
+		StringBuilder name = new StringBuilder(fLength);
+		for (int i = 0; i < fVariables.length; i++) {
+			name.append(fLiterals[i]);
+			String variable = fVariables[i];
+			if (variable.equals(IHdfsConstants.FILE_VAR_TIME)) {
+				fTimeFormatter.formatTo(time, name);
+			} else if (variable.equals(IHdfsConstants.FILE_VAR_FILENUM)) {
+				name.append(fileNum);
+			} else {
+				name.append(stripe);
+			}
+		}
+		name.append(fLiterals[fVariables.length]);
+		return name.toString();
+	}
+
+	/**
+	 * Build the formatter of a time format of java.text.SimpleDateFormat, which
+	 * formats the time exactly like SimpleDateFormat does.  The pattern letters of
+	 * DateTimeFormatter have other meanings, u is the year instead of the day of
+	 * the week and S the fraction of the second instead of the milliseconds, and
+	 * other counts of letters, so the pattern is translated letter by letter.
+	 * @param pattern	time format of SimpleDateFormat
+	 * @return the formatter, in the default locale and without time zone
+	 * @throws IllegalArgumentException if the pattern is not valid for SimpleDateFormat
+	 */
+	static DateTimeFormatter ofTimeFormat(String pattern) {
+		WeekFields weekFields = WeekFields.of(Locale.getDefault(Locale.Category.FORMAT));
+		DateTimeFormatterBuilder builder = new DateTimeFormatterBuilder();
+		int pos = 0;
+		while (pos < pattern.length()) {
+			char letter = pattern.charAt(pos);
+			if (letter == '\'') {
+				// quoted text, two quotes are a quote
+				int end = pos + 1;
+				StringBuilder text = new StringBuilder();
+				while (true) {
+					if (end >= pattern.length()) {
+						throw new IllegalArgumentException("Unterminated quote in time format: " + pattern);
+					}
+					if (pattern.charAt(end) == '\'') {
+						if (end + 1 < pattern.length() && pattern.charAt(end + 1) == '\'') {
+							text.append('\'');
+							end += 2;
+							continue;
+						}
+						break;
+					}
+					text.append(pattern.charAt(end++));
+				}
+				builder.appendLiteral(pos + 1 == end ? "'" : text.toString());
+				pos = end + 1;
+				continue;
+			}
+			if (!(letter >= 'a' && letter <= 'z') && !(letter >= 'A' && letter <= 'Z')) {
+				builder.appendLiteral(letter);
+				pos++;
+				continue;
+			}
+			int count = 1;
+			while (pos + count < pattern.length() && pattern.charAt(pos + count) == letter) {
+				count++;
+			}
+			pos += count;
+			switch (letter) {
+			case 'G':
+				builder.appendText(ChronoField.ERA, count >= 4 ? TextStyle.FULL : TextStyle.SHORT);
+				break;
+			case 'y':
+				appendYear(builder, ChronoField.YEAR_OF_ERA, count);
+				break;
+			case 'Y':
+				appendYear(builder, weekFields.weekBasedYear(), count);
+				break;
+			case 'M':
+			case 'L':
+				if (count >= 3) {
+					boolean standalone = (letter == 'L');
+					builder.appendText(ChronoField.MONTH_OF_YEAR, count >= 4
+							? (standalone ? TextStyle.FULL_STANDALONE : TextStyle.FULL)
+							: (standalone ? TextStyle.SHORT_STANDALONE : TextStyle.SHORT));
+				} else {
+					appendNumber(builder, ChronoField.MONTH_OF_YEAR, count);
+				}
+				break;
+			case 'w':
+				appendNumber(builder, weekFields.weekOfWeekBasedYear(), count);
+				break;
+			case 'W':
+				appendNumber(builder, weekFields.weekOfMonth(), count);
+				break;
+			case 'D':
+				appendNumber(builder, ChronoField.DAY_OF_YEAR, count);
+				break;
+			case 'd':
+				appendNumber(builder, ChronoField.DAY_OF_MONTH, count);
+				break;
+			case 'F':
+				// the day of the week in the month, the 2 of the second Wednesday
+				appendNumber(builder, ChronoField.ALIGNED_WEEK_OF_MONTH, count);
+				break;
+			case 'E':
+				builder.appendText(ChronoField.DAY_OF_WEEK, count >= 4 ? TextStyle.FULL : TextStyle.SHORT);
+				break;
+			case 'u':
+				// the number of the day of the week, 1 is Monday
+				appendNumber(builder, ChronoField.DAY_OF_WEEK, count);
+				break;
+			case 'a':
+				builder.appendText(ChronoField.AMPM_OF_DAY, TextStyle.SHORT);
+				break;
+			case 'H':
+				appendNumber(builder, ChronoField.HOUR_OF_DAY, count);
+				break;
+			case 'k':
+				appendNumber(builder, ChronoField.CLOCK_HOUR_OF_DAY, count);
+				break;
+			case 'K':
+				appendNumber(builder, ChronoField.HOUR_OF_AMPM, count);
+				break;
+			case 'h':
+				appendNumber(builder, ChronoField.CLOCK_HOUR_OF_AMPM, count);
+				break;
+			case 'm':
+				appendNumber(builder, ChronoField.MINUTE_OF_HOUR, count);
+				break;
+			case 's':
+				appendNumber(builder, ChronoField.SECOND_OF_MINUTE, count);
+				break;
+			case 'S':
+				appendNumber(builder, ChronoField.MILLI_OF_SECOND, count);
+				break;
+			case 'z':
+				builder.appendZoneText(count >= 4 ? TextStyle.FULL : TextStyle.SHORT);
+				break;
+			case 'Z':
+				builder.appendOffset("+HHMM", "+0000");
+				break;
+			case 'X':
+				if (count > 3) {
+					throw new IllegalArgumentException("Invalid ISO 8601 format: length=" + count);
+				}
+				builder.appendOffset(count == 1 ? "+HH" : (count == 2 ? "+HHMM" : "+HH:MM"), "Z");
+				break;
+			default:
+				throw new IllegalArgumentException("Illegal pattern character '" + letter + "'");
+			}
+		}
+		return builder.toFormatter();
+	}
+
+	/**
+	 * Append a number of at least count digits, padded with zeros.
+	 */
+	private static void appendNumber(DateTimeFormatterBuilder builder, TemporalField field, int count) {
+		builder.appendValue(field, Math.min(count, 19), 19, SignStyle.NORMAL);
+	}
+
+	/**
+	 * Append a year, two letters are the last two digits of the year.
+	 */
+	private static void appendYear(DateTimeFormatterBuilder builder, TemporalField field, int count) {
+		if (count == 2) {
+			builder.appendValueReduced(field, 2, 2, 2000);
+		} else {
+			appendNumber(builder, field, count);
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Timers of an operator, the time based expiration of the files, the idle
+ * partitions, the flush delay, the metrics and the replay of the spill files.
+ *
+ * All timers of the toolkit in the PE are timed by a single scheduler thread,
+ * which never runs the work of a timer: the work needs the lock of its operator
+ * or waits for HDFS, so it is handed off to the task thread of the operator.
+ * The task thread is created when a timer of the operator fires and ends when
+ * it is idle, so operators cost no threads between their timers.
+ *
+ * A timer is a scheduled task, cancelling it removes it from the queue right
+ * away, so files that are closed before their time cost nothing afterwards.
+ */
+public class FileTimerScheduler {
+
+	// milliseconds the task thread of an operator is kept when it is idle
+	private static final long TASK_KEEP_ALIVE = 1000;
+
+	private static ScheduledThreadPoolExecutor sharedScheduler = null;
+
+	private final ThreadFactory fThreadFactory;
+	private ThreadPoolExecutor fTaskService;
+	private boolean fShutdown = false;
+
+	/**
+	 * @param threadFactory	thread factory of the operator, creates its task thread
+	 */
+	public FileTimerScheduler(ThreadFactory threadFactory) {
+		fThreadFactory = threadFactory;
+	}
+
+	/**
+	 * Return the scheduler that is shared by all operators in the PE, it is
+	 * created on first use.  Its thread is a daemon thread, it does not keep
+	 * the PE alive.
+	 */
+	private static synchronized ScheduledThreadPoolExecutor getSharedScheduler() {
+		if (sharedScheduler == null) {
+			sharedScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "HDFS2FileSink-Timer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			sharedScheduler.setRemoveOnCancelPolicy(true);
+		}
+		return sharedScheduler;
+	}
+
+	/**
+	 * Run the work once on the task thread of the operator after the delay.
+	 * @throws RejectedExecutionException if the timers of the operator are shut down
+	 */
+	public ScheduledFuture<?> schedule(Runnable work, long delay, TimeUnit unit) {
+		checkShutdown();
+		return getSharedScheduler().schedule(handOff(work), delay, unit);
+	}
+
+	/**
+	 * Run the work periodically on the task thread of the operator, the delay is
+	 * counted from the time the timer fires.  The work is not queued again while
+	 * its last run is still waiting.
+	 * @throws RejectedExecutionException if the timers of the operator are shut down
+	 */
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable work, long initialDelay, long delay, TimeUnit unit) {
+		checkShutdown();
+		return getSharedScheduler().scheduleWithFixedDelay(handOff(work), initialDelay, delay, unit);
+	}
+
+	/**
+	 * Run the work periodically at a fixed rate on the task thread of the operator.
+	 * The work is not queued again while its last run is still waiting.
+	 * @throws RejectedExecutionException if the timers of the operator are shut down
+	 */
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable work, long initialDelay, long period, TimeUnit unit) {
+		checkShutdown();
+		return getSharedScheduler().scheduleAtFixedRate(handOff(work), initialDelay, period, unit);
+	}
+
+	private synchronized void checkShutdown() {
+		if (fShutdown) {
+			throw new RejectedExecutionException("Timers are shut down");
+		}
+	}
+
+	/**
+	 * Wrap the work, so that the scheduler thread hands it off to the task thread.
+	 */
+	private Runnable handOff(final Runnable work) {
+		final AtomicBoolean queued = new AtomicBoolean();
+		final Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				queued.set(false);
+				work.run();
+			}
+		};
+		return new Runnable() {
+			@Override
+			public void run() {
+				if (!queued.compareAndSet(false, true)) {
+					return;
+				}
+				try {
+					getTaskService().execute(task);
+				} catch (RejectedExecutionException e) {
+					// shut down, the operator cancels its timers
+					queued.set(false);
+				}
+			}
+		};
+	}
+
+	private synchronized ThreadPoolExecutor getTaskService() {
+		if (fShutdown) {
+			throw new RejectedExecutionException("Timers are shut down");
+		}
+		if (fTaskService == null) {
+			fTaskService = new ThreadPoolExecutor(1, 1, TASK_KEEP_ALIVE, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<Runnable>(), fThreadFactory);
+			fTaskService.allowCoreThreadTimeOut(true);
+		}
+		return fTaskService;
+	}
+
+	/**
+	 * @return true once the timers of the operator are shut down
+	 */
+	public synchronized boolean isShutdown() {
+		return fShutdown;
+	}
+
+	/**
+	 * Stop running the work of the timers, and wait until the work that runs
+	 * already is finished.  The operator cancels its timers.
+	 */
+	public void shutdown() throws InterruptedException {
+		ThreadPoolExecutor taskService;
+		synchronized (this) {
+			fShutdown = true;
+			taskService = fTaskService;
+		}
+		if (taskService != null) {
+			taskService.shutdown();
+			taskService.awaitTermination(Integer.MAX_VALUE, TimeUnit.SECONDS);
+		}
+	}
+}
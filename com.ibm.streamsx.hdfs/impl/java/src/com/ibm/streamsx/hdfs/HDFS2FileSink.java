@@ -5,23 +5,39 @@
 
 package com.ibm.streamsx.hdfs;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.UnknownHostException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.util.ReflectionUtils;
+
 import com.ibm.streams.operator.Attribute;
 import com.ibm.streams.operator.OperatorContext;
 import com.ibm.streams.operator.OperatorContext.ContextCheck;
@@ -51,6 +67,7 @@ import com.ibm.streams.operator.model.OutputPortSet.WindowPunctuationOutputMode;
 import com.ibm.streams.operator.state.Checkpoint;
 import com.ibm.streams.operator.state.ConsistentRegionContext;
 import com.ibm.streams.operator.state.StateHandler;
+import com.ibm.streamsx.hdfs.client.HdfsCreateOptions;
 
 @PrimitiveOperator(name = "HDFS2FileSink", namespace = "com.ibm.streamsx.hdfs", description = IHdfsConstants.DESC_HDFS_FILE_SINK)
 
@@ -86,6 +103,62 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 
 	private final String NUM_SINK_METRIC = "nSikedFiles";
 	private Metric nSikedFiles;
+	private final String BUFFER_POOL_HITS_METRIC = "nBufferPoolHits";
+	private Metric nBufferPoolHits;
+	private final String BUFFER_POOL_MISSES_METRIC = "nBufferPoolMisses";
+	private Metric nBufferPoolMisses;
+	private final String WRITE_STALLS_METRIC = "nWriteStalls";
+	private Metric nWriteStalls;
+	private final String DRAIN_TIME_METRIC = "drainTime";
+	private Metric nDrainTime;
+	private final String TUPLES_WRITTEN_METRIC = "nTuplesWritten";
+	private Metric nTuplesWritten;
+	private final String BYTES_WRITTEN_METRIC = "nBytesWritten";
+	private Metric nBytesWritten;
+	private final String BYTES_BUFFERED_METRIC = "bytesBuffered";
+	private Metric nBytesBuffered;
+	private final String WRITER_MEMORY_USED_METRIC = "writerMemoryUsed";
+	private Metric nWriterMemoryUsed;
+	private final String WRITER_MEMORY_USAGE_METRIC = "writerMemoryUsage";
+	private Metric nWriterMemoryUsage;
+	private final String IN_FLIGHT_BUFFERS_METRIC = "inFlightBuffers";
+	private Metric nInFlightBuffers;
+	private final String WRITE_STALL_TIME_METRIC = "writeStallTime";
+	private Metric nWriteStallTime;
+	private final String SYNC_LATENCY_MAX_METRIC = "syncLatencyMax";
+	private Metric nSyncLatencyMax;
+	private final String SYNC_LATENCY_AVG_METRIC = "syncLatencyAvg";
+	private Metric nSyncLatencyAvg;
+	private final String CLOSE_LATENCY_MAX_METRIC = "closeLatencyMax";
+	private Metric nCloseLatencyMax;
+	private final String CLOSE_LATENCY_AVG_METRIC = "closeLatencyAvg";
+	private Metric nCloseLatencyAvg;
+	private final String RENAME_LATENCY_MAX_METRIC = "renameLatencyMax";
+	private Metric nRenameLatencyMax;
+	private final String RENAME_LATENCY_AVG_METRIC = "renameLatencyAvg";
+	private Metric nRenameLatencyAvg;
+	private final String ROLLS_BY_SIZE_METRIC = "nRollsBySize";
+	private Metric nRollsBySize;
+	private final String ROLLS_BY_TUPLE_COUNT_METRIC = "nRollsByTupleCount";
+	private Metric nRollsByTupleCount;
+	private final String ROLLS_BY_TIME_METRIC = "nRollsByTime";
+	private Metric nRollsByTime;
+	private final String ROLLS_BY_PUNCT_METRIC = "nRollsByPunct";
+	private Metric nRollsByPunct;
+	private final String ROLLS_BY_EVICTION_METRIC = "nRollsByEviction";
+	private Metric nRollsByEviction;
+	private final String ROLLS_BY_IDLE_METRIC = "nRollsByIdle";
+	private Metric nRollsByIdle;
+	private final String FLUSHES_BY_DELAY_METRIC = "nFlushesByDelay";
+	private Metric nFlushesByDelay;
+
+	// the latency metrics are the maximum and average of this interval, in milliseconds
+	private static final long METRICS_INTERVAL = 5000;
+	private final LatencyStatistics fStallTime = new LatencyStatistics();
+	private final LatencyStatistics fSyncLatency = new LatencyStatistics();
+	private final LatencyStatistics fCloseLatency = new LatencyStatistics();
+	private final LatencyStatistics fRenameLatency = new LatencyStatistics();
+	private ScheduledFuture<?> fMetricsTimer;
 
 	private HdfsFile fFileToWrite;
 
@@ -98,11 +171,123 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 	// this will be reset if the file index is 0.
 	private int dataIndex = 0;
 	private int fileIndex = -1;
+	// the files of the filename attribute roll over by the expiration policy,
+	// the names need %FILENUM, so that the next file gets a new one
+	private boolean fNumberedFileNames = false;
 	private boolean dynamicFilename;
 	private MetaType dataType = null;
 
+	// maximum number of files that are open at the same time in dynamic
+	// filename mode, the least recently used file is closed when exceeded
+	private int maxOpenFiles = 1;
+	// open files in dynamic filename mode, keyed by the filename attribute value
+	// or by the partition directories
+	private HdfsFilePool fOpenFiles;
+
+	// the values of the partition attributes select the directory of the file
+	private List<String> partitionAttributeNames = null;
+	private double partitionIdleTime = -1;
+	private long partitionMaxMemory = -1;
+	private HivePartitioner fPartitioner;
+	// the partition directories are inserted between these parts of the file parameter
+	private String fPartitionDir;
+	private String fPartitionFile;
+	// closes the partitions that are idle for partitionIdleTime
+	private ScheduledFuture<?> fIdleTimer;
+
+	// files written in parallel when the file parameter is set, the
+	// tuples are spread round-robin or by the hash of an attribute
+	private int writerParallelism = 1;
+	private String stripeAttributeName = null;
+	private int stripeIndex = -1;
+	// current file of each stripe, null for a single writer
+	private HdfsFile[] fStripes;
+	private int fCurrentStripe = 0;
+	private int fNextStripe = 0;
+
+	// the writers of the files take their buffers from this pool
+	private BufferPool fBufferPool;
+	private boolean sharedBufferPool = false;
+	private long bufferPoolSize = IHdfsConstants.BUFFER_POOL_SIZE_DEFAULT;
+	// limit of the write buffers held by the writers of the pool, 0 for no limit
+	private long writerMemoryBudget = 0;
+
+	// durability of written data
+	private SyncMode syncMode = SyncMode.hflush;
+	private SyncPolicy syncPolicy = SyncPolicy.perBuffer;
+	private long syncBytes = -1;
+	private double syncTime = -1;
+	// bounds the time written tuples wait in a write buffer that is not full,
+	// checked by a timer on the scheduler of the PE
+	private double maxFlushDelay = -1;
+	private ScheduledFuture<?> fLingerTimer;
+
+	// files that receive no tuples write their buffer early when the buffer pool asks for memory
+	private static final long SHRINK_INTERVAL = 1000;
+	private ScheduledFuture<?> fShrinkTimer;
+
+	// write buffers of each file
+	private int writeBufferSize = IHdfsConstants.WRITE_BUFFER_SIZE_DEFAULT;
+	private int writeBufferCount = IHdfsConstants.WRITE_BUFFER_COUNT_DEFAULT;
+	private boolean adaptiveBuffering = false;
+
+	// compression of the files, the codec is shared by all files of the operator
+	private CompressionType compression = null;
+	private int compressionThreads = 1;
+	private CompressionCodec fCodec;
+	// compresses the write buffers in parallel, only for concatenable formats
+	private ExecutorService fCompressionService;
+
+	// local copy of the data that is not synced, and of all data while HDFS fails
+	private String spillDirectory = null;
+	private long spillMaxSize = IHdfsConstants.SPILL_MAX_SIZE_DEFAULT;
+	private File fSpillDirectory;
+
+	// attributes of the files on HDFS, the defaults of the file system if not set
+	private long fileBlockSize = -1;
+	private int fileReplication = -1;
+	private int fileBufferSize = -1;
+	private String storagePolicy = null;
+	private String erasureCodingPolicy = null;
+	private HdfsCreateOptions fCreateOptions;
+
+	// closes, renames and reports the closed files off the tuple thread, one
+	// at a time so the files are reported in the order they were closed, and
+	// opens the next file ahead of its first tuple.  Created by the first roll,
+	// its thread ends when it is idle.
+	private static final long COMMIT_KEEP_ALIVE = 10000;
+	private ExecutorService fCommitService;
+	private final Object fCommitServiceLock = new Object();
+	// first failure of the commit thread, thrown by the next wait for the commits,
+	// or by the next tuple when the operator is not in a consistent region
+	private volatile Exception fCommitError;
+	// timers of the operator, timed by the scheduler of the PE and run on a task
+	// thread of the operator, so that the scheduler never waits for the operator lock or HDFS
+	private FileTimerScheduler fTimerScheduler;
+	// paths of the files that are not committed yet
+	private final List<String> fPendingPaths = Collections.synchronizedList(new ArrayList<String>());
+
+	// format of the files, record formats write whole tuples
+	private FileFormat format = FileFormat.raw;
+	private IRecordFormat fRecordFormat;
+	private TextRecordFormat fTextFormat;
+	private String delimiter = IHdfsConstants.DELIMITER_DEFAULT;
+	private long parquetRowGroupSize = IHdfsConstants.PARQUET_ROW_GROUP_SIZE_DEFAULT;
+	private long parquetMaxMemory = -1;
+	private boolean parquetDictionaryEncoding = true;
+	private int avroSyncInterval = IHdfsConstants.AVRO_SYNC_INTERVAL_DEFAULT;
+	private String keyAttributeName = null;
+	private String valueAttributeName = null;
+	private SequenceCompressionType sequenceCompressionType = SequenceCompressionType.block;
+	private int sequenceBlockSize = IHdfsConstants.SEQUENCE_BLOCK_SIZE_DEFAULT;
+
 	// file num for generating FILENUM variable in filename
 	private int fileNum = 0;
+	// file name variables resolved once, and the parsed file and tempFile names
+	private Map<String, String> fFileVariables;
+	private DateTimeFormatter fTimeFormatter;
+	private FileNameTemplate fFileTemplate;
+	private FileNameTemplate fTempFileTemplate;
 
 	// Variables required by the optional output port
 	// hasOutputPort signifies if the operator has output port defined or not
@@ -115,11 +300,22 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 	private LinkedBlockingQueue<OutputTuple> outputPortQueue;
 	private Thread outputPortThread;
 
-	private Thread fFileTimerThread;
+	// timers of the operator handling the timePerFile expiration policy of the open files
+	private Map<HdfsFile, ScheduledFuture<?>> fFileTimers = new HashMap<HdfsFile, ScheduledFuture<?>>();
 	private InitialState initState;
 	private boolean isRestarting;
 	private ConsistentRegionContext crContext;
 
+	// exactly-once mode, the tuples of each epoch between two checkpoints are
+	// written to hidden part files, which are committed to their files when the
+	// checkpoint is retired and deleted on reset
+	private boolean exactlyOnce = false;
+	private EpochParts fParts;
+	// file whose part was closed by the drain, continued by the checkpoint,
+	// and the milliseconds it had left before it expires by time
+	private HdfsFile fDrainedFile;
+	private long fDrainedFileTime = -1;
+
 	private class InitialState {
 		String path;
 		String rawFilename;
@@ -240,6 +436,383 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 		return encoding;
 	}
 
+	@Parameter(name = IHdfsConstants.PARAM_WRITER_PARALLELISM, optional = true, description = IHdfsConstants.DESC_SINK_WRITER_PARALLELISM)
+	public void setWriterParallelism(int writerParallelism) {
+		this.writerParallelism = writerParallelism;
+	}
+
+	public int getWriterParallelism() {
+		return writerParallelism;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_STRIPE_ATTR_NAME, optional = true, description = IHdfsConstants.DESC_SINK_STRIPE_ATTR_NAME)
+	public void setStripeAttributeName(String stripeAttributeName) {
+		this.stripeAttributeName = stripeAttributeName;
+	}
+
+	public String getStripeAttributeName() {
+		return stripeAttributeName;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_PARTITION_ATTR_NAMES, optional = true, cardinality = -1, description = IHdfsConstants.DESC_SINK_PARTITION_ATTR_NAMES)
+	public void setPartitionAttributeNames(List<String> partitionAttributeNames) {
+		this.partitionAttributeNames = partitionAttributeNames;
+	}
+
+	public List<String> getPartitionAttributeNames() {
+		return partitionAttributeNames;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_PARTITION_IDLE_TIME, optional = true, description = IHdfsConstants.DESC_SINK_PARTITION_IDLE_TIME)
+	public void setPartitionIdleTime(double partitionIdleTime) {
+		this.partitionIdleTime = partitionIdleTime;
+	}
+
+	public double getPartitionIdleTime() {
+		return partitionIdleTime;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_PARTITION_MAX_MEMORY, optional = true, description = IHdfsConstants.DESC_SINK_PARTITION_MAX_MEMORY)
+	public void setPartitionMaxMemory(long partitionMaxMemory) {
+		this.partitionMaxMemory = partitionMaxMemory;
+	}
+
+	public long getPartitionMaxMemory() {
+		return partitionMaxMemory;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_MAX_OPEN_FILES, optional = true, description = IHdfsConstants.DESC_SINK_MAX_OPEN_FILES)
+	public void setMaxOpenFiles(int maxOpenFiles) {
+		this.maxOpenFiles = maxOpenFiles;
+	}
+
+	public int getMaxOpenFiles() {
+		return maxOpenFiles;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_SHARED_BUFFER_POOL, optional = true, description = IHdfsConstants.DESC_SINK_SHARED_BUFFER_POOL)
+	public void setSharedBufferPool(boolean sharedBufferPool) {
+		this.sharedBufferPool = sharedBufferPool;
+	}
+
+	public boolean isSharedBufferPool() {
+		return sharedBufferPool;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_BUFFER_POOL_SIZE, optional = true, description = IHdfsConstants.DESC_SINK_BUFFER_POOL_SIZE)
+	public void setBufferPoolSize(long bufferPoolSize) {
+		this.bufferPoolSize = bufferPoolSize;
+	}
+
+	public long getBufferPoolSize() {
+		return bufferPoolSize;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_WRITER_MEMORY_BUDGET, optional = true, description = IHdfsConstants.DESC_SINK_WRITER_MEMORY_BUDGET)
+	public void setWriterMemoryBudget(long writerMemoryBudget) {
+		this.writerMemoryBudget = writerMemoryBudget;
+	}
+
+	public long getWriterMemoryBudget() {
+		return writerMemoryBudget;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_SYNC_MODE, optional = true, description = IHdfsConstants.DESC_SINK_SYNC_MODE)
+	public void setSyncMode(SyncMode syncMode) {
+		this.syncMode = syncMode;
+	}
+
+	public SyncMode getSyncMode() {
+		return syncMode;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_SYNC_POLICY, optional = true, description = IHdfsConstants.DESC_SINK_SYNC_POLICY)
+	public void setSyncPolicy(SyncPolicy syncPolicy) {
+		this.syncPolicy = syncPolicy;
+	}
+
+	public SyncPolicy getSyncPolicy() {
+		return syncPolicy;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_SYNC_BYTES, optional = true, description = IHdfsConstants.DESC_SINK_SYNC_BYTES)
+	public void setSyncBytes(long syncBytes) {
+		this.syncBytes = syncBytes;
+	}
+
+	public long getSyncBytes() {
+		return syncBytes;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_SYNC_TIME, optional = true, description = IHdfsConstants.DESC_SINK_SYNC_TIME)
+	public void setSyncTime(double syncTime) {
+		this.syncTime = syncTime;
+	}
+
+	public double getSyncTime() {
+		return syncTime;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_MAX_FLUSH_DELAY, optional = true, description = IHdfsConstants.DESC_SINK_MAX_FLUSH_DELAY)
+	public void setMaxFlushDelay(double maxFlushDelay) {
+		this.maxFlushDelay = maxFlushDelay;
+	}
+
+	public double getMaxFlushDelay() {
+		return maxFlushDelay;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_WRITE_BUFFER_SIZE, optional = true, description = IHdfsConstants.DESC_SINK_WRITE_BUFFER_SIZE)
+	public void setWriteBufferSize(int writeBufferSize) {
+		this.writeBufferSize = writeBufferSize;
+	}
+
+	public int getWriteBufferSize() {
+		return writeBufferSize;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_WRITE_BUFFER_COUNT, optional = true, description = IHdfsConstants.DESC_SINK_WRITE_BUFFER_COUNT)
+	public void setWriteBufferCount(int writeBufferCount) {
+		this.writeBufferCount = writeBufferCount;
+	}
+
+	public int getWriteBufferCount() {
+		return writeBufferCount;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_ADAPTIVE_BUFFERING, optional = true, description = IHdfsConstants.DESC_SINK_ADAPTIVE_BUFFERING)
+	public void setAdaptiveBuffering(boolean adaptiveBuffering) {
+		this.adaptiveBuffering = adaptiveBuffering;
+	}
+
+	public boolean isAdaptiveBuffering() {
+		return adaptiveBuffering;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_COMPRESSION, optional = true, description = IHdfsConstants.DESC_SINK_COMPRESSION)
+	public void setCompression(CompressionType compression) {
+		this.compression = compression;
+	}
+
+	public CompressionType getCompression() {
+		return compression;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_COMPRESSION_THREADS, optional = true, description = IHdfsConstants.DESC_SINK_COMPRESSION_THREADS)
+	public void setCompressionThreads(int compressionThreads) {
+		this.compressionThreads = compressionThreads;
+	}
+
+	public int getCompressionThreads() {
+		return compressionThreads;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_FILE_BLOCK_SIZE, optional = true, description = IHdfsConstants.DESC_SINK_FILE_BLOCK_SIZE)
+	public void setFileBlockSize(long fileBlockSize) {
+		this.fileBlockSize = fileBlockSize;
+	}
+
+	public long getFileBlockSize() {
+		return fileBlockSize;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_FILE_REPLICATION, optional = true, description = IHdfsConstants.DESC_SINK_FILE_REPLICATION)
+	public void setFileReplication(int fileReplication) {
+		this.fileReplication = fileReplication;
+	}
+
+	public int getFileReplication() {
+		return fileReplication;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_FILE_BUFFER_SIZE, optional = true, description = IHdfsConstants.DESC_SINK_FILE_BUFFER_SIZE)
+	public void setFileBufferSize(int fileBufferSize) {
+		this.fileBufferSize = fileBufferSize;
+	}
+
+	public int getFileBufferSize() {
+		return fileBufferSize;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_STORAGE_POLICY, optional = true, description = IHdfsConstants.DESC_SINK_STORAGE_POLICY)
+	public void setStoragePolicy(String storagePolicy) {
+		this.storagePolicy = storagePolicy;
+	}
+
+	public String getStoragePolicy() {
+		return storagePolicy;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_ERASURE_CODING_POLICY, optional = true, description = IHdfsConstants.DESC_SINK_ERASURE_CODING_POLICY)
+	public void setErasureCodingPolicy(String erasureCodingPolicy) {
+		this.erasureCodingPolicy = erasureCodingPolicy;
+	}
+
+	public String getErasureCodingPolicy() {
+		return erasureCodingPolicy;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_EXACTLY_ONCE, optional = true, description = IHdfsConstants.DESC_SINK_EXACTLY_ONCE)
+	public void setExactlyOnce(boolean exactlyOnce) {
+		this.exactlyOnce = exactlyOnce;
+	}
+
+	public boolean isExactlyOnce() {
+		return exactlyOnce;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_SPILL_DIRECTORY, optional = true, description = IHdfsConstants.DESC_SINK_SPILL_DIRECTORY)
+	public void setSpillDirectory(String spillDirectory) {
+		this.spillDirectory = spillDirectory;
+	}
+
+	public String getSpillDirectory() {
+		return spillDirectory;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_SPILL_MAX_SIZE, optional = true, description = IHdfsConstants.DESC_SINK_SPILL_MAX_SIZE)
+	public void setSpillMaxSize(long spillMaxSize) {
+		this.spillMaxSize = spillMaxSize;
+	}
+
+	public long getSpillMaxSize() {
+		return spillMaxSize;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_FORMAT, optional = true, description = IHdfsConstants.DESC_SINK_FORMAT)
+	public void setFormat(FileFormat format) {
+		this.format = format;
+	}
+
+	public FileFormat getFormat() {
+		return format;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_DELIMITER, optional = true, description = IHdfsConstants.DESC_SINK_DELIMITER)
+	public void setDelimiter(String delimiter) {
+		this.delimiter = delimiter;
+	}
+
+	public String getDelimiter() {
+		return delimiter;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_PARQUET_ROW_GROUP_SIZE, optional = true, description = IHdfsConstants.DESC_SINK_PARQUET_ROW_GROUP_SIZE)
+	public void setParquetRowGroupSize(long parquetRowGroupSize) {
+		this.parquetRowGroupSize = parquetRowGroupSize;
+	}
+
+	public long getParquetRowGroupSize() {
+		return parquetRowGroupSize;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_PARQUET_MAX_MEMORY, optional = true, description = IHdfsConstants.DESC_SINK_PARQUET_MAX_MEMORY)
+	public void setParquetMaxMemory(long parquetMaxMemory) {
+		this.parquetMaxMemory = parquetMaxMemory;
+	}
+
+	public long getParquetMaxMemory() {
+		return parquetMaxMemory;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_PARQUET_DICTIONARY_ENCODING, optional = true, description = IHdfsConstants.DESC_SINK_PARQUET_DICTIONARY_ENCODING)
+	public void setParquetDictionaryEncoding(boolean parquetDictionaryEncoding) {
+		this.parquetDictionaryEncoding = parquetDictionaryEncoding;
+	}
+
+	public boolean isParquetDictionaryEncoding() {
+		return parquetDictionaryEncoding;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_AVRO_SYNC_INTERVAL, optional = true, description = IHdfsConstants.DESC_SINK_AVRO_SYNC_INTERVAL)
+	public void setAvroSyncInterval(int avroSyncInterval) {
+		this.avroSyncInterval = avroSyncInterval;
+	}
+
+	public int getAvroSyncInterval() {
+		return avroSyncInterval;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_KEY_ATTR_NAME, optional = true, description = IHdfsConstants.DESC_SINK_KEY_ATTR_NAME)
+	public void setKeyAttributeName(String keyAttributeName) {
+		this.keyAttributeName = keyAttributeName;
+	}
+
+	public String getKeyAttributeName() {
+		return keyAttributeName;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_VALUE_ATTR_NAME, optional = true, description = IHdfsConstants.DESC_SINK_VALUE_ATTR_NAME)
+	public void setValueAttributeName(String valueAttributeName) {
+		this.valueAttributeName = valueAttributeName;
+	}
+
+	public String getValueAttributeName() {
+		return valueAttributeName;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_SEQUENCE_COMPRESSION_TYPE, optional = true, description = IHdfsConstants.DESC_SINK_SEQUENCE_COMPRESSION_TYPE)
+	public void setSequenceCompressionType(SequenceCompressionType sequenceCompressionType) {
+		this.sequenceCompressionType = sequenceCompressionType;
+	}
+
+	public SequenceCompressionType getSequenceCompressionType() {
+		return sequenceCompressionType;
+	}
+
+	@Parameter(name = IHdfsConstants.PARAM_SEQUENCE_BLOCK_SIZE, optional = true, description = IHdfsConstants.DESC_SINK_SEQUENCE_BLOCK_SIZE)
+	public void setSequenceBlockSize(int sequenceBlockSize) {
+		this.sequenceBlockSize = sequenceBlockSize;
+	}
+
+	public int getSequenceBlockSize() {
+		return sequenceBlockSize;
+	}
+
+	/**
+	 * @return the value of the format parameter, raw if not set
+	 */
+	private static FileFormat getFormatParameter(OperatorContext context) {
+		List<String> formatVal = context.getParameterValues(IHdfsConstants.PARAM_FORMAT);
+		if (formatVal == null || formatVal.isEmpty()) {
+			return FileFormat.raw;
+		}
+		String value = formatVal.get(0);
+		return FileFormat.valueOf(value.substring(value.lastIndexOf('.') + 1));
+	}
+
+	/**
+	 * @return the value of the compression parameter, null if not set
+	 */
+	private static CompressionType getCompressionParameter(OperatorContext context) {
+		List<String> compressionVal = context.getParameterValues(IHdfsConstants.PARAM_COMPRESSION);
+		if (compressionVal == null || compressionVal.isEmpty()) {
+			return null;
+		}
+		String value = compressionVal.get(0);
+		return CompressionType.valueOf(value.substring(value.lastIndexOf('.') + 1));
+	}
+
+	/**
+	 * @return true if the record format can write attributes of the type
+	 */
+	private static boolean isSupportedByFormat(FileFormat format, MetaType type) {
+		switch (format) {
+		case parquet:
+			return ParquetRecordFormat.isSupported(type);
+		case avro:
+			return AvroRecordFormat.isSupported(type);
+		case sequence:
+			return SequenceRecordFormat.isSupported(type);
+		case csv:
+		case json:
+		case delimited:
+			return TextRecordFormat.isSupported(type);
+		default:
+			return false;
+		}
+	}
+
 	/**
 	 * This function checks only things that can be determined at compile time.
 	 * 
@@ -252,6 +825,27 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 		StreamSchema inputSchema = checker.getOperatorContext().getStreamingInputs().get(0).getStreamSchema();
 		boolean hasDynamic = checker.getOperatorContext().getParameterNames().contains(
 				IHdfsConstants.PARAM_FILE_NAME_ATTR);
+
+		// record and text formats write all attributes, except the filename
+		FileFormat format = getFormatParameter(checker.getOperatorContext());
+		if (format == FileFormat.sequence) {
+			checkSequenceAttributes(checker, inputSchema);
+			return;
+		}
+		if (format != FileFormat.raw) {
+			String fileNameAttr = hasDynamic ? checker.getOperatorContext().getParameterValues(
+					IHdfsConstants.PARAM_FILE_NAME_ATTR).get(0) : null;
+			List<String> partitionAttrs = checker.getOperatorContext().getParameterValues(
+					IHdfsConstants.PARAM_PARTITION_ATTR_NAMES);
+			for (Attribute attribute : inputSchema) {
+				if (!attribute.getName().equals(fileNameAttr) && !partitionAttrs.contains(attribute.getName())
+						&& !isSupportedByFormat(format, attribute.getType().getMetaType())) {
+					checker.setInvalidContext(Messages.getString("HDFS_SINK_UNSUPPORTED_ATTR_TYPE_FORMAT",
+							attribute.getName(), attribute.getType().getMetaType(), format.name()), null);
+				}
+			}
+			return;
+		}
 		if (!hasDynamic && inputSchema.getAttributeCount() != 1) {
 			checker.setInvalidContext(Messages.getString("HDFS_SINK_ONE_ATTR_INPUT_PORT",
 					IHdfsConstants.PARAM_FILE_NAME_ATTR), new Object[] {});
@@ -292,19 +886,152 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 		}
 	}
 
+	/**
+	 * Check that the value attribute is set for the sequence format, and that the
+	 * key and value attributes exist and have a type the format can write.
+	 */
+	private static void checkSequenceAttributes(OperatorContextChecker checker, StreamSchema inputSchema) {
+		Set<String> parameters = checker.getOperatorContext().getParameterNames();
+		if (!parameters.contains(IHdfsConstants.PARAM_VALUE_ATTR_NAME)) {
+			checker.setInvalidContext(Messages.getString("HDFS_SINK_MISSING_PARAM_FORMAT",
+					IHdfsConstants.PARAM_VALUE_ATTR_NAME, FileFormat.sequence.name()), null);
+			return;
+		}
+		for (String param : new String[] { IHdfsConstants.PARAM_KEY_ATTR_NAME, IHdfsConstants.PARAM_VALUE_ATTR_NAME }) {
+			if (!parameters.contains(param)) {
+				continue;
+			}
+			String attrName = checker.getOperatorContext().getParameterValues(param).get(0);
+			Attribute attribute = inputSchema.getAttribute(attrName);
+			if (attribute == null) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_ATTR_NAME", attrName, param), null);
+			} else if (!SequenceRecordFormat.isSupported(attribute.getType().getMetaType())) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_UNSUPPORTED_ATTR_TYPE_FORMAT",
+						attrName, attribute.getType().getMetaType(), FileFormat.sequence.name()), null);
+			}
+		}
+	}
+
 	@ContextCheck(compile = true)
 	public static void checkCompileParameters(OperatorContextChecker checker) throws Exception {
 		checker.checkExcludedParameters("file", IHdfsConstants.PARAM_FILE_NAME_ATTR);
 		checker.checkExcludedParameters(IHdfsConstants.PARAM_FILE_NAME_ATTR, "file");
 		checker.checkExcludedParameters(IHdfsConstants.PARAM_BYTES_PER_FILE, IHdfsConstants.PARAM_TIME_PER_FILE,
-				IHdfsConstants.PARAM_TUPLES_PER_FILE, IHdfsConstants.PARAM_FILE_NAME_ATTR);
+				IHdfsConstants.PARAM_TUPLES_PER_FILE);
 		checker.checkExcludedParameters(IHdfsConstants.PARAM_TIME_PER_FILE, IHdfsConstants.PARAM_BYTES_PER_FILE,
-				IHdfsConstants.PARAM_TUPLES_PER_FILE, IHdfsConstants.PARAM_FILE_NAME_ATTR);
+				IHdfsConstants.PARAM_TUPLES_PER_FILE);
 		checker.checkExcludedParameters(IHdfsConstants.PARAM_TUPLES_PER_FILE, IHdfsConstants.PARAM_BYTES_PER_FILE,
-				IHdfsConstants.PARAM_TIME_PER_FILE, IHdfsConstants.PARAM_FILE_NAME_ATTR);
-		checker.checkExcludedParameters(IHdfsConstants.PARAM_FILE_NAME_ATTR, IHdfsConstants.PARAM_TUPLES_PER_FILE,
-				IHdfsConstants.PARAM_BYTES_PER_FILE, IHdfsConstants.PARAM_TIME_PER_FILE);
+				IHdfsConstants.PARAM_TIME_PER_FILE);
+		// maxOpenFiles only makes sense with dynamic filenames or partitions
+		if (!checker.getOperatorContext().getParameterNames().contains(IHdfsConstants.PARAM_PARTITION_ATTR_NAMES)) {
+			checker.checkDependentParameters(IHdfsConstants.PARAM_MAX_OPEN_FILES, IHdfsConstants.PARAM_FILE_NAME_ATTR);
+		}
+		// the partition directories are inserted into the file parameter
+		checker.checkDependentParameters(IHdfsConstants.PARAM_PARTITION_ATTR_NAMES, "file");
+		checker.checkExcludedParameters(IHdfsConstants.PARAM_PARTITION_ATTR_NAMES, IHdfsConstants.PARAM_WRITER_PARALLELISM);
+		checker.checkDependentParameters(IHdfsConstants.PARAM_PARTITION_IDLE_TIME, IHdfsConstants.PARAM_PARTITION_ATTR_NAMES);
+		checker.checkDependentParameters(IHdfsConstants.PARAM_PARTITION_MAX_MEMORY, IHdfsConstants.PARAM_PARTITION_ATTR_NAMES);
+		// the stripes are files of the file parameter
+		checker.checkExcludedParameters(IHdfsConstants.PARAM_WRITER_PARALLELISM, IHdfsConstants.PARAM_FILE_NAME_ATTR);
+		checker.checkDependentParameters(IHdfsConstants.PARAM_STRIPE_ATTR_NAME, IHdfsConstants.PARAM_WRITER_PARALLELISM);
+		checker.checkDependentParameters(IHdfsConstants.PARAM_SPILL_MAX_SIZE, IHdfsConstants.PARAM_SPILL_DIRECTORY);
+		// the replication of an erasure coded file is given by the policy, and
+		// its stream cannot be synced, which the spill relies on
+		checker.checkExcludedParameters(IHdfsConstants.PARAM_ERASURE_CODING_POLICY, IHdfsConstants.PARAM_FILE_REPLICATION,
+				IHdfsConstants.PARAM_SPILL_DIRECTORY);
+		if (checker.getOperatorContext().getParameterNames().contains(IHdfsConstants.PARAM_STRIPE_ATTR_NAME)) {
+			String attrName = checker.getOperatorContext().getParameterValues(IHdfsConstants.PARAM_STRIPE_ATTR_NAME).get(0);
+			if (checker.getOperatorContext().getStreamingInputs().get(0).getStreamSchema().getAttribute(attrName) == null) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_ATTR_NAME", attrName,
+						IHdfsConstants.PARAM_STRIPE_ATTR_NAME), null);
+			}
+		}
+
+	}
+
+	/**
+	 * Check that the partition attributes exist and can be used as directory
+	 * names, and that the format writes the other attributes.
+	 */
+	@ContextCheck(compile = true)
+	public static void checkPartitionAttributes(OperatorContextChecker checker) {
+		OperatorContext context = checker.getOperatorContext();
+		if (!context.getParameterNames().contains(IHdfsConstants.PARAM_PARTITION_ATTR_NAMES)) {
+			return;
+		}
+		if (getFormatParameter(context) == FileFormat.raw) {
+			checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_PARTITION_FORMAT"), null);
+		}
+		StreamSchema inputSchema = context.getStreamingInputs().get(0).getStreamSchema();
+		for (String attrName : context.getParameterValues(IHdfsConstants.PARAM_PARTITION_ATTR_NAMES)) {
+			Attribute attribute = inputSchema.getAttribute(attrName);
+			if (attribute == null) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_ATTR_NAME", attrName,
+						IHdfsConstants.PARAM_PARTITION_ATTR_NAMES), null);
+			} else if (!HivePartitioner.isSupported(attribute.getType().getMetaType())) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_PARTITION_ATTR_TYPE", attrName,
+						attribute.getType().getMetaType()), null);
+			}
+		}
+	}
+
+	/**
+	 * Check that the files are written by the buffered writer, which keeps the
+	 * spill file, and that the writer syncs, which releases its content.
+	 */
+	@ContextCheck(compile = true)
+	public static void checkSpill(OperatorContextChecker checker) {
+		OperatorContext context = checker.getOperatorContext();
+		if (!context.getParameterNames().contains(IHdfsConstants.PARAM_SPILL_DIRECTORY)) {
+			return;
+		}
+		FileFormat format = getFormatParameter(context);
+		if (!format.isBuffered()) {
+			checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_SPILL_FORMAT", format.name()), null);
+		}
+		List<String> syncModeVal = context.getParameterValues(IHdfsConstants.PARAM_SYNC_MODE);
+		if (!syncModeVal.isEmpty()) {
+			String value = syncModeVal.get(0);
+			if (SyncMode.valueOf(value.substring(value.lastIndexOf('.') + 1)) == SyncMode.none) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_SPILL_SYNC_MODE"), null);
+			}
+		}
+	}
+
+	/**
+	 * Check that the content of the format is written through the write buffers,
+	 * which the flush delay applies to.
+	 */
+	@ContextCheck(compile = true)
+	public static void checkMaxFlushDelay(OperatorContextChecker checker) {
+		OperatorContext context = checker.getOperatorContext();
+		if (!context.getParameterNames().contains(IHdfsConstants.PARAM_MAX_FLUSH_DELAY)) {
+			return;
+		}
+		FileFormat format = getFormatParameter(context);
+		if (!format.isBuffered()) {
+			checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_FLUSH_DELAY_FORMAT", format.name()), null);
+		}
+	}
 
+	/**
+	 * Check that the exactly-once mode has checkpoints to commit with, and
+	 * writes a single file at a time.
+	 */
+	@ContextCheck(compile = true)
+	public static void checkExactlyOnce(OperatorContextChecker checker) {
+		OperatorContext context = checker.getOperatorContext();
+		List<String> exactlyOnceVal = context.getParameterValues(IHdfsConstants.PARAM_EXACTLY_ONCE);
+		if (exactlyOnceVal.isEmpty() || !Boolean.valueOf(exactlyOnceVal.get(0))) {
+			return;
+		}
+		if (context.getOptionalContext(ConsistentRegionContext.class) == null) {
+			checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_EXACTLY_ONCE_REGION"), null);
+		}
+		if (context.getParameterNames().contains(IHdfsConstants.PARAM_FILE_NAME_ATTR)) {
+			checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_EXACTLY_ONCE_PARAM",
+					IHdfsConstants.PARAM_FILE_NAME_ATTR), null);
+		}
 	}
 
 	@ContextCheck(compile = true)
@@ -323,6 +1050,25 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_PARAM_TEMPFILE", "HDFS2FileSink"),
 						null);
 			}
+			// a Parquet file is only readable once its footer is written
+			// on close, it cannot be drained nor appended after a reset.
+			// An Avro file or a SequenceFile starts with a header and the
+			// sync marker of the file, it cannot be appended after a reset either
+			FileFormat format = getFormatParameter(opContext);
+			if (!format.isBuffered()) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_FORMAT_CONSISTENT_REGION", format.name()),
+						null);
+			}
+			// the checkpoint holds the state of a single file, and the
+			// region replays the tuples of a failed file instead of a spill
+			for (String param : new String[] { IHdfsConstants.PARAM_WRITER_PARALLELISM,
+					IHdfsConstants.PARAM_PARTITION_ATTR_NAMES, IHdfsConstants.PARAM_MAX_OPEN_FILES,
+					IHdfsConstants.PARAM_SPILL_DIRECTORY }) {
+				if (parameters.contains(param)) {
+					checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_PARAM_CONSISTENT_REGION",
+							param, "HDFS2FileSink"), null);
+				}
+			}
 		}
 	}
 
@@ -336,6 +1082,11 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 				if (timeFormatValue.get(0).isEmpty()) {
 					throw new Exception("Operator parameter timeFormat should not be empty.");
 				}
+				try {
+					FileNameTemplate.ofTimeFormat(timeFormatValue.get(0));
+				} catch (IllegalArgumentException e) {
+					throw new Exception("Operator parameter timeFormat is not a valid time format: " + e.getMessage());
+				}
 			}
 		}
 		for (String fileValue : paramValues) {
@@ -343,9 +1094,10 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 				if (!fileValue.contains(IHdfsConstants.FILE_VAR_HOST) && !fileValue.contains(
 						IHdfsConstants.FILE_VAR_PROCID) && !fileValue.contains(IHdfsConstants.FILE_VAR_PEID)
 						&& !fileValue.contains(IHdfsConstants.FILE_VAR_PELAUNCHNUM) && !fileValue.contains(
-								IHdfsConstants.FILE_VAR_TIME) && !fileValue.contains(IHdfsConstants.FILE_VAR_FILENUM)) {
+								IHdfsConstants.FILE_VAR_TIME) && !fileValue.contains(IHdfsConstants.FILE_VAR_FILENUM)
+						&& !fileValue.contains(IHdfsConstants.FILE_VAR_STRIPE)) {
 					throw new Exception(
-							"Unsupported % specification provided. Supported values are %HOST, %PEID, %FILENUM, %PROCID, %PELAUNCHNUM, %TIME");
+							"Unsupported % specification provided. Supported values are %HOST, %PEID, %FILENUM, %PROCID, %PELAUNCHNUM, %TIME, %STRIPE");
 				}
 			}
 		}
@@ -354,9 +1106,28 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 				if (!fileValue.contains(IHdfsConstants.FILE_VAR_HOST) && !fileValue.contains(
 						IHdfsConstants.FILE_VAR_PROCID) && !fileValue.contains(IHdfsConstants.FILE_VAR_PEID)
 						&& !fileValue.contains(IHdfsConstants.FILE_VAR_PELAUNCHNUM) && !fileValue.contains(
-								IHdfsConstants.FILE_VAR_TIME) && !fileValue.contains(IHdfsConstants.FILE_VAR_FILENUM)) {
+								IHdfsConstants.FILE_VAR_TIME) && !fileValue.contains(IHdfsConstants.FILE_VAR_FILENUM)
+						&& !fileValue.contains(IHdfsConstants.FILE_VAR_STRIPE)) {
 					throw new Exception(
-							"Unsupported % specification provided. Supported values are %HOST, %PEID, %FILENUM, %PROCID, %PELAUNCHNUM, %TIME");
+							"Unsupported % specification provided. Supported values are %HOST, %PEID, %FILENUM, %PROCID, %PELAUNCHNUM, %TIME, %STRIPE");
+				}
+			}
+		}
+
+		List<String> writerParallelismVal = checker.getOperatorContext().getParameterValues(
+				IHdfsConstants.PARAM_WRITER_PARALLELISM);
+		if (!writerParallelismVal.isEmpty()) {
+			if (Integer.valueOf(writerParallelismVal.get(0)) < 1) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_VALUE_POSITIVE",
+						IHdfsConstants.PARAM_WRITER_PARALLELISM), null);
+			}
+			// the stripes write to distinct files at the same time
+			else if (Integer.valueOf(writerParallelismVal.get(0)) > 1) {
+				for (String fileValue : paramValues) {
+					if (!fileValue.contains(IHdfsConstants.FILE_VAR_STRIPE)
+							&& !fileValue.contains(IHdfsConstants.FILE_VAR_FILENUM)) {
+						checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_FILE_STRIPES"), null);
+					}
 				}
 			}
 		}
@@ -387,23 +1158,199 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 			}
 		}
 
-		int dataAttribute = 0;
-		int fileAttribute = -1;
-		StreamSchema inputSchema = checker.getOperatorContext().getStreamingInputs().get(0).getStreamSchema();
-		if (checker.getOperatorContext().getParameterNames().contains(IHdfsConstants.PARAM_FILE_NAME_ATTR)) {
-			String fileNameAttr = checker.getOperatorContext().getParameterValues(IHdfsConstants.PARAM_FILE_NAME_ATTR)
-					.get(0);
-			fileAttribute = inputSchema.getAttribute(fileNameAttr).getIndex();
-			if (fileAttribute == 0) {
-				// default data attribute of 0 is not right, so need to fix
-				// that.
-				dataAttribute = 1;
+		// the perBytes and perTime sync policies need their threshold
+		List<String> syncPolicyVal = checker.getOperatorContext().getParameterValues(
+				IHdfsConstants.PARAM_SYNC_POLICY);
+		List<String> syncBytesVal = checker.getOperatorContext().getParameterValues(
+				IHdfsConstants.PARAM_SYNC_BYTES);
+		List<String> syncTimeVal = checker.getOperatorContext().getParameterValues(
+				IHdfsConstants.PARAM_SYNC_TIME);
+		if (!syncPolicyVal.isEmpty()) {
+			if (syncPolicyVal.get(0).endsWith(SyncPolicy.perBytes.name())
+					&& (syncBytesVal.isEmpty() || Long.valueOf(syncBytesVal.get(0)) <= 0)) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_VALUE_SYNC",
+						IHdfsConstants.PARAM_SYNC_BYTES, SyncPolicy.perBytes.name()), null);
+			}
+			if (syncPolicyVal.get(0).endsWith(SyncPolicy.perTime.name())
+					&& (syncTimeVal.isEmpty() || Double.valueOf(syncTimeVal.get(0)) <= 0)) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_VALUE_SYNC",
+						IHdfsConstants.PARAM_SYNC_TIME, SyncPolicy.perTime.name()), null);
 			}
 		}
-		// now, check the data attribute is an okay type.
-		MetaType dataType = inputSchema.getAttribute(dataAttribute).getType().getMetaType();
+
+		List<String> maxFlushDelayVal = checker.getOperatorContext().getParameterValues(
+				IHdfsConstants.PARAM_MAX_FLUSH_DELAY);
+		if (!maxFlushDelayVal.isEmpty()) {
+			if (Double.valueOf(maxFlushDelayVal.get(0)) <= 0) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_VALUE_POSITIVE",
+						IHdfsConstants.PARAM_MAX_FLUSH_DELAY), null);
+			}
+		}
+
+		List<String> bufferPoolSizeVal = checker.getOperatorContext().getParameterValues(
+				IHdfsConstants.PARAM_BUFFER_POOL_SIZE);
+		if (!bufferPoolSizeVal.isEmpty()) {
+			if (Long.valueOf(bufferPoolSizeVal.get(0)) < 0) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_VALUE_BUFFERPOOLSIZE"), null);
+			}
+		}
+
+		List<String> writerMemoryBudgetVal = checker.getOperatorContext().getParameterValues(
+				IHdfsConstants.PARAM_WRITER_MEMORY_BUDGET);
+		if (!writerMemoryBudgetVal.isEmpty()) {
+			if (Long.valueOf(writerMemoryBudgetVal.get(0)) <= 0) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_VALUE_POSITIVE",
+						IHdfsConstants.PARAM_WRITER_MEMORY_BUDGET), null);
+			}
+		}
+
+		List<String> writeBufferSizeVal = checker.getOperatorContext().getParameterValues(
+				IHdfsConstants.PARAM_WRITE_BUFFER_SIZE);
+		if (!writeBufferSizeVal.isEmpty()) {
+			if (Integer.valueOf(writeBufferSizeVal.get(0)) < 1) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_VALUE_POSITIVE",
+						IHdfsConstants.PARAM_WRITE_BUFFER_SIZE), null);
+			}
+		}
+
+		List<String> writeBufferCountVal = checker.getOperatorContext().getParameterValues(
+				IHdfsConstants.PARAM_WRITE_BUFFER_COUNT);
+		if (!writeBufferCountVal.isEmpty()) {
+			if (Integer.valueOf(writeBufferCountVal.get(0)) < 1) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_VALUE_POSITIVE",
+						IHdfsConstants.PARAM_WRITE_BUFFER_COUNT), null);
+			}
+		}
+
+		List<String> compressionThreadsVal = checker.getOperatorContext().getParameterValues(
+				IHdfsConstants.PARAM_COMPRESSION_THREADS);
+		if (!compressionThreadsVal.isEmpty()) {
+			if (Integer.valueOf(compressionThreadsVal.get(0)) < 1) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_VALUE_COMPRESSIONTHREADS"), null);
+			}
+			// only formats that allow concatenated blocks can be compressed in parallel
+			else if (Integer.valueOf(compressionThreadsVal.get(0)) > 1) {
+				List<String> compressionVal = checker.getOperatorContext().getParameterValues(
+						IHdfsConstants.PARAM_COMPRESSION);
+				if (compressionVal.isEmpty() || !(compressionVal.get(0).endsWith(CompressionType.gzip.name())
+						|| compressionVal.get(0).endsWith(CompressionType.zstd.name()))) {
+					checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_COMPRESSION_THREADS"), null);
+				}
+			}
+		}
+
+		// record formats compress with their own codecs
+		FileFormat format = getFormatParameter(checker.getOperatorContext());
+		CompressionType compressionType = getCompressionParameter(checker.getOperatorContext());
+		if (compressionType != null) {
+			if ((format == FileFormat.parquet && ParquetRecordFormat.toCodecName(compressionType) == null)
+					|| (format == FileFormat.avro && AvroRecordFormat.toCodec(compressionType) == null)) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_COMPRESSION_FORMAT",
+						compressionType.name(), format.name()), null);
+			}
+		}
+
+		List<String> parquetRowGroupSizeVal = checker.getOperatorContext().getParameterValues(
+				IHdfsConstants.PARAM_PARQUET_ROW_GROUP_SIZE);
+		if (!parquetRowGroupSizeVal.isEmpty()) {
+			if (Long.valueOf(parquetRowGroupSizeVal.get(0)) < 1) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_VALUE_POSITIVE",
+						IHdfsConstants.PARAM_PARQUET_ROW_GROUP_SIZE), null);
+			}
+		}
+
+		List<String> avroSyncIntervalVal = checker.getOperatorContext().getParameterValues(
+				IHdfsConstants.PARAM_AVRO_SYNC_INTERVAL);
+		if (!avroSyncIntervalVal.isEmpty()) {
+			if (Integer.valueOf(avroSyncIntervalVal.get(0)) < 1) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_VALUE_POSITIVE",
+						IHdfsConstants.PARAM_AVRO_SYNC_INTERVAL), null);
+			}
+		}
+
+		List<String> delimiterVal = checker.getOperatorContext().getParameterValues(IHdfsConstants.PARAM_DELIMITER);
+		if (!delimiterVal.isEmpty() && delimiterVal.get(0).isEmpty()) {
+			checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_VALUE_DELIMITER"), null);
+		}
+
+		List<String> sequenceBlockSizeVal = checker.getOperatorContext().getParameterValues(
+				IHdfsConstants.PARAM_SEQUENCE_BLOCK_SIZE);
+		if (!sequenceBlockSizeVal.isEmpty()) {
+			if (Integer.valueOf(sequenceBlockSizeVal.get(0)) < 1) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_VALUE_POSITIVE",
+						IHdfsConstants.PARAM_SEQUENCE_BLOCK_SIZE), null);
+			}
+		}
+
+		List<String> partitionIdleTimeVal = checker.getOperatorContext().getParameterValues(
+				IHdfsConstants.PARAM_PARTITION_IDLE_TIME);
+		if (!partitionIdleTimeVal.isEmpty()) {
+			if (Double.valueOf(partitionIdleTimeVal.get(0)) <= 0) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_VALUE_POSITIVE",
+						IHdfsConstants.PARAM_PARTITION_IDLE_TIME), null);
+			}
+		}
+
+		List<String> partitionMaxMemoryVal = checker.getOperatorContext().getParameterValues(
+				IHdfsConstants.PARAM_PARTITION_MAX_MEMORY);
+		if (!partitionMaxMemoryVal.isEmpty()) {
+			if (Long.valueOf(partitionMaxMemoryVal.get(0)) < 1) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_VALUE_POSITIVE",
+						IHdfsConstants.PARAM_PARTITION_MAX_MEMORY), null);
+			}
+		}
+
+		for (String param : new String[] { IHdfsConstants.PARAM_FILE_BLOCK_SIZE, IHdfsConstants.PARAM_FILE_REPLICATION,
+				IHdfsConstants.PARAM_FILE_BUFFER_SIZE }) {
+			List<String> paramVal = checker.getOperatorContext().getParameterValues(param);
+			if (!paramVal.isEmpty() && Long.valueOf(paramVal.get(0)) < 1) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_VALUE_POSITIVE", param), null);
+			}
+		}
+
+		List<String> spillMaxSizeVal = checker.getOperatorContext().getParameterValues(
+				IHdfsConstants.PARAM_SPILL_MAX_SIZE);
+		if (!spillMaxSizeVal.isEmpty()) {
+			if (Long.valueOf(spillMaxSizeVal.get(0)) < 1) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_VALUE_POSITIVE",
+						IHdfsConstants.PARAM_SPILL_MAX_SIZE), null);
+			}
+		}
+
+		List<String> maxOpenFilesVal = checker.getOperatorContext().getParameterValues(
+				IHdfsConstants.PARAM_MAX_OPEN_FILES);
+		if (!maxOpenFilesVal.isEmpty()) {
+			if (Integer.valueOf(maxOpenFilesVal.get(0)) < 1) {
+				checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_VALUE_MAXOPENFILES"), null);
+			}
+			// several temporary files are open at the same time, they need
+			// distinct names
+			else if (Integer.valueOf(maxOpenFilesVal.get(0)) > 1) {
+				for (String fileValue : tempFileValues) {
+					if (!fileValue.contains(IHdfsConstants.FILE_VAR_FILENUM)) {
+						checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_TEMPFILE_MAXOPENFILES"), null);
+					}
+				}
+			}
+		}
+
+		int dataAttribute = 0;
+		int fileAttribute = -1;
+		StreamSchema inputSchema = checker.getOperatorContext().getStreamingInputs().get(0).getStreamSchema();
+		if (checker.getOperatorContext().getParameterNames().contains(IHdfsConstants.PARAM_FILE_NAME_ATTR)) {
+			String fileNameAttr = checker.getOperatorContext().getParameterValues(IHdfsConstants.PARAM_FILE_NAME_ATTR)
+					.get(0);
+			fileAttribute = inputSchema.getAttribute(fileNameAttr).getIndex();
+			if (fileAttribute == 0) {
+				// default data attribute of 0 is not right, so need to fix
+				// that.
+				dataAttribute = 1;
+			}
+		}
+		// now, check the data attribute is an okay type.
+		MetaType dataType = inputSchema.getAttribute(dataAttribute).getType().getMetaType();
 		// check that the data type is okay.
-		if (dataType != MetaType.RSTRING && dataType != MetaType.USTRING && dataType != MetaType.BLOB) {
+		if (format == FileFormat.raw && dataType != MetaType.RSTRING && dataType != MetaType.USTRING && dataType != MetaType.BLOB) {
 			checker.setInvalidContext(Messages.getString("HDFS_SINK_INVALID_DATA_ATTR_TYPE", dataType), null);
 		}
 		if (fileAttribute != -1) {
@@ -557,6 +1504,22 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 
 		super.initialize(context);
 
+		// the parts of a file are only committed atomically if the file system concatenates them
+		if (exactlyOnce && !getHdfsClient().canConcat()) {
+			throw new Exception(Messages.getString("HDFS_SINK_INVALID_EXACTLY_ONCE_CONCAT", getHdfsUri()));
+		}
+		if (exactlyOnce) {
+			fParts = new EpochParts(getHdfsClient(), context.getName(), fRenameLatency, new EpochParts.CommitListener() {
+				@Override
+				public void fileCommitted(String target) throws Exception {
+					nSikedFiles.increment();
+					if (hasOutputPort) {
+						submitOnOutputPort(target, getHdfsClient().getFileSize(target));
+					}
+				}
+			});
+		}
+
 		// register for data governance
 		// only register if static filename mode
 		TRACE.log(TraceLevel.INFO, "HDFS2FileSink - Data Governance - file: " + file + " and HdfsUri: " + getHdfsUri());
@@ -602,29 +1565,153 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 				dataIndex = 0;
 			else if (fileIndex == 0) {
 				dataIndex = 1;
+			} else if (format != FileFormat.raw) {
+				// record and text formats write all other attributes
+				dataIndex = 0;
 			} else {
 				throw new Exception("Attribute " + fileAttrName
 						+ " must be either attribute 0 or 1 on the input stream.");
 			}
+			fOpenFiles = new HdfsFilePool(maxOpenFiles);
+			fNumberedFileNames = getBytesPerFile() > 0 || getTuplesPerFile() > 0 || getTimePerFile() > 0;
+		}
+		fTimerScheduler = new FileTimerScheduler(context.getThreadFactory());
+
+		if (partitionAttributeNames != null) {
+			// the partition of each tuple selects its file, like the filename
+			// attribute does in dynamic filename mode
+			dynamicFilename = true;
+			fPartitioner = new HivePartitioner(context.getStreamingInputs().get(0).getStreamSchema(),
+					partitionAttributeNames);
+			int slash = file.lastIndexOf('/');
+			fPartitionDir = file.substring(0, slash + 1);
+			fPartitionFile = file.substring(slash + 1);
+			fOpenFiles = new HdfsFilePool(getMaxOpenPartitions());
+			if (partitionIdleTime > 0) {
+				final long idleTime = (long) (partitionIdleTime * 1000);
+				fIdleTimer = fTimerScheduler.scheduleWithFixedDelay(new Runnable() {
+
+					@Override
+					public void run() {
+						try {
+							closeIdlePartitions(idleTime);
+						} catch (Exception e) {
+							TRACE.log(TraceLevel.DEBUG, "Exception in partition idle timer.", e);
+						}
+					}
+				}, idleTime, Math.max(1, idleTime / 2), TimeUnit.MILLISECONDS);
+			}
 		}
 		StreamSchema inputSchema = context.getStreamingInputs().get(0).getStreamSchema();
 		// Save the data type for later use.
 		dataType = inputSchema.getAttribute(dataIndex).getType().getMetaType();
+
+		if (sharedBufferPool) {
+			fBufferPool = BufferPool.getSharedPool(bufferPoolSize, writerMemoryBudget);
+		} else {
+			fBufferPool = new BufferPool(bufferPoolSize, writerMemoryBudget);
+		}
+
+		fCreateOptions = new HdfsCreateOptions(fileBlockSize, (short) fileReplication, fileBufferSize, storagePolicy,
+				erasureCodingPolicy);
+
+		// a relative spill directory is in the data directory of the application
+		if (spillDirectory != null) {
+			fSpillDirectory = new File(spillDirectory);
+			if (!fSpillDirectory.isAbsolute()) {
+				fSpillDirectory = new File(context.getPE().getDataDirectory(), spillDirectory);
+			}
+			fSpillDirectory.mkdirs();
+			if (!fSpillDirectory.isDirectory()) {
+				throw new IOException("Spill directory is not a directory: " + fSpillDirectory.getPath());
+			}
+		}
+
+
+		// record formats compress inside the file
+		if (compression != null && format.isBuffered()) {
+			Configuration conf = (fs != null) ? fs.getConf() : new Configuration();
+			fCodec = ReflectionUtils.newInstance(compression.getCodecClass(), conf);
+			if (compressionThreads > 1 && compression.isConcatenable()) {
+				fCompressionService = Executors.newFixedThreadPool(compressionThreads, context.getThreadFactory());
+			}
+		}
+
+		// the filename and partition attributes are not written to the files
+		Set<Integer> excludedIndexes = new HashSet<Integer>();
+		if (fileIndex >= 0) {
+			excludedIndexes.add(fileIndex);
+		}
+		if (fPartitioner != null) {
+			for (int index : fPartitioner.getIndexes()) {
+				excludedIndexes.add(index);
+			}
+		}
+
+		if (format == FileFormat.parquet) {
+			// all open files buffer a row group, keep them within the memory limit
+			long rowGroupSize = parquetRowGroupSize;
+			if (parquetMaxMemory > 0) {
+				int openFiles = dynamicFilename ? fOpenFiles.getMaxOpenFiles() : writerParallelism;
+				rowGroupSize = Math.max(1, Math.min(rowGroupSize, parquetMaxMemory / openFiles));
+			}
+			Configuration conf = (fs != null) ? fs.getConf() : new Configuration();
+			fRecordFormat = new ParquetRecordFormat(inputSchema, excludedIndexes, conf,
+					ParquetRecordFormat.toCodecName(compression), rowGroupSize, parquetDictionaryEncoding);
+		} else if (format == FileFormat.avro) {
+			fRecordFormat = new AvroRecordFormat(inputSchema, excludedIndexes,
+					AvroRecordFormat.toCodec(compression), avroSyncInterval);
+		} else if (format == FileFormat.sequence) {
+			Configuration conf = (fs != null) ? fs.getConf() : new Configuration();
+			Attribute keyAttr = (keyAttributeName != null) ? inputSchema.getAttribute(keyAttributeName) : null;
+			Attribute valueAttr = inputSchema.getAttribute(valueAttributeName);
+			CompressionCodec codec = null;
+			SequenceFile.CompressionType compressionType = SequenceFile.CompressionType.NONE;
+			if (compression != null) {
+				codec = ReflectionUtils.newInstance(compression.getCodecClass(), conf);
+				compressionType = sequenceCompressionType.getType();
+			}
+			fRecordFormat = new SequenceRecordFormat(keyAttr != null ? keyAttr.getIndex() : -1,
+					keyAttr != null ? keyAttr.getType().getMetaType() : null,
+					valueAttr.getIndex(), valueAttr.getType().getMetaType(),
+					conf, compressionType, codec, sequenceBlockSize);
+		} else if (format != FileFormat.raw) {
+			fTextFormat = new TextRecordFormat(inputSchema, excludedIndexes, format, delimiter);
+		}
+
+		// the files report to the metrics
+		initMetrics(context);
+
+		// the host, process and PE of the file names do not change, look them up once
+		fFileVariables = new HashMap<String, String>();
+		fFileVariables.put(IHdfsConstants.FILE_VAR_HOST, InetAddress.getLocalHost().getHostName());
+		fFileVariables.put(IHdfsConstants.FILE_VAR_PROCID, ManagementFactory.getRuntimeMXBean().getName());
+		fFileVariables.put(IHdfsConstants.FILE_VAR_PEID, context.getPE().getPEId().toString());
+		fFileVariables.put(IHdfsConstants.FILE_VAR_PELAUNCHNUM, String.valueOf(context.getPE().getRelaunchCount()));
+		fTimeFormatter = FileNameTemplate.ofTimeFormat(timeFormat).withZone(ZoneId.systemDefault());
+		if (file != null) {
+			fFileTemplate = new FileNameTemplate(file, fFileVariables, fTimeFormatter);
+		}
+		if (!tempFile.isEmpty()) {
+			fTempFileTemplate = new FileNameTemplate(tempFile, fFileVariables, fTimeFormatter);
+		}
+
 		if (!dynamicFilename) {
-			Date date = Calendar.getInstance().getTime();
-			currentFileName = refreshCurrentFileName(file, date, false);
-			if (tempFile.isEmpty()) {
-				createFile(currentFileName);
+			if (writerParallelism > 1) {
+				fStripes = new HdfsFile[writerParallelism];
+				if (stripeAttributeName != null) {
+					stripeIndex = inputSchema.getAttribute(stripeAttributeName).getIndex();
+				}
+				for (fCurrentStripe = 0; fCurrentStripe < writerParallelism; fCurrentStripe++) {
+					openFile(file);
+				}
 			} else {
-				currentTempFileName = refreshCurrentFileName(tempFile, date, true);
-				createFile(currentTempFileName);
+				openFile(file);
 			}
 		}
 
 		initRestarting(context);
 
-		initMetrics(context);
-
 		// take a snapshot of initial state
 		initState = new InitialState();
 	}
@@ -632,6 +1719,131 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 	private void initMetrics(OperatorContext context) {
 		nSikedFiles = context.getMetrics().createCustomMetric(NUM_SINK_METRIC, "Number of sinked files ",
 				Metric.Kind.COUNTER);
+		nBufferPoolHits = context.getMetrics().createCustomMetric(BUFFER_POOL_HITS_METRIC,
+				"Number of write buffers taken from the buffer pool ", Metric.Kind.COUNTER);
+		nBufferPoolMisses = context.getMetrics().createCustomMetric(BUFFER_POOL_MISSES_METRIC,
+				"Number of write buffers allocated because the buffer pool had no idle buffer ", Metric.Kind.COUNTER);
+		nWriteStalls = context.getMetrics().createCustomMetric(WRITE_STALLS_METRIC,
+				"Number of times writing a tuple waited until data in flight to HDFS was written ", Metric.Kind.COUNTER);
+		nDrainTime = context.getMetrics().createCustomMetric(DRAIN_TIME_METRIC,
+				"Time in milliseconds the last drain of a consistent region took to write the open files ", Metric.Kind.GAUGE);
+		nTuplesWritten = context.getMetrics().createCustomMetric(TUPLES_WRITTEN_METRIC,
+				"Number of tuples written to files ", Metric.Kind.COUNTER);
+		nBytesWritten = context.getMetrics().createCustomMetric(BYTES_WRITTEN_METRIC,
+				"Number of bytes written to files, before compression ", Metric.Kind.COUNTER);
+		nBytesBuffered = context.getMetrics().createCustomMetric(BYTES_BUFFERED_METRIC,
+				"Number of bytes of the open files buffered in memory and not written to HDFS yet ", Metric.Kind.GAUGE);
+		nWriterMemoryUsed = context.getMetrics().createCustomMetric(WRITER_MEMORY_USED_METRIC,
+				"Number of bytes of the write buffers held by the open files, of all operators in the PE with a shared buffer pool ", Metric.Kind.GAUGE);
+		nWriterMemoryUsage = context.getMetrics().createCustomMetric(WRITER_MEMORY_USAGE_METRIC,
+				"Percentage of writerMemoryBudget held by the write buffers of the open files ", Metric.Kind.GAUGE);
+		nInFlightBuffers = context.getMetrics().createCustomMetric(IN_FLIGHT_BUFFERS_METRIC,
+				"Number of write buffers of the open files handed to the flush threads and not written to HDFS yet ", Metric.Kind.GAUGE);
+		nWriteStallTime = context.getMetrics().createCustomMetric(WRITE_STALL_TIME_METRIC,
+				"Time in milliseconds writing tuples waited until data in flight to HDFS was written ", Metric.Kind.COUNTER);
+		nSyncLatencyMax = context.getMetrics().createCustomMetric(SYNC_LATENCY_MAX_METRIC,
+				"Maximum time in milliseconds of an hflush or hsync of a file in the last interval ", Metric.Kind.GAUGE);
+		nSyncLatencyAvg = context.getMetrics().createCustomMetric(SYNC_LATENCY_AVG_METRIC,
+				"Average time in milliseconds of an hflush or hsync of a file in the last interval ", Metric.Kind.GAUGE);
+		nCloseLatencyMax = context.getMetrics().createCustomMetric(CLOSE_LATENCY_MAX_METRIC,
+				"Maximum time in milliseconds of closing a file in the last interval ", Metric.Kind.GAUGE);
+		nCloseLatencyAvg = context.getMetrics().createCustomMetric(CLOSE_LATENCY_AVG_METRIC,
+				"Average time in milliseconds of closing a file in the last interval ", Metric.Kind.GAUGE);
+		nRenameLatencyMax = context.getMetrics().createCustomMetric(RENAME_LATENCY_MAX_METRIC,
+				"Maximum time in milliseconds of renaming a temporary file in the last interval ", Metric.Kind.GAUGE);
+		nRenameLatencyAvg = context.getMetrics().createCustomMetric(RENAME_LATENCY_AVG_METRIC,
+				"Average time in milliseconds of renaming a temporary file in the last interval ", Metric.Kind.GAUGE);
+		nRollsBySize = context.getMetrics().createCustomMetric(ROLLS_BY_SIZE_METRIC,
+				"Number of files closed because they reached bytesPerFile ", Metric.Kind.COUNTER);
+		nRollsByTupleCount = context.getMetrics().createCustomMetric(ROLLS_BY_TUPLE_COUNT_METRIC,
+				"Number of files closed because they reached tuplesPerFile ", Metric.Kind.COUNTER);
+		nRollsByTime = context.getMetrics().createCustomMetric(ROLLS_BY_TIME_METRIC,
+				"Number of files closed because they reached timePerFile ", Metric.Kind.COUNTER);
+		nRollsByPunct = context.getMetrics().createCustomMetric(ROLLS_BY_PUNCT_METRIC,
+				"Number of files closed on a window punctuation by closeOnPunct ", Metric.Kind.COUNTER);
+		nRollsByEviction = context.getMetrics().createCustomMetric(ROLLS_BY_EVICTION_METRIC,
+				"Number of files closed to make room for a new file when maxOpenFiles files are open ", Metric.Kind.COUNTER);
+		nRollsByIdle = context.getMetrics().createCustomMetric(ROLLS_BY_IDLE_METRIC,
+				"Number of partition files closed because they received no tuples for partitionIdleTime ", Metric.Kind.COUNTER);
+		nFlushesByDelay = context.getMetrics().createCustomMetric(FLUSHES_BY_DELAY_METRIC,
+				"Number of write buffers written before they were full because their content waited for maxFlushDelay ", Metric.Kind.COUNTER);
+
+		if (maxFlushDelay > 0) {
+			// checked four times per delay, so content waits at most a quarter longer,
+			// the shared scheduler hands the check to a task thread of the operator
+			final long maxDelay = Math.max(1, (long) (maxFlushDelay * 1000));
+			fLingerTimer = fTimerScheduler.scheduleWithFixedDelay(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						flushLingeringFiles(maxDelay);
+					} catch (Exception e) {
+						TRACE.log(TraceLevel.DEBUG, "Exception in flush delay timer.", e);
+					}
+				}
+			}, Math.max(1, maxDelay / 4), Math.max(1, maxDelay / 4), TimeUnit.MILLISECONDS);
+		}
+
+		if (writerMemoryBudget > 0 || sharedBufferPool) {
+			fShrinkTimer = fTimerScheduler.scheduleWithFixedDelay(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						shrinkRequestedFiles();
+					} catch (Exception e) {
+						TRACE.log(TraceLevel.DEBUG, "Exception in writer memory timer.", e);
+					}
+				}
+			}, SHRINK_INTERVAL, SHRINK_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+
+		fMetricsTimer = fTimerScheduler.scheduleAtFixedRate(new Runnable() {
+
+			@Override
+			public void run() {
+				publishMetrics();
+			}
+		}, METRICS_INTERVAL, METRICS_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Update the metrics that are sampled, and end the interval of the latency metrics.
+	 */
+	private void publishMetrics() {
+		long bufferedBytes = 0;
+		int inFlightBuffers = 0;
+		synchronized (this) {
+			for (HdfsFile openFile : getOpenFiles()) {
+				bufferedBytes += openFile.getBufferedBytes();
+				inFlightBuffers += openFile.getInFlightBuffers();
+			}
+		}
+		nBytesBuffered.setValue(bufferedBytes);
+		long writerMemory = fBufferPool.getLeasedBytes();
+		nWriterMemoryUsed.setValue(writerMemory);
+		long budget = fBufferPool.getMaxLeasedBytes();
+		if (budget > 0) {
+			nWriterMemoryUsage.setValue(writerMemory * 100 / budget);
+		}
+		nInFlightBuffers.setValue(inFlightBuffers);
+		nWriteStallTime.setValue(fStallTime.getTotalMillis());
+		fSyncLatency.publish(nSyncLatencyMax, nSyncLatencyAvg);
+		fCloseLatency.publish(nCloseLatencyMax, nCloseLatencyAvg);
+		fRenameLatency.publish(nRenameLatencyMax, nRenameLatencyAvg);
+	}
+
+	/**
+	 * Buffers are taken from the pool when a file is written first and returned
+	 * when it is closed, so the counters are updated at file boundaries.
+	 * With a shared pool the counters cover all operators in the PE.
+	 */
+	private void updateBufferPoolMetrics() {
+		if (nBufferPoolHits != null) {
+			nBufferPoolHits.setValue(fBufferPool.getHits());
+			nBufferPoolMisses.setValue(fBufferPool.getMisses());
+		}
 	}
 
 	private void registerForDataGovernance(String serverURL, String file) {
@@ -653,6 +1865,97 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 		setTagData(IGovernanceConstants.TAG_OPERATOR_IGC, properties);
 	}
 
+	/**
+	 * @return the number of partitions that can be open at the same time, so
+	 * that the memory they buffer stays within partitionMaxMemory
+	 */
+	private int getMaxOpenPartitions() {
+		if (partitionMaxMemory <= 0) {
+			return maxOpenFiles;
+		}
+		long writerMemory;
+		if (format == FileFormat.parquet) {
+			writerMemory = parquetRowGroupSize;
+		} else if (format == FileFormat.avro) {
+			writerMemory = avroSyncInterval;
+		} else if (format == FileFormat.sequence) {
+			writerMemory = sequenceBlockSize;
+		} else {
+			writerMemory = (long) writeBufferSize * writeBufferCount;
+		}
+		return (int) Math.max(1, Math.min(maxOpenFiles, partitionMaxMemory / writerMemory));
+	}
+
+	/**
+	 * Write the buffers of the open files whose content waited for the delay,
+	 * synchronized with the tuples written to them.
+	 */
+	private synchronized void flushLingeringFiles(long maxDelay) throws Exception {
+		for (HdfsFile openFile : getOpenFiles()) {
+			if (openFile.flushIfLingering(maxDelay)) {
+				nFlushesByDelay.increment();
+			}
+		}
+		shrinkRequestedFiles();
+	}
+
+	/**
+	 * Write the buffers of the open files that the buffer pool asked for memory,
+	 * synchronized with the tuples written to them, so that files that receive no
+	 * tuples give memory back too.
+	 */
+	private synchronized void shrinkRequestedFiles() throws Exception {
+		for (HdfsFile openFile : getOpenFiles()) {
+			openFile.shrinkIfRequested();
+		}
+	}
+
+	private synchronized void closeIdlePartitions(long idleTime) throws Exception {
+		for (HdfsFile idleFile : fOpenFiles.idleFiles(System.currentTimeMillis() - idleTime)) {
+			TRACE.log(TraceLevel.DEBUG, "Close idle partition: " + idleFile.getPath());
+			nRollsByIdle.increment();
+			closeFile(idleFile);
+		}
+	}
+
+	/**
+	 * Resolve the variables of the given file name and create the file, or the
+	 * temporary file if the tempFile parameter is set.  The new file becomes
+	 * the file to write to.
+	 */
+	private void openFile(String baseName) throws Exception {
+		Instant date = Instant.now();
+		currentFileName = refreshCurrentFileName(baseName, date, false);
+		String realName = currentFileName;
+		if (!tempFile.isEmpty()) {
+			currentTempFileName = refreshCurrentFileName(tempFile, date, true);
+			realName = currentTempFileName;
+		} else if (exactlyOnce) {
+			realName = fParts.newPartPath(currentFileName);
+		}
+		// a file of the same name must be committed before it is created again
+		if (fPendingPaths.contains(realName) || fPendingPaths.contains(currentFileName)) {
+			waitForCommits();
+		}
+		createFile(realName);
+		fFileToWrite.setTargetPath(currentFileName);
+		if (fStripes != null) {
+			fStripes[fCurrentStripe] = fFileToWrite;
+		}
+	}
+
+	/**
+	 * @return the stripe of the tuple, by the hash of the stripe attribute, or round-robin
+	 */
+	private int nextStripe(Tuple tuple) {
+		if (stripeIndex >= 0) {
+			return (tuple.getObject(stripeIndex).hashCode() & Integer.MAX_VALUE) % fStripes.length;
+		}
+		int stripe = fNextStripe;
+		fNextStripe = (fNextStripe + 1) % fStripes.length;
+		return stripe;
+	}
+
 	private void createFile(String filename) {
 
 		if (TRACE.isLoggable(TraceLevel.DEBUG)) {
@@ -661,6 +1964,19 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 
 		fFileToWrite = new HdfsFile(getOperatorContext(), filename, getHdfsClient(), getEncoding(), dataIndex,
 				dataType);
+		fFileToWrite.setBufferPool(fBufferPool);
+		// sync time in parameter specified in seconds, need to convert to
+		// miliseconds
+		fFileToWrite.setSync(syncMode, syncPolicy, syncBytes, (long) (syncTime * 1000));
+		fFileToWrite.setBuffering(writeBufferSize, writeBufferCount, adaptiveBuffering);
+		fFileToWrite.setStallMetric(nWriteStalls);
+		fFileToWrite.setLatencyStatistics(fStallTime, fSyncLatency);
+		fFileToWrite.setCompression(fCodec, fCompressionService);
+		fFileToWrite.setSpill(fSpillDirectory, spillMaxSize, fTimerScheduler);
+		fFileToWrite.setCreateOptions(fCreateOptions);
+		fFileToWrite.setRecordFormat(fRecordFormat);
+		fFileToWrite.setTextFormat(fTextFormat);
+		updateBufferPoolMetrics();
 		if (getTimePerFile() > 0) {
 			fFileToWrite.setExpPolicy(EnumFileExpirationPolicy.TIME);
 			// time in parameter specified in seconds, need to convert to
@@ -679,55 +1995,55 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 
 	private void createFileTimer(final double time, final HdfsFile file) {
 
-		// This thread handles the timePerFile expiration policy
-		// This thread sleeps for the time specified.
-		// When it wakes up, it will set the file as expired and close it
+		// This timer handles the timePerFile expiration policy
+		// It runs after the time specified on the timer task service,
+		// it will set the file as expired and close it
 		// When the next tuple comes in, we check that the file has
 		// expired and will create a new file for writing
-		fFileTimerThread = getOperatorContext().getThreadFactory().newThread(new Runnable() {
+		TRACE.log(TraceLevel.DEBUG, "File Timer Started: " + time);
+		ScheduledFuture<?> fileTimer = fTimerScheduler.schedule(new Runnable() {
 
 			@Override
 			public void run() {
 				try {
-					TRACE.log(TraceLevel.DEBUG, "File Timer Started: " + time);
-					Thread.sleep((long) time);
 					fileTimerExpired(file);
 				} catch (Exception e) {
-					TRACE.log(TraceLevel.DEBUG, "Exception in file timer thread.", e);
+					TRACE.log(TraceLevel.DEBUG, "Exception in file timer.", e);
 				}
 			}
-		});
-		fFileTimerThread.setDaemon(false);
-		fFileTimerThread.start();
+		}, (long) time, TimeUnit.MILLISECONDS);
+		fFileTimers.put(file, fileTimer);
 	}
 
-	private String refreshCurrentFileName(String baseName, Date date, boolean isTempFile) throws UnknownHostException {
+	private String refreshCurrentFileName(String baseName, Instant date, boolean isTempFile) {
 
 		// We must preserve the file parameter in order for us
 		// to support multi-file in the operator
 
-		// Check if % specification mentioned are valid or not
 		String currentFileName = baseName;
 		if (currentFileName.contains(IHdfsConstants.FILE_VAR_PREFIX)) {
-			// Replace % specifications with relevant values.
-			currentFileName = currentFileName.replace(IHdfsConstants.FILE_VAR_HOST, InetAddress.getLocalHost()
-					.getHostName());
-			currentFileName = currentFileName.replace(IHdfsConstants.FILE_VAR_PROCID, ManagementFactory
-					.getRuntimeMXBean().getName());
-			currentFileName = currentFileName.replace(IHdfsConstants.FILE_VAR_PEID, getOperatorContext().getPE()
-					.getPEId().toString());
-			currentFileName = currentFileName.replace(IHdfsConstants.FILE_VAR_PELAUNCHNUM, String.valueOf(
-					getOperatorContext().getPE().getRelaunchCount()));
-			SimpleDateFormat sdf = new SimpleDateFormat(timeFormat);
-			currentFileName = currentFileName.replace(IHdfsConstants.FILE_VAR_TIME, sdf.format(date));
+			// the names of the file and tempFile parameters are parsed once,
+			// file names from the tuples are parsed when their file is opened
+			FileNameTemplate template;
+			if (isTempFile) {
+				template = fTempFileTemplate;
+			} else if (baseName.equals(file)) {
+				template = fFileTemplate;
+			} else {
+				template = new FileNameTemplate(baseName, fFileVariables, fTimeFormatter);
+			}
 			int anumber = fileNum;
 			if (isTempFile)
 				anumber--; // temp files get the number of the last generated
 							 // file name
-			currentFileName = currentFileName.replace(IHdfsConstants.FILE_VAR_FILENUM, String.valueOf(anumber));
+			currentFileName = template.format(date, anumber, fCurrentStripe);
 			if (!isTempFile) { // only the final file names increment
 				fileNum++;
 			}
+		} else if (!isTempFile && dynamicFilename && !tempFile.isEmpty()) {
+			// the temp files of the dynamic file names take their number from
+			// the count, so that temp files open at the same time are distinct
+			fileNum++;
 		}
 		return currentFileName;
 	}
@@ -744,7 +2060,8 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 			// bytesPerFile and tuplesPerFile is also not set then output the
 			// filename and file
 			// size
-			closeFile();
+			closeAllFiles();
+			waitForCommits();
 		}
 		// set the file to expire after punctuation
 		// on the next write, the file will be recreated
@@ -753,70 +2070,312 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 			// This handles the closeOnPunct expiration policy
 			TRACE.log(TraceLevel.DEBUG, "Close on punct, close file.");
 
-			closeFile();
+			synchronized (this) {
+				nRollsByPunct.incrementValue(getOpenFiles().size());
+				closeAllFiles();
+			}
 
 		}
 
 	}
 
-	private void closeFile() throws Exception {
+	/**
+	 * @return the files that are currently open for writing, in dynamic
+	 * filename mode these are all files in the pool
+	 */
+	private List<HdfsFile> getOpenFiles() {
+		if (dynamicFilename) {
+			return fOpenFiles.files();
+		}
+		List<HdfsFile> files = new ArrayList<HdfsFile>();
+		if (fStripes != null) {
+			for (HdfsFile stripe : fStripes) {
+				if (stripe != null) {
+					files.add(stripe);
+				}
+			}
+		} else if (fFileToWrite != null) {
+			files.add(fFileToWrite);
+		}
+		return files;
+	}
+
+	private synchronized void closeAllFiles() throws Exception {
+		for (HdfsFile openFile : getOpenFiles()) {
+			closeFile(openFile);
+		}
+	}
+
+	private synchronized void closeFile(HdfsFile fileToClose) throws Exception {
 
 		TRACE.log(TraceLevel.DEBUG, "closeFile()");
 
-		// stop the timer thread.. and create a new one when a new file is
-		// created.
-		if (fFileTimerThread != null) {
-			// interrupt the thread if we are not on the same thread
-			// otherwise, keep it going...
-			if (Thread.currentThread() != fFileTimerThread) {
-				TRACE.log(TraceLevel.DEBUG, "Stop file timer thread");
-				fFileTimerThread.interrupt();
+		// cancel the timer.. and create a new one when a new file is
+		// created. A timer that is running already, or is this one,
+		// finishes, it does not find the file anymore
+		ScheduledFuture<?> fileTimer = fFileTimers.remove(fileToClose);
+		if (fileTimer != null) {
+			TRACE.log(TraceLevel.DEBUG, "Cancel file timer");
+			fileTimer.cancel(false);
+		}
+
+		if (dynamicFilename) {
+			fOpenFiles.remove(fileToClose);
+		}
+
+		// the file takes no more tuples, the tuple thread goes on with the
+		// next file while the commit thread closes this one
+		fileToClose.setExpired();
+		if (exactlyOnce) {
+			closePart(fileToClose, true);
+		} else {
+			commitFile(fileToClose);
+		}
+	}
+
+	/**
+	 * Queue the part to be closed on the commit thread.  A part with tuples is
+	 * recorded to be committed with the next checkpoint, an empty one is deleted.
+	 * @param last	true if the file ends with the part, false if it continues in the next epoch
+	 */
+	private void closePart(final HdfsFile part, final boolean last) {
+		final String path = part.getPath();
+		fPendingPaths.add(path);
+		getCommitService().execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					long start = System.nanoTime();
+					part.close();
+					fCloseLatency.record(System.nanoTime() - start);
+					updateBufferPoolMetrics();
+					fParts.partClosed(path, part.getTargetPath(), part.hasTuples(), last);
+				} catch (Exception e) {
+					TRACE.log(TraceLevel.ERROR, "Failed to close part: " + path, e);
+					recordCommitError(e);
+				} finally {
+					fPendingPaths.remove(path);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Commit the parts of the checkpoints up to the given one on the commit thread,
+	 * a failed commit fails the next drain.
+	 */
+	private void commitParts(final long id) {
+		getCommitService().execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					fParts.commit(id);
+				} catch (Exception e) {
+					recordCommitError(e);
+				}
 			}
+		});
+	}
 
-			fFileTimerThread = null;
+	/**
+	 * Close the part of the current file, so that it is durable and can be
+	 * committed with the checkpoint.  The checkpoint continues the file with
+	 * a new part.
+	 */
+	private void drainPart() throws Exception {
+		synchronized (this) {
+			fDrainedFile = null;
+			if (fFileToWrite == null || fFileToWrite.isExpired()) {
+				return;
+			}
+			fDrainedFile = fFileToWrite;
+			fDrainedFileTime = -1;
+			ScheduledFuture<?> fileTimer = fFileTimers.remove(fDrainedFile);
+			if (fileTimer != null) {
+				fileTimer.cancel(false);
+				fDrainedFileTime = Math.max(0, fileTimer.getDelay(TimeUnit.MILLISECONDS));
+			}
+			fDrainedFile.setExpired();
+			closePart(fDrainedFile, false);
 		}
+		waitForCommits();
+	}
 
-		// If Optional output port is present output the filename and file
-		// size
+	/**
+	 * Continue the file with a new part for the next epoch.
+	 * @param time	milliseconds before the file expires by time, negative for the whole timePerFile
+	 */
+	private void continueFile(String target, long tupleCnt, long size, long time) {
+		createFile(fParts.newPartPath(target));
+		fFileToWrite.setTargetPath(target);
+		fFileToWrite.setTupleCnt(tupleCnt);
+		fFileToWrite.setSize(size);
+		currentFileName = target;
+		if (time >= 0) {
+			ScheduledFuture<?> fileTimer = fFileTimers.remove(fFileToWrite);
+			if (fileTimer != null) {
+				fileTimer.cancel(false);
+				createFileTimer(time, fFileToWrite);
+			}
+		}
+	}
 
+	/**
+	 * Close the open parts and forget the parts that are not committed, their
+	 * tuples are replayed after the reset.
+	 */
+	private void discardParts() throws Exception {
+		waitForCommits();
 		synchronized (this) {
+			for (HdfsFile openFile : getOpenFiles()) {
+				ScheduledFuture<?> fileTimer = fFileTimers.remove(openFile);
+				if (fileTimer != null) {
+					fileTimer.cancel(false);
+				}
+				openFile.setExpired();
+				try {
+					openFile.close();
+				} catch (Exception e) {
+					TRACE.log(TraceLevel.WARN, "Failed to close part: " + openFile.getPath(), e);
+				}
+			}
+			fFileToWrite = null;
+			fDrainedFile = null;
+		}
+		fParts.discard();
+	}
 
-			if (fFileToWrite != null) {
-				boolean alreadyClosed = fFileToWrite.isClosed();
-
-				fFileToWrite.setExpired();
-				fFileToWrite.close();
-
-				if (!alreadyClosed) {
-					String target = fFileToWrite.getPath();
-					boolean success = true;
-					if (!tempFile.isEmpty()) {
-						target = currentFileName;
-						if (getHdfsClient().exists(target)) {
-							if (getHdfsClient().delete(target, false)) {
-								TRACE.log(TraceLevel.DEBUG, "Successfully removed file: " + target);
-							} else {
-								TRACE.log(TraceLevel.ERROR, "Failed to removed file: " + target);
-							}
-						}
-						if (getHdfsClient().rename(currentTempFileName, target)) {
-							TRACE.log(TraceLevel.DEBUG, "Successfully renamed file: " + currentTempFileName + " to: "
-									+ target);
-						} else {
-							success = false;
-							TRACE.log(TraceLevel.ERROR, "Failed to rename file: " + currentTempFileName + " to: "
-									+ target);
-						}
-					}
+	/**
+	 * Queue the expired file to be closed, renamed and reported on the commit thread.
+	 */
+	private void commitFile(final HdfsFile fileToCommit) {
+		final String path = fileToCommit.getPath();
+		final String target = fileToCommit.getTargetPath();
+		fPendingPaths.add(path);
+		fPendingPaths.add(target);
+		getCommitService().execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					finishFile(fileToCommit);
+				} catch (Exception e) {
+					TRACE.log(TraceLevel.ERROR, "Failed to commit file: " + path, e);
+					recordCommitError(e);
+				} finally {
+					fPendingPaths.remove(path);
+					fPendingPaths.remove(target);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return the service that commits the closed files and opens the next file
+	 * ahead, created on first use
+	 */
+	private ExecutorService getCommitService() {
+		synchronized (fCommitServiceLock) {
+			if (fCommitService == null) {
+				ThreadPoolExecutor service = new ThreadPoolExecutor(1, 1, COMMIT_KEEP_ALIVE, TimeUnit.MILLISECONDS,
+						new LinkedBlockingQueue<Runnable>(), getOperatorContext().getThreadFactory());
+				service.allowCoreThreadTimeOut(true);
+				fCommitService = service;
+			}
+			return fCommitService;
+		}
+	}
+
+	/**
+	 * Wait until the files closed so far are committed.
+	 * @throws Exception the first failure of the commit thread since the last wait
+	 */
+	private void waitForCommits() throws Exception {
+		synchronized (fCommitServiceLock) {
+			if (fCommitService == null) {
+				return;
+			}
+		}
+		getCommitService().submit(new Runnable() {
+			@Override
+			public void run() {
+			}
+		}).get();
+		throwCommitError();
+	}
+
+	private void recordCommitError(Exception e) {
+		synchronized (fCommitServiceLock) {
+			if (fCommitError == null) {
+				fCommitError = e;
+			}
+		}
+	}
+
+	/**
+	 * Throw the first failure of the commit thread, once.
+	 */
+	private void throwCommitError() throws Exception {
+		Exception error;
+		synchronized (fCommitServiceLock) {
+			error = fCommitError;
+			fCommitError = null;
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Close the file, rename the temporary file and report the file on the
+	 * output port.  Runs on the commit thread, without the operator lock.
+	 */
+	private void finishFile(HdfsFile fileToClose) throws Exception {
+
+		// If Optional output port is present output the filename and file
+		// size
 
-					nSikedFiles.incrementValue(1);
-					System.out.println(nSikedFiles.getValue() + " : file " + fs.getHomeDirectory() + "/" +  fFileToWrite.getPath() + " created.");
+		// decided by the close, a file may still be opened ahead by another thread
+		long start = System.nanoTime();
+		boolean alreadyClosed = !fileToClose.close();
+		fCloseLatency.record(System.nanoTime() - start);
+		boolean empty = !fileToClose.hasTuples();
+		updateBufferPoolMetrics();
+
+		if (!alreadyClosed && empty) {
+			// the file was opened ahead of tuples that never came
+			if (getHdfsClient().delete(fileToClose.getPath(), false)) {
+				TRACE.log(TraceLevel.DEBUG, "Removed empty file: " + fileToClose.getPath());
+			}
+			return;
+		}
 
-					// operators can perform additional
-					if (hasOutputPort && success) {
-						submitOnOutputPort(target, fFileToWrite.getSizeFromHdfs());
+		if (!alreadyClosed) {
+			String target = fileToClose.getPath();
+			if (!tempFile.isEmpty()) {
+				target = fileToClose.getTargetPath();
+				if (getHdfsClient().exists(target)) {
+					if (getHdfsClient().delete(target, false)) {
+						TRACE.log(TraceLevel.DEBUG, "Successfully removed file: " + target);
+					} else {
+						TRACE.log(TraceLevel.ERROR, "Failed to removed file: " + target);
 					}
 				}
+				long renameStart = System.nanoTime();
+				boolean renamed = getHdfsClient().rename(fileToClose.getPath(), target);
+				fRenameLatency.record(System.nanoTime() - renameStart);
+				if (!renamed) {
+					throw new IOException("Failed to rename file: " + fileToClose.getPath() + " to: " + target);
+				}
+				TRACE.log(TraceLevel.DEBUG, "Successfully renamed file: " + fileToClose.getPath() + " to: "
+						+ target);
+			}
+
+			nSikedFiles.incrementValue(1);
+			System.out.println(nSikedFiles.getValue() + " : file " + fs.getHomeDirectory() + "/" +  fileToClose.getPath() + " created.");
+
+			// operators can perform additional
+			if (hasOutputPort) {
+				submitOnOutputPort(target, fileToClose.getSizeFromHdfs());
 			}
 		}
 
@@ -825,6 +2384,11 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 	@Override
 	synchronized public void process(StreamingInput<Tuple> stream, Tuple tuple) throws Exception {
 
+		// outside of a consistent region, a failed commit fails the operator
+		if (crContext == null && fCommitError != null) {
+			throwCommitError();
+		}
+
 		// if operator is restarting in a consistent region, discard tuples
 		if (isRestarting()) {
 			if (TRACE.isLoggable(TraceLevel.DEBUG)) {
@@ -834,69 +2398,109 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 		}
 
 		if (dynamicFilename) {
-			String filenameString = tuple.getString(fileIndex);
-			if (rawFileName == null || rawFileName.isEmpty()) {
-				// the first tuple. No raw file name is set.
-				rawFileName = filenameString;
-				Date date = Calendar.getInstance().getTime();
-				currentFileName = refreshCurrentFileName(rawFileName, date, false);
-				String realName = currentFileName;
-				if (!tempFile.isEmpty()) {
-					currentTempFileName = refreshCurrentFileName(tempFile, date, true);
-					realName = currentTempFileName;
+			String filenameString = (fPartitioner != null) ? fPartitioner.getPartition(tuple)
+					: tuple.getString(fileIndex);
+			// files are removed from the pool when they are closed, so a file
+			// found in the pool is still open for writing
+			HdfsFile openFile = fOpenFiles.get(filenameString);
+			if (openFile == null) {
+				// close the least recently used file to make room for the new one
+				if (fOpenFiles.isFull()) {
+					nRollsByEviction.increment();
+					closeFile(fOpenFiles.eldest());
 				}
-				createFile(realName);
-				if (TRACE.isLoggable(Level.INFO))
-					TRACE.info("Created first file " + currentFileName + " from raw " + rawFileName + " real fileName "
-							+ realName);
-			}
-
-			if (!rawFileName.equals(filenameString)) {
-				// the filename has changed. Notice this cannot happen on the
-				// first tuple.
-				closeFile();
-				rawFileName = filenameString;
-				Date date = Calendar.getInstance().getTime();
-				currentFileName = refreshCurrentFileName(rawFileName, date, false);
-				String realName = currentFileName;
-				if (!tempFile.isEmpty()) {
-					currentTempFileName = refreshCurrentFileName(tempFile, date, true);
-					realName = currentTempFileName;
+				if (fPartitioner != null) {
+					openFile(fPartitionDir + filenameString + "/" + fPartitionFile);
+				} else {
+					if (fNumberedFileNames && !filenameString.contains(IHdfsConstants.FILE_VAR_FILENUM)) {
+						throw new Exception(Messages.getString("HDFS_SINK_INVALID_FILE_ATTR_FILENUM", filenameString));
+					}
+					openFile(filenameString);
 				}
-				createFile(realName);
+				fOpenFiles.put(filenameString, fFileToWrite);
 				if (TRACE.isLoggable(Level.INFO))
-					TRACE.info("Updating filename -- new name is " + currentFileName + " from raw " + rawFileName
-							+ " real fileName " + realName);
+					TRACE.info("Opened file " + currentFileName + " from raw " + filenameString + " real fileName "
+							+ fFileToWrite.getPath() + ", open files: " + fOpenFiles.size());
+			} else {
+				fFileToWrite = openFile;
 			}
+			rawFileName = filenameString;
 			// When we leave this block, we know the file is ready to be written
 			// to.
+		} else if (fStripes != null) {
+			fCurrentStripe = nextStripe(tuple);
+			fFileToWrite = fStripes[fCurrentStripe];
 		}
 
 		if (fFileToWrite != null) {
 
 			if (fFileToWrite.isExpired()) {
 				// these calls will set fFileToWrite to the new file
-				Date date = Calendar.getInstance().getTime();
-				currentFileName = refreshCurrentFileName(file, date, false);
-				String realName = currentFileName;
-				if (!tempFile.isEmpty()) {
-					currentTempFileName = refreshCurrentFileName(tempFile, date, true);
-
-					realName = currentTempFileName;
-				}
-				createFile(realName);
+				openFile(file);
 			}
 
+			long sizeBefore = fFileToWrite.getSize();
 			fFileToWrite.writeTuple(tuple);
+			nTuplesWritten.increment();
+			nBytesWritten.incrementValue(fFileToWrite.getSize() - sizeBefore);
 			// This will check bytesPerFile and tuplesPerFile expiration policy
 			if (fFileToWrite.isExpired()) {
-				closeFile();
+				rollFile(fFileToWrite);
 			}
 
 		}
 
 	}
 
+	/**
+	 * Close the expired file and, when the names of the files are not taken
+	 * from the tuples, create the next file and open it ahead of its first tuple.
+	 * A file that expires by time is created by its first tuple instead.
+	 */
+	private synchronized void rollFile(HdfsFile expired) throws Exception {
+		switch (expired.getExpPolicy()) {
+		case SIZE:
+			nRollsBySize.increment();
+			break;
+		case TUPLECNT:
+			nRollsByTupleCount.increment();
+			break;
+		case TIME:
+			nRollsByTime.increment();
+			break;
+		default:
+			break;
+		}
+		closeFile(expired);
+		// a file of the time policy is created by its first tuple, so that its time
+		// starts with its content and an idle operator creates no empty files
+		if (dynamicFilename || expired.getExpPolicy() == EnumFileExpirationPolicy.TIME) {
+			return;
+		}
+		if (fStripes != null) {
+			int stripe = Arrays.asList(fStripes).indexOf(expired);
+			if (stripe < 0) {
+				return;
+			}
+			fCurrentStripe = stripe;
+		} else if (expired != fFileToWrite) {
+			return;
+		}
+		openFile(file);
+		final HdfsFile next = fFileToWrite;
+		getCommitService().execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					next.open();
+				} catch (Exception e) {
+					// the file is opened again by its first tuple
+					TRACE.log(TraceLevel.WARN, "Failed to open file ahead: " + next.getPath(), e);
+				}
+			}
+		});
+	}
+
 	private void submitOnOutputPort(String filename, long size) throws Exception {
 
 		if (TRACE.isLoggable(TraceLevel.DEBUG))
@@ -920,13 +2524,64 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 
 	@Override
 	public void shutdown() throws Exception {
-		if (fFileToWrite != null) {
-			fFileToWrite.close();
+		// no timer runs anymore, the work of a timer that fired already is finished
+		if (fTimerScheduler != null) {
+			fTimerScheduler.shutdown();
+		}
+		// let the closed files be committed and the next file be opened ahead,
+		// before the open files are closed, a failure is thrown once all are closed
+		Exception failure = null;
+		try {
+			waitForCommits();
+		} catch (Exception e) {
+			failure = e;
+		}
+
+		synchronized (this) {
+			for (HdfsFile openFile : getOpenFiles()) {
+				try {
+					openFile.close();
+				} catch (Exception e) {
+					TRACE.log(TraceLevel.ERROR, "Failed to close file: " + openFile.getPath(), e);
+					if (failure == null) {
+						failure = e;
+					}
+				}
+			}
 			fFileToWrite = null;
+			if (fStripes != null) {
+				Arrays.fill(fStripes, null);
+			}
+			if (fOpenFiles != null) {
+				fOpenFiles.clear();
+			}
+
+			for (ScheduledFuture<?> fileTimer : fFileTimers.values()) {
+				fileTimer.cancel(false);
+			}
+			fFileTimers.clear();
+			if (fIdleTimer != null) {
+				fIdleTimer.cancel(false);
+			}
+			if (fLingerTimer != null) {
+				fLingerTimer.cancel(false);
+			}
+			if (fShrinkTimer != null) {
+				fShrinkTimer.cancel(false);
+			}
+			if (fMetricsTimer != null) {
+				fMetricsTimer.cancel(false);
+			}
 		}
 
-		if (fFileTimerThread != null) {
-			fFileTimerThread.interrupt();
+		// the files are closed, nothing is left to compress or commit
+		if (fCompressionService != null) {
+			fCompressionService.shutdown();
+		}
+		synchronized (fCommitServiceLock) {
+			if (fCommitService != null) {
+				fCommitService.shutdown();
+			}
 		}
 
 		if (outputPortThread != null) {
@@ -934,6 +2589,9 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 		}
 
 		super.shutdown();
+		if (failure != null) {
+			throw failure;
+		}
 	}
 
 	private void fileTimerExpired(final HdfsFile file) throws Exception {
@@ -941,12 +2599,14 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 		if (TRACE.isLoggable(TraceLevel.DEBUG))
 			TRACE.log(TraceLevel.DEBUG, "File Timer Expired: " + file);
 
-		// when the timer wakes up and we still have the same file,
+		// when the timer wakes up and the file is still open,
 		// mark the file as expired
-		if (fFileToWrite == file) {
-			TRACE.log(TraceLevel.DEBUG, "File Timer Expired, close file");
+		synchronized (this) {
+			if (fFileTimers.containsKey(file)) {
+				TRACE.log(TraceLevel.DEBUG, "File Timer Expired, close file");
 
-			closeFile();
+				rollFile(file);
+			}
 		}
 	}
 
@@ -960,15 +2620,24 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 	public void checkpoint(Checkpoint checkpoint) throws Exception {
 		TRACE.log(TraceLevel.DEBUG, "Checkpoint " + checkpoint.getSequenceId(), CONSISTEN_ASPECT);
 
+		if (exactlyOnce) {
+			checkpointParts(checkpoint.getSequenceId(), checkpoint.getOutputStream());
+			return;
+		}
+
 		// get file size, tuple count and filename
 		String path = fFileToWrite.getPath();
 		long tupleCnt = fFileToWrite.getTupleCnt();
 		long size = fFileToWrite.getSize();
+		// the file is flushed by the drain, its length is what the file
+		// system holds of it
+		long length = fFileToWrite.getLength();
 
 		checkpoint.getOutputStream().writeObject(path);
 		checkpoint.getOutputStream().writeLong(tupleCnt);
 		checkpoint.getOutputStream().writeLong(size);
 		checkpoint.getOutputStream().writeInt(fileNum);
+		checkpoint.getOutputStream().writeLong(length);
 
 		if (dynamicFilename) {
 			if (rawFileName == null)
@@ -978,12 +2647,63 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 
 	}
 
+	/**
+	 * Record the parts closed in the epoch as the parts of the checkpoint, save
+	 * the state of the current file and the parts that are not committed yet,
+	 * and continue the current file with a new part.
+	 */
+	private synchronized void checkpointParts(long id, ObjectOutputStream out) throws Exception {
+		HdfsFile drained = fDrainedFile;
+		fDrainedFile = null;
+		out.writeObject(drained != null ? drained.getTargetPath() : null);
+		out.writeLong(drained != null ? drained.getTupleCnt() : 0);
+		out.writeLong(drained != null ? drained.getSize() : 0);
+		out.writeInt(fileNum);
+		fParts.checkpoint(id, out);
+
+		if (drained != null) {
+			continueFile(drained.getTargetPath(), drained.getTupleCnt(), drained.getSize(), fDrainedFileTime);
+		}
+	}
+
+	/**
+	 * Commit the parts of the checkpoint, which completed, and delete the parts
+	 * written after it.  The file of the checkpoint is continued with a new part.
+	 */
+	private synchronized void resetParts(long id, ObjectInputStream in) throws Exception {
+		discardParts();
+
+		String target = (String) in.readObject();
+		long tupleCnt = in.readLong();
+		long size = in.readLong();
+		int fileNum = in.readInt();
+		fParts.reset(id, in, target);
+
+		this.fileNum = fileNum;
+		if (target != null) {
+			continueFile(target, tupleCnt, size, -1);
+		} else {
+			openFile(file);
+		}
+	}
+
 	@Override
 	public void drain() throws Exception {
 		TRACE.log(TraceLevel.DEBUG, "Drain operator.", CONSISTEN_ASPECT);
+		long start = System.currentTimeMillis();
+
+		// the closed files are committed and reported before the drain completes
+		waitForCommits();
 
-		// tell file to flush all content from buffer
-		fFileToWrite.flush();
+		if (exactlyOnce) {
+			drainPart();
+		} else {
+			// tell files to flush all content from buffer
+			for (HdfsFile openFile : getOpenFiles()) {
+				openFile.flush();
+			}
+		}
+		nDrainTime.setValue(System.currentTimeMillis() - start);
 
 		// force any tuple to be submitted on the output port to flush
 		if (outputPortQueue != null && outputPort != null) {
@@ -1000,14 +2720,21 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 	public void reset(Checkpoint checkpoint) throws Exception {
 		TRACE.log(TraceLevel.DEBUG, "Reset to checkpoint " + checkpoint.getSequenceId(), CONSISTEN_ASPECT);
 
-		// close current file
-		if (fFileToWrite != null)
-			closeFile();
+		if (exactlyOnce) {
+			resetParts(checkpoint.getSequenceId(), checkpoint.getInputStream());
+			unsetRestarting();
+			return;
+		}
+
+		// close current files, the file of the checkpoint may be created again
+		closeAllFiles();
+		waitForCommits();
 
 		String path = (String) checkpoint.getInputStream().readObject();
 		long tupleCnt = checkpoint.getInputStream().readLong();
 		long size = checkpoint.getInputStream().readLong();
 		int fileNum = checkpoint.getInputStream().readInt();
+		long length = checkpoint.getInputStream().readLong();
 
 		if (dynamicFilename) {
 			rawFileName = (String) checkpoint.getInputStream().readObject();
@@ -1016,6 +2743,14 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 				rawFileName = "";
 		}
 
+		// cut off what was written after the checkpoint, the tuples
+		// are replayed and would be written twice otherwise
+		long startLength = 0;
+		if (getHdfsClient().exists(path)) {
+			getHdfsClient().truncate(path, length);
+			startLength = Math.min(length, getHdfsClient().getFileSize(path));
+		}
+
 		// create HDFS file with path from checkpoint
 		// set as append mode to not overwrite content of file
 		// on reset
@@ -1023,6 +2758,10 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 		fFileToWrite.setTupleCnt(tupleCnt);
 		fFileToWrite.setSize(size);
 		fFileToWrite.setAppend(true);
+		fFileToWrite.setStartLength(startLength);
+		if (dynamicFilename && !rawFileName.isEmpty()) {
+			fOpenFiles.put(rawFileName, fFileToWrite);
+		}
 
 		currentFileName = path;
 		this.fileNum = fileNum;
@@ -1034,9 +2773,20 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 	public void resetToInitialState() throws Exception {
 		TRACE.log(TraceLevel.DEBUG, "Reset to initial state", CONSISTEN_ASPECT);
 
-		// close current file
-		if (fFileToWrite != null)
-			closeFile();
+		if (exactlyOnce) {
+			synchronized (this) {
+				discardParts();
+				fParts.resetToInitialState(initState.path);
+				fileNum = 0;
+				openFile(file);
+			}
+			unsetRestarting();
+			return;
+		}
+
+		// close current files, the file of the checkpoint may be created again
+		closeAllFiles();
+		waitForCommits();
 
 		String path = initState.path;
 		fileNum = 0;
@@ -1059,6 +2809,9 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 			fFileToWrite.setTupleCnt(0);
 			fFileToWrite.setSize(0);
 			fFileToWrite.setAppend(false);
+			if (dynamicFilename && !rawFileName.isEmpty()) {
+				fOpenFiles.put(rawFileName, fFileToWrite);
+			}
 
 			// increment to 1 as we have created a file
 			currentFileName = path;
@@ -1071,6 +2824,11 @@ public class HDFS2FileSink extends AbstractHdfsOperator implements StateHandler
 	@Override
 	public void retireCheckpoint(long id) throws Exception {
 		TRACE.log(TraceLevel.DEBUG, "Retire checkpoint", CONSISTEN_ASPECT);
+
+		// the checkpoint is complete in the whole region, its parts can be committed
+		if (exactlyOnce) {
+			commitParts(id);
+		}
 	}
 
 	private boolean isRestarting() {
@@ -4,15 +4,29 @@
 *******************************************************************************/
 package com.ibm.streamsx.hdfs;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.io.compress.CompressionCodec;
 
 import com.ibm.streams.operator.OperatorContext;
 import com.ibm.streams.operator.Tuple;
 import com.ibm.streams.operator.Type.MetaType;
+import com.ibm.streams.operator.metrics.Metric;
 import com.ibm.streams.operator.types.RString;
+import com.ibm.streamsx.hdfs.client.HdfsCreateOptions;
 import com.ibm.streamsx.hdfs.client.IHdfsClient;
 
 
@@ -24,9 +38,22 @@ public class HdfsFile {
 
 	private IHdfsClient fHdfsClient;
 	private String fPath;
+	// final name of the file, differs from fPath when writing to a temporary file
+	private String fTargetPath;
 	private AsyncBufferWriter fWriter;
+	// stream of the writer, counts the bytes of the file including those appended to,
+	// replaced by the flush thread when the file is opened again after a failure
+	private volatile FSDataOutputStream fOutStream;
+	// length of the file before it is opened for appending
+	private long fStartLength = 0;
+	// writes whole tuples instead of the data attribute if a record format is set
+	private IRecordFormat fRecordFormat;
+	private IRecordWriter fRecordWriter;
 
 	private boolean fIsExpired;
+	// the file and its writer are created, the file may be opened ahead of the first tuple
+	private volatile boolean fOpen = false;
+	private boolean fClosing = false;
 	private EnumFileExpirationPolicy expPolicy = EnumFileExpirationPolicy.NEVER;
 	
 	private static final String UTF_8 = "UTF-8";
@@ -56,6 +83,45 @@ public class HdfsFile {
 	private boolean fIsBinary;
 	private boolean isAppend = false; 	// default is false, overwrite file
 	
+	// pool the writer takes its buffers from, no pooling if not set
+	private BufferPool fBufferPool;
+	
+	private SyncMode fSyncMode = SyncMode.hflush;
+	private SyncPolicy fSyncPolicy = SyncPolicy.perBuffer;
+	private long fSyncBytes;
+	private long fSyncTime;
+	
+	private int fBufferSize = IHdfsConstants.WRITE_BUFFER_SIZE_DEFAULT;
+	private int fBufferCount = IHdfsConstants.WRITE_BUFFER_COUNT_DEFAULT;
+	private boolean fAdaptiveBuffering = false;
+	private Metric fStallMetric;
+	private LatencyStatistics fStallTime;
+	private LatencyStatistics fSyncLatency;
+	
+	// attributes of the file on HDFS, the defaults of the file system if not set
+	private HdfsCreateOptions fCreateOptions;
+	
+	// no local spill if not set
+	private File fSpillDirectory;
+	private long fSpillMaxSize;
+	private FileTimerScheduler fSpillScheduler;
+	
+	// no compression if not set
+	private CompressionCodec fCodec;
+	private ExecutorService fCompressionService;
+	
+	// encodes strings into the write buffers, reused for all tuples
+	private CharsetEncoder fEncoder;
+	// decodes rstring data when the encoding is not UTF-8
+	private CharsetDecoder fDecoder;
+	private CharBuffer fChars;
+	// true if the encoding writes ASCII characters like UTF-8 does
+	private boolean fAsciiCompatible;
+	
+	// writes whole tuples as text instead of the data attribute if set
+	private TextRecordFormat fTextFormat;
+	private TextRecordWriter fTextWriter;
+	
 
 	/**
 	 * Create an instance of HdfsFile
@@ -87,48 +153,49 @@ public class HdfsFile {
 		this.attrType = attrType;
 	}
 
+	/**
+	 * Create the file on HDFS and its writer.  The file is opened by the first
+	 * tuple written to it, unless it is opened ahead of time by another thread.
+	 * A file that is closed already is not opened anymore.
+	 * @throws Exception
+	 */
+	synchronized public void open() throws Exception {
+		if (fOpen || fClosing)
+			return;
+		
+		if (fRecordFormat != null) {
+			initRecordWriter();
+		}
+		else if (fTextFormat != null) {
+			initWriter(false, isAppend);
+			fTextWriter = fTextFormat.createWriter(fWriter);
+		}
+		else if (MetaType.BLOB == attrType) {
+			initWriter(true, isAppend);
+		}
+		else {
+			initEncoding();
+			initWriter(false, isAppend);
+		}
+		fOpen = true;
+	}
+
 	public void writeTuple(Tuple tuple) throws Exception {
-		if (fWriter == null) {
-			if (MetaType.BLOB == attrType) {
-				initWriter(true, isAppend);
-			}
-			else {
-				initWriter(false, isAppend);
-			}
+		if (!fOpen) {
+			open();
 		}
 		
-		byte[] tupleBytes = null;
-		
-		switch (attrType) {
-		case BLOB: 
-			ByteBuffer buffer = tuple.getBlob(attrIndex).getByteBuffer();
-			tupleBytes = new byte[buffer.limit()];
-			buffer.get(tupleBytes);
-			break;
-		case RSTRING:
-			Object attrObj = tuple.getObject(attrIndex);
-			if (fEncoding.equals(UTF_8))
-			{
-				tupleBytes = ((RString)attrObj).getData();
-			}
-			else
-			{
-				tupleBytes = ((RString)attrObj).getData();
-				tupleBytes = new String(tupleBytes, UTF_8).getBytes(fEncoding);
-			}
-			break;
-		case USTRING:
-			String attrString = tuple.getString(attrIndex);
-			tupleBytes = attrString.getBytes(fEncoding);
-			break;
-		default:
-			throw new Exception("Unsupported type "+attrType);
+		if (fRecordFormat != null) {
+			writeRecord(tuple);
+			return;
 		}
 		
-		fWriter.write(tupleBytes);
+		// the budget of the buffer pool may ask the writer to give memory back
+		fWriter.shrinkIfRequested();
+		
+		long tupleSize = (fTextWriter != null) ? fTextWriter.write(tuple) : writeData(tuple);
 
 		numTuples++;
-		long tupleSize=tupleBytes.length;
 		size += tupleSize+fNewLine.length;
 		
 		// check expiration after write, so the next write
@@ -157,6 +224,146 @@ public class HdfsFile {
 	}
 
 
+	/**
+	 * Write the data attribute, followed by a newline for text.
+	 * @return the number of bytes of the data, without the newline
+	 */
+	private long writeData(Tuple tuple) throws Exception {
+		long tupleSize;
+		
+		switch (attrType) {
+		case BLOB: 
+			ByteBuffer buffer = tuple.getBlob(attrIndex).getByteBuffer();
+			tupleSize = buffer.remaining();
+			fWriter.write(buffer);
+			break;
+		case RSTRING:
+			byte[] data = ((RString)tuple.getObject(attrIndex)).getData();
+			// the UTF-8 bytes are written as they are if the encoding 
+			// is UTF-8, or if they are ASCII and the encoding is compatible
+			if (fDecoder == null || (fAsciiCompatible && isAscii(data)))
+			{
+				fWriter.write(data);
+				tupleSize = data.length;
+			}
+			else
+			{
+				tupleSize = fWriter.write(decode(data), fEncoder);
+			}
+			break;
+		case USTRING:
+			tupleSize = fWriter.write(toChars(tuple.getString(attrIndex)), fEncoder);
+			break;
+		default:
+			throw new Exception("Unsupported type "+attrType);
+		}
+		return tupleSize;
+	}
+
+	/**
+	 * Create the encoder of the file encoding, unmappable characters are
+	 * replaced like String.getBytes does.
+	 */
+	private void initEncoding() {
+		if (fEncoder != null)
+			return;
+		
+		Charset charset = Charset.forName(fEncoding);
+		fEncoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		if (!charset.equals(StandardCharsets.UTF_8)) {
+			fDecoder = StandardCharsets.UTF_8.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			fAsciiCompatible = isAsciiCompatible(charset);
+		}
+	}
+	
+	private static boolean isAsciiCompatible(Charset charset) {
+		byte[] ascii = new byte[128];
+		for (int i = 0; i < ascii.length; i++) {
+			ascii[i] = (byte) i;
+		}
+		return Arrays.equals(ascii, new String(ascii, StandardCharsets.US_ASCII).getBytes(charset));
+	}
+	
+	private static boolean isAscii(byte[] data) {
+		for (int i = 0; i < data.length; i++) {
+			if (data[i] < 0)
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * @return the reused character buffer, cleared, with room for the given number of characters
+	 */
+	private CharBuffer charBuffer(int length) {
+		if (fChars == null || fChars.capacity() < length) {
+			int capacity = (fChars == null) ? 256 : fChars.capacity();
+			while (capacity < length) {
+				capacity *= 2;
+			}
+			fChars = CharBuffer.allocate(capacity);
+		}
+		fChars.clear();
+		return fChars;
+	}
+	
+	private CharBuffer toChars(String str) {
+		CharBuffer chars = charBuffer(str.length());
+		str.getChars(0, str.length(), chars.array(), 0);
+		chars.limit(str.length());
+		return chars;
+	}
+	
+	private CharBuffer decode(byte[] data) {
+		// UTF-8 has at least one byte per character
+		CharBuffer chars = charBuffer(data.length);
+		fDecoder.reset();
+		fDecoder.decode(ByteBuffer.wrap(data), chars, true);
+		fDecoder.flush(chars);
+		chars.flip();
+		return chars;
+	}
+
+	private void writeRecord(Tuple tuple) throws Exception {
+		fRecordWriter.write(tuple);
+		
+		numTuples++;
+		size = fRecordWriter.getDataSize();
+		
+		switch (expPolicy) {
+		case TUPLECNT:
+			tupleCnt++;
+			if (tupleCnt >= tuplesPerFile) {
+				setExpired();
+			}
+			break;
+		case SIZE:
+			if (size >= sizePerFile) {
+				setExpired();
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	synchronized private void initRecordWriter() throws Exception {
+		if (fRecordWriter == null)
+		{
+			// record formats write a complete file, they cannot append
+			OutputStream outStream = getHdfsClient().getOutputStream(fPath, false, fCreateOptions);
+			
+			if (outStream == null) {
+				throw new Exception("Unable to open file for writing: " + fPath);
+			}
+			fRecordWriter = fRecordFormat.createWriter(outStream);
+		}
+	}
+
 	public void setExpired() {
 		fIsExpired = true;
 	}
@@ -207,6 +414,22 @@ public class HdfsFile {
 		this.size = size;
 	}
 	
+	/**
+	 * @return number of bytes of the file that are written to the file system,
+	 * exact once the file is flushed
+	 */
+	public long getLength() {
+		if (fOutStream != null) {
+			return fOutStream.getPos();
+		}
+		return fStartLength;
+	}
+
+	// can only be called by HDFS2FileSink on reset, the file is appended from this length
+	void setStartLength(long startLength) {
+		fStartLength = startLength;
+	}
+
 	public long getTupleCnt() {
 		return tupleCnt;
 	}
@@ -228,30 +451,70 @@ public class HdfsFile {
 		
 		if (fWriter == null)
 		{
-			OutputStream outStream = getHdfsClient().getOutputStream(fPath, append);
+			OutputStream outStream = getHdfsClient().getOutputStream(fPath, append, fCreateOptions);
 	
 			if (outStream == null) {
 				throw new Exception("Unable to open file for writing: " + fPath);
 			} 
+			// the position of an appending stream does not start at the length
+			// of the file on every file system, count from the known length
+			fOutStream = new FSDataOutputStream(outStream, null, append ? fStartLength : 0);
+			outStream = fOutStream;
 			// The AsyncBufferWriter writes a newline after every tuple.  For binary files, this is bad.
 			// But, we just tell the AysncBufferWriter than the newline is an empty byte array, and we're good.
+			if (fBufferPool == null) {
+				fBufferPool = new BufferPool(0);
+			}
 			if (isBinary) {
-				fWriter = new AsyncBufferWriter(outStream, 1024*1024*16, fOpContext.getThreadFactory(), new byte[0]);
+				fWriter = new AsyncBufferWriter(outStream, fBufferSize, fBufferCount, fAdaptiveBuffering, fOpContext.getThreadFactory(), new byte[0], fBufferPool);
 			}
 			else {
-				fWriter = new AsyncBufferWriter(outStream, 1024*1024*16, fOpContext.getThreadFactory(), fNewLine);
+				fWriter = new AsyncBufferWriter(outStream, fBufferSize, fBufferCount, fAdaptiveBuffering, fOpContext.getThreadFactory(), fNewLine, fBufferPool);
+			}
+			fWriter.setSync(fSyncMode, fSyncPolicy, fSyncBytes, fSyncTime);
+			fWriter.setStallMetric(fStallMetric);
+			fWriter.setLatencyStatistics(fStallTime, fSyncLatency);
+			if (fSpillDirectory != null) {
+				fWriter.setSpill(new SpillLog(fSpillDirectory, fSpillMaxSize), new AsyncBufferWriter.StreamReopener() {
+					@Override
+					public FSDataOutputStream reopen(long length) throws IOException {
+						// drop what the failed stream wrote after the last sync
+						getHdfsClient().truncate(fPath, length);
+						OutputStream stream = getHdfsClient().getOutputStream(fPath, true);
+						if (stream == null) {
+							throw new IOException("Unable to open file for writing: " + fPath);
+						}
+						fOutStream = new FSDataOutputStream(stream, null, length);
+						return fOutStream;
+					}
+				}, fSpillScheduler);
+			}
+			if (fCodec != null) {
+				fWriter.setCompression(fCodec, fCompressionService);
 			}
 		}
 	}
 
-	public void close() throws Exception {
+	/**
+	 * Close the file, a file that is not opened yet is not opened anymore.
+	 * Decided under the lock of the file, so that an open by another thread
+	 * either completes before or does not happen.
+	 * @return true if the file was open and is closed by this call, false if
+	 * it was never opened or is closed already
+	 */
+	synchronized public boolean close() throws Exception {
 
+		boolean wasOpen = fOpen && !fClosing;
+		fClosing = true;
 		if (fWriter != null) {
 			fWriter.close();
 		}
+		if (fRecordWriter != null) {
+			fRecordWriter.close();
+		}
 
 		// do not close output stream, rely on the writer to close
-
+		return wasOpen;
 	}
 
 	public EnumFileExpirationPolicy getExpPolicy() {
@@ -279,6 +542,130 @@ public class HdfsFile {
 		this.tuplesPerFile = tuplesPerFile;
 	}
 	
+	public void setBufferPool(BufferPool bufferPool) {
+		fBufferPool = bufferPool;
+	}
+	
+	/**
+	 * Configure how and when the writer makes written data durable.
+	 * @param mode		hflush, hsync or none
+	 * @param policy	when to apply the sync mode
+	 * @param syncBytes	number of bytes between syncs for the perBytes policy
+	 * @param syncTime	time between syncs for the perTime policy, in miliseconds
+	 */
+	public void setSync(SyncMode mode, SyncPolicy policy, long syncBytes, long syncTime) {
+		fSyncMode = mode;
+		fSyncPolicy = policy;
+		fSyncBytes = syncBytes;
+		fSyncTime = syncTime;
+	}
+	
+	/**
+	 * Configure the write buffers of the writer.
+	 * @param bufferSize	size of a buffer in bytes, the upper limit if adaptive
+	 * @param bufferCount	number of buffers, the upper limit if adaptive
+	 * @param adaptive		grow and shrink the buffers with the load
+	 */
+	public void setBuffering(int bufferSize, int bufferCount, boolean adaptive) {
+		fBufferSize = bufferSize;
+		fBufferCount = bufferCount;
+		fAdaptiveBuffering = adaptive;
+	}
+	
+	public void setStallMetric(Metric stallMetric) {
+		fStallMetric = stallMetric;
+	}
+	
+	public void setLatencyStatistics(LatencyStatistics stallTime, LatencyStatistics syncLatency) {
+		fStallTime = stallTime;
+		fSyncLatency = syncLatency;
+	}
+	
+	/**
+	 * @param createOptions	block size, replication, buffer size and policies of the
+	 * file when it is created, null for the defaults of the file system
+	 */
+	public void setCreateOptions(HdfsCreateOptions createOptions) {
+		fCreateOptions = createOptions;
+	}
+	
+	/**
+	 * Keep the data that is not synced yet in a local spill file, and write to it
+	 * while the file system is not available.
+	 * @param directory	local directory of the spill files, null for no spill
+	 * @param maxSize	size of a spill file in bytes before the writer waits for the file system
+	 * @param scheduler	timers of the operator that time the attempts to replay the spill file
+	 */
+	public void setSpill(File directory, long maxSize, FileTimerScheduler scheduler) {
+		fSpillDirectory = directory;
+		fSpillMaxSize = maxSize;
+		fSpillScheduler = scheduler;
+	}
+	
+	/**
+	 * @return number of bytes buffered by the writer and not written to the file system yet
+	 */
+	public long getBufferedBytes() {
+		AsyncBufferWriter writer = fWriter;
+		return (writer != null) ? writer.getBufferedBytes() : 0;
+	}
+	
+	/**
+	 * Write and sync the buffered content once it has been held back for the delay,
+	 * must be synchronized with the writes of the file.
+	 * @param maxDelay	milliseconds content may be held back
+	 * @return true if the content is flushed
+	 */
+	public boolean flushIfLingering(long maxDelay) throws IOException {
+		AsyncBufferWriter writer = fWriter;
+		return (writer != null) && writer.flushIfLingering(maxDelay);
+	}
+	
+	/**
+	 * Write the buffer early if the buffer pool asked the writer to give memory
+	 * back, must be synchronized with the writes of the file.
+	 */
+	public void shrinkIfRequested() throws IOException {
+		AsyncBufferWriter writer = fWriter;
+		if (writer != null) {
+			writer.shrinkIfRequested();
+		}
+	}
+	
+	/**
+	 * @return number of buffers handed to the flush thread of the writer and not written yet
+	 */
+	public int getInFlightBuffers() {
+		AsyncBufferWriter writer = fWriter;
+		return (writer != null) ? writer.getInFlightBuffers() : 0;
+	}
+	
+	/**
+	 * Compress the file with the codec.
+	 * @param codec					the codec, null for no compression
+	 * @param compressionService	service to compress the write buffers in parallel,
+	 * null to compress on the flush thread of the writer
+	 */
+	public void setCompression(CompressionCodec codec, ExecutorService compressionService) {
+		fCodec = codec;
+		fCompressionService = compressionService;
+	}
+	
+	/**
+	 * @param textFormat	format of the tuples written as lines of text, null to write the data attribute
+	 */
+	public void setTextFormat(TextRecordFormat textFormat) {
+		fTextFormat = textFormat;
+	}
+
+	/**
+	 * Write whole tuples in the record format instead of the data attribute.
+	 * @param recordFormat	the format, null to write the data attribute
+	 */
+	public void setRecordFormat(IRecordFormat recordFormat) {
+		fRecordFormat = recordFormat;
+	}
+	
 	public void setAppend(boolean append) {
 		this.isAppend = append;
 	}
@@ -290,22 +677,49 @@ public class HdfsFile {
 	public String getPath() {
 		return fPath;
 	}
+
+	/**
+	 * @return the name the file gets once it is closed, this is the path
+	 * of the file unless the file is written under a temporary name
+	 */
+	public String getTargetPath() {
+		if (fTargetPath == null)
+			return fPath;
+		return fTargetPath;
+	}
+
+	public void setTargetPath(String targetPath) {
+		fTargetPath = targetPath;
+	}
 	
 	// called by drain method for consistent region
 	public void flush() throws Exception {
-		// close the current writer and recreate
+		// write the buffered content and make it durable, the writer stays open
 		
 		if (fWriter != null)
 		{
 			fWriter.flushAll();
 		}
+		if (fRecordWriter != null)
+		{
+			fRecordWriter.flush();
+		}
 		
 	}
 	
+	/**
+	 * @return true if at least one tuple was written to the file
+	 */
+	public boolean hasTuples() {
+		return numTuples > 0;
+	}
+
 	public boolean isClosed()
 	{
 		if (fWriter != null)
 			return fWriter.isClosed();
+		if (fRecordWriter != null)
+			return fRecordWriter.isClosed();
 		
 		return true;
 	}
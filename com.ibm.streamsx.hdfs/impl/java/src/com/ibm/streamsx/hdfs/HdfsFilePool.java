@@ -0,0 +1,130 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded set of open {@link HdfsFile} writers, keyed by the name the file was
+ * resolved from.  Entries are kept in least recently used order, so the eldest
+ * entry is the one to close when the pool is full.  The pool also remembers when
+ * each file was last used, so that files that are idle for too long can be closed.
+ *
+ * The pool does not open or close files itself and is not thread safe; the
+ * owning operator creates the files, closes the evicted ones and guards all
+ * access with its own lock.
+ */
+public class HdfsFilePool {
+
+	private final LinkedHashMap<String, HdfsFile> fFiles;
+	// time in milliseconds of the last get or put of each key
+	private final Map<String, Long> fLastUse = new HashMap<String, Long>();
+	private final int fMaxOpenFiles;
+
+	/**
+	 * Create a pool
+	 * @param maxOpenFiles	maximum number of files that can be open at the same time, at least 1
+	 */
+	public HdfsFilePool(int maxOpenFiles) {
+		fMaxOpenFiles = Math.max(1, maxOpenFiles);
+		// access order, so that iteration starts with the least recently used file
+		fFiles = new LinkedHashMap<String, HdfsFile>(16, 0.75f, true);
+	}
+
+	/**
+	 * Return the open file for the given key and mark it as most recently used.
+	 * @param key	the name the file was resolved from
+	 * @return the open file, or null if no file is open for the key
+	 */
+	public HdfsFile get(String key) {
+		HdfsFile file = fFiles.get(key);
+		if (file != null) {
+			fLastUse.put(key, System.currentTimeMillis());
+		}
+		return file;
+	}
+
+	public void put(String key, HdfsFile file) {
+		fFiles.put(key, file);
+		fLastUse.put(key, System.currentTimeMillis());
+	}
+
+	/**
+	 * Remove the file from the pool, regardless of its key.
+	 * @param file	file to remove
+	 * @return true if the file was in the pool
+	 */
+	public boolean remove(HdfsFile file) {
+		Iterator<Map.Entry<String, HdfsFile>> it = fFiles.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, HdfsFile> entry = it.next();
+			if (entry.getValue() == file) {
+				it.remove();
+				fLastUse.remove(entry.getKey());
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public boolean contains(HdfsFile file) {
+		return fFiles.containsValue(file);
+	}
+
+	/**
+	 * @return the least recently used file, or null if the pool is empty
+	 */
+	public HdfsFile eldest() {
+		if (fFiles.isEmpty())
+			return null;
+		return fFiles.values().iterator().next();
+	}
+
+	/**
+	 * @param before	time in milliseconds
+	 * @return the files that were last used before the given time, in least recently used order
+	 */
+	public List<HdfsFile> idleFiles(long before) {
+		List<HdfsFile> idle = new ArrayList<HdfsFile>();
+		for (Map.Entry<String, HdfsFile> entry : fFiles.entrySet()) {
+			// the files are in order of use, the first file in use ends the idle ones
+			if (fLastUse.get(entry.getKey()) >= before) {
+				break;
+			}
+			idle.add(entry.getValue());
+		}
+		return idle;
+	}
+
+	public boolean isFull() {
+		return fFiles.size() >= fMaxOpenFiles;
+	}
+
+	public int size() {
+		return fFiles.size();
+	}
+
+	public int getMaxOpenFiles() {
+		return fMaxOpenFiles;
+	}
+
+	/**
+	 * @return a snapshot of the open files in least recently used order,
+	 * callers can close files while iterating over it
+	 */
+	public List<HdfsFile> files() {
+		return new ArrayList<HdfsFile>(fFiles.values());
+	}
+
+	public void clear() {
+		fFiles.clear();
+		fLastUse.clear();
+	}
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import java.util.List;
+
+import com.ibm.streams.operator.Attribute;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type.MetaType;
+
+/**
+ * Directories of Hive-style partitions.  The partition of a tuple is a
+ * directory level of the form name=value for every partition attribute,
+ * like dt=2026-10-18/hour=07.
+ *
+ * Characters that Hive does not allow in a directory name are escaped as %
+ * followed by two hexadecimal digits, so a value never starts a file name
+ * variable.  Consecutive tuples of the same partition reuse the directory
+ * name of the previous tuple.  Not thread safe.
+ */
+class HivePartitioner {
+
+	private final String[] fNames;
+	private final int[] fIndexes;
+	private final MetaType[] fTypes;
+
+	// values and directory of the last partition
+	private final Object[] fLastValues;
+	private String fLastPartition = null;
+
+	/**
+	 * @param schema			schema of the input port
+	 * @param attributeNames	names of the partition attributes, in directory order
+	 */
+	HivePartitioner(StreamSchema schema, List<String> attributeNames) {
+		fNames = attributeNames.toArray(new String[attributeNames.size()]);
+		fIndexes = new int[fNames.length];
+		fTypes = new MetaType[fNames.length];
+		for (int i = 0; i < fNames.length; i++) {
+			Attribute attribute = schema.getAttribute(fNames[i]);
+			fIndexes[i] = attribute.getIndex();
+			fTypes[i] = attribute.getType().getMetaType();
+		}
+		fLastValues = new Object[fNames.length];
+	}
+
+	/**
+	 * @return true if attributes of the type can select a partition
+	 */
+	static boolean isSupported(MetaType type) {
+		switch (type) {
+		case RSTRING:
+		case USTRING:
+		case BSTRING:
+		case ENUM:
+		case BOOLEAN:
+		case INT8:
+		case INT16:
+		case INT32:
+		case INT64:
+		case UINT8:
+		case UINT16:
+		case UINT32:
+		case UINT64:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	int[] getIndexes() {
+		return fIndexes;
+	}
+
+	/**
+	 * @return the directories of the partition of the tuple, without a leading or trailing /
+	 */
+	String getPartition(Tuple tuple) {
+		boolean same = fLastPartition != null;
+		for (int i = 0; same && i < fIndexes.length; i++) {
+			same = tuple.getObject(fIndexes[i]).equals(fLastValues[i]);
+		}
+		if (same) {
+			return fLastPartition;
+		}
+
+		StringBuilder partition = new StringBuilder();
+		for (int i = 0; i < fIndexes.length; i++) {
+			Object value = tuple.getObject(fIndexes[i]);
+			fLastValues[i] = value;
+			if (i > 0) {
+				partition.append('/');
+			}
+			partition.append(fNames[i]).append('=');
+			appendEscaped(partition, toString(value, fTypes[i]));
+		}
+		fLastPartition = partition.toString();
+		return fLastPartition;
+	}
+
+	private static String toString(Object value, MetaType type) {
+		// the unsigned types are held in the signed Java type of the same width
+		switch (type) {
+		case UINT8:
+			return Integer.toString(((Byte) value) & 0xff);
+		case UINT16:
+			return Integer.toString(((Short) value) & 0xffff);
+		case UINT32:
+			return Integer.toUnsignedString((Integer) value);
+		case UINT64:
+			return Long.toUnsignedString((Long) value);
+		default:
+			return value.toString();
+		}
+	}
+
+	private static void appendEscaped(StringBuilder partition, String value) {
+		if (value.isEmpty()) {
+			partition.append(IHdfsConstants.PARTITION_DEFAULT_VALUE);
+			return;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (needsEscape(c)) {
+				partition.append('%');
+				partition.append(Character.toUpperCase(Character.forDigit((c >> 4) & 0xf, 16)));
+				partition.append(Character.toUpperCase(Character.forDigit(c & 0xf, 16)));
+			} else {
+				partition.append(c);
+			}
+		}
+	}
+
+	/**
+	 * @return true for the characters that Hive escapes in partition directories
+	 */
+	private static boolean needsEscape(char c) {
+		if (c < ' ' || c == '\u007f') {
+			return true;
+		}
+		switch (c) {
+		case '"':
+		case '#':
+		case '%':
+		case '\'':
+		case '*':
+		case '/':
+		case ':':
+		case '=':
+		case '?':
+		case '\\':
+		case '[':
+		case ']':
+		case '^':
+		case '{':
+			return true;
+		default:
+			return false;
+		}
+	}
+}
@@ -34,6 +34,43 @@ public class IHdfsConstants {
     public static final String PARAM_FILE_NAME_ATTR = "fileAttributeName";
     public static final String PARAM_TEMP_FILE = "tempFile";
     public static final String PARAM_TIME_FORMAT = "timeFormat";
+    public static final String PARAM_MAX_OPEN_FILES = "maxOpenFiles";
+    public static final String PARAM_WRITER_PARALLELISM = "writerParallelism";
+    public static final String PARAM_STRIPE_ATTR_NAME = "stripeAttributeName";
+    public static final String PARAM_PARTITION_ATTR_NAMES = "partitionAttributeNames";
+    public static final String PARAM_PARTITION_IDLE_TIME = "partitionIdleTime";
+    public static final String PARAM_PARTITION_MAX_MEMORY = "partitionMaxMemory";
+    public static final String PARAM_SHARED_BUFFER_POOL = "sharedBufferPool";
+    public static final String PARAM_BUFFER_POOL_SIZE = "bufferPoolSize";
+    public static final String PARAM_WRITER_MEMORY_BUDGET = "writerMemoryBudget";
+    public static final String PARAM_SYNC_MODE = "syncMode";
+    public static final String PARAM_SYNC_POLICY = "syncPolicy";
+    public static final String PARAM_SYNC_BYTES = "syncBytes";
+    public static final String PARAM_SYNC_TIME = "syncTime";
+    public static final String PARAM_MAX_FLUSH_DELAY = "maxFlushDelay";
+    public static final String PARAM_WRITE_BUFFER_SIZE = "writeBufferSize";
+    public static final String PARAM_WRITE_BUFFER_COUNT = "writeBufferCount";
+    public static final String PARAM_ADAPTIVE_BUFFERING = "adaptiveBuffering";
+    public static final String PARAM_COMPRESSION = "compression";
+    public static final String PARAM_COMPRESSION_THREADS = "compressionThreads";
+    public static final String PARAM_FILE_BLOCK_SIZE = "fileBlockSize";
+    public static final String PARAM_FILE_REPLICATION = "fileReplication";
+    public static final String PARAM_FILE_BUFFER_SIZE = "fileBufferSize";
+    public static final String PARAM_STORAGE_POLICY = "storagePolicy";
+    public static final String PARAM_ERASURE_CODING_POLICY = "erasureCodingPolicy";
+    public static final String PARAM_EXACTLY_ONCE = "exactlyOnce";
+    public static final String PARAM_SPILL_DIRECTORY = "spillDirectory";
+    public static final String PARAM_SPILL_MAX_SIZE = "spillMaxSize";
+    public static final String PARAM_FORMAT = "format";
+    public static final String PARAM_DELIMITER = "delimiter";
+    public static final String PARAM_PARQUET_ROW_GROUP_SIZE = "parquetRowGroupSize";
+    public static final String PARAM_PARQUET_MAX_MEMORY = "parquetMaxMemory";
+    public static final String PARAM_PARQUET_DICTIONARY_ENCODING = "parquetDictionaryEncoding";
+    public static final String PARAM_AVRO_SYNC_INTERVAL = "avroSyncInterval";
+    public static final String PARAM_KEY_ATTR_NAME = "keyAttributeName";
+    public static final String PARAM_VALUE_ATTR_NAME = "valueAttributeName";
+    public static final String PARAM_SEQUENCE_COMPRESSION_TYPE = "sequenceCompressionType";
+    public static final String PARAM_SEQUENCE_BLOCK_SIZE = "sequenceBlockSize";
   
     // HDFSFileCopy parameters
     public static final String PARAM_LOCAL_FILE_NAME_ATTR = "localFileAttrName";
@@ -65,6 +102,7 @@ public class IHdfsConstants {
     public static final String FILE_VAR_PEID = "%PEID";
     public static final String FILE_VAR_PROCID = "%PROCID";
     public static final String FILE_VAR_HOST = "%HOST";
+    public static final String FILE_VAR_STRIPE = "%STRIPE";
 
     public final static String FS_HDFS = "hdfs";
     public final static String FS_GPFS = "gpfs";
@@ -78,6 +116,21 @@ public class IHdfsConstants {
     public static final int RECONN_BOUND_DEFAULT = 5;
     public static final double RECONN_INTERVAL_DEFAULT = 10;
 
+    public static final int WRITE_BUFFER_SIZE_DEFAULT = 16 * 1024 * 1024;
+    public static final int WRITE_BUFFER_COUNT_DEFAULT = 3;
+    public static final long PARQUET_ROW_GROUP_SIZE_DEFAULT = 128 * 1024 * 1024;
+    public static final int AVRO_SYNC_INTERVAL_DEFAULT = 64000;
+    public static final String DELIMITER_DEFAULT = ",";
+    public static final int SEQUENCE_BLOCK_SIZE_DEFAULT = 1000000;
+    // directory name part of a partition attribute with an empty value, as written by Hive
+    public static final String PARTITION_DEFAULT_VALUE = "__HIVE_DEFAULT_PARTITION__";
+
+    // spill file of one file before its writes wait for HDFS
+    public static final long SPILL_MAX_SIZE_DEFAULT = 1024L * 1024 * 1024;
+
+    // idle write buffers kept for reuse, enough for the buffers of one writer
+    public static final long BUFFER_POOL_SIZE_DEFAULT = (long) WRITE_BUFFER_COUNT_DEFAULT * WRITE_BUFFER_SIZE_DEFAULT;
+
     public static final String DESC_HDFS_USER = "This parameter specifies the user ID to use when you connect to the HDFS file system. \\n"
             + "If this parameter is not specified, the operator uses the instance owner ID to connect to HDFS. \\n"
             + "When connecting to Hadoop instances on IBM Analytics Engine, this parameter must be specified otherwise the connection will be unsuccessful. \\n"
@@ -186,8 +239,227 @@ public class IHdfsConstants {
             + "This parameter must be specified when the optional input port is not configured. \\n"
             + "If the optional input port is used and the file name is specified, the operator generates an error.";
 
-    public static final String DESC_SINK_FILE_ATTR = "If set, this points to an attribute containing the filename.  The operator will close a file when value of this attribute changes. \\n"
-            + "If the string contains substitutions, the check for a change happens before substituations, and the filename contains the substitutions based on the first tuple.";
+    public static final String DESC_SINK_FILE_ATTR = "If set, this points to an attribute containing the filename.  The operator will close a file when value of this attribute changes, \\n"
+            + "unless the `maxOpenFiles` parameter allows more than one file to be open at the same time. \\n"
+            + "If the string contains substitutions, the check for a change happens before substituations, and the filename contains the substitutions based on the first tuple. \\n"
+            + "If the `bytesPerFile` , `timePerFile` or `tuplesPerFile` parameter is set, every file rolls over on its own by the expiration policy, \\n"
+            + "and the next tuple with the same value creates a new file. The value must then contain `%FILENUM` , so that the new file does not overwrite the rolled one, \\n"
+            + "a tuple whose value does not contain it fails the operator.";
+
+    public static final String DESC_SINK_WRITER_PARALLELISM = "This optional parameter specifies the number of files that the operator writes at the same time when the `file` parameter is set. \\n"
+            + "Each file has its own write buffers and its own HDFS write pipeline, so the throughput of the operator scales with the number of files without a parallel region. \\n"
+            + "The tuples are spread round-robin over the files, or by the hash of the attribute specified by `stripeAttributeName` . \\n"
+            + "Every file rolls over on its own by the expiration policy. If the value is greater than `1` , the `file` parameter must contain `%STRIPE` or `%FILENUM` , \\n"
+            + "so that the files have distinct names. The parameter cannot be used with `fileAttributeName` nor in a consistent region. The default value is `1` .";
+
+    public static final String DESC_SINK_STRIPE_ATTR_NAME = "This optional parameter specifies the name of the attribute whose hash selects the file that a tuple is written to when the `writerParallelism` parameter is set. \\n"
+            + "Tuples with the same value are written to the same file. If not specified, the tuples are spread round-robin.";
+
+    public static final String DESC_SINK_PARTITION_ATTR_NAMES = "This optional parameter specifies the names of the attributes whose values select the directory that a tuple is written to. \n"
+            + "For every attribute, a directory level of the form `name=value` is inserted between the directory and the file name of the `file` parameter, \n"
+            + "so that the tuples with `dt` set to `2026-10-18` and `hour` set to `07` are written to `<dir>/dt=2026-10-18/hour=07/<file>` , as expected by Hive partitioned tables. \n"
+            + "Characters of the values that are not allowed in a directory name, like `/` , `=` and `%` , are escaped as `%` followed by their hexadecimal code, \n"
+            + "and an empty value becomes `__HIVE_DEFAULT_PARTITION__` . The partition attributes are not written to the files. \n"
+            + "The attributes must be strings, enums, booleans or integers. The `maxOpenFiles` parameter limits the number of partitions that are open at the same time, \n"
+            + "the least recently written partition is closed when a tuple for a new partition arrives. \n"
+            + "The parameter requires the `file` parameter and a `format` other than `raw` , and cannot be used with `writerParallelism` nor in a consistent region.";
+
+    public static final String DESC_SINK_PARTITION_IDLE_TIME = "This optional parameter specifies the number of seconds after which the file of a partition that received no tuples is closed, \n"
+            + "when the `partitionAttributeNames` parameter is set. The next tuple for the partition opens a new file. If not specified, partitions are only closed \n"
+            + "by the expiration policy of the files, by `maxOpenFiles` , or by `partitionMaxMemory` .";
+
+    public static final String DESC_SINK_PARTITION_MAX_MEMORY = "This optional parameter specifies the maximum number of bytes that the open partitions buffer in memory, \n"
+            + "when the `partitionAttributeNames` parameter is set. The number of partitions that are open at the same time is reduced below `maxOpenFiles` , \n"
+            + "so that the write buffers, or the row groups of the `parquet` format, of all open partitions fit into this limit.";
+
+    public static final String DESC_SINK_MAX_OPEN_FILES = "This optional parameter specifies the maximum number of files that the operator keeps open at the same time when the `fileAttributeName` or `partitionAttributeNames` parameter is set. \\n"
+            + "Tuples for a file that is already open are written to it without closing and reopening the file, so input streams that interleave tuples for several files \\n"
+            + "do not cause a close and create on HDFS for every tuple. When a tuple arrives for a new file and the maximum is reached, the least recently written file is closed. \\n"
+            + "If the `tempFile` parameter is used and the value is greater than `1` , the `tempFile` parameter must contain `%FILENUM` . \\n"
+            + "The parameter cannot be used in a consistent region, because the checkpoint holds the state of a single file. \\n"
+            + "The default value is `1` , so the operator closes the current file whenever the filename attribute changes.";
+
+    public static final String DESC_SINK_SHARED_BUFFER_POOL = "This optional parameter specifies whether the write buffers of the operator are taken from a pool that is shared by all `HDFS2FileSink` operators in the same processing element (PE). \\n"
+            + "When a file is closed its write buffers are returned to the pool and reused by the next file that is written, instead of allocating new buffers. \\n"
+            + "If set to `false` , each operator uses its own pool. If operators in the same PE specify different `bufferPoolSize` values for the shared pool, the largest value is used. \\n"
+            + "The default value is `false` .";
+
+    public static final String DESC_SINK_BUFFER_POOL_SIZE = "This optional parameter specifies the maximum number of bytes of idle write buffers that are kept in the buffer pool for reuse. \\n"
+            + "Buffers returned to a full pool are released. The value `0` disables the reuse of buffers between files. \\n"
+            + "The metrics `nBufferPoolHits` and `nBufferPoolMisses` show how many buffers were reused and how many were allocated. \\n"
+            + "The default value is `50331648` (three buffers of 16 MB).";
+
+    public static final String DESC_SINK_WRITER_MEMORY_BUDGET = "This optional parameter specifies the maximum number of bytes of the write buffers that the open files of the operator hold, \\n"
+            + "including the idle buffers of the buffer pool. If the `sharedBufferPool` parameter is `true` , the budget is shared by all `HDFS2FileSink` operators in the PE, \\n"
+            + "so that many operators can be fused into one PE without reserving the write buffers of all of them. If operators specify different budgets for the shared pool, the largest value is used. \\n"
+            + "Every open file gets the buffer that it fills, further buffers only while the budget has room for them, otherwise the file waits for its buffers being written. \\n"
+            + "When the files hold most of the budget, the files with the most buffered data write their buffer early and continue with fewer or smaller buffers. \\n"
+            + "Files that receive no tuples give their idle buffers back right away and write their buffer within a second. \\n"
+            + "The budget covers only the formats that are written through the write buffers. The row groups of the `parquet` format, \\n"
+            + "the blocks of the `avro` format and the buffers of the `sequence` format are held by their writers and are not counted against the budget. \\n"
+            + "The metrics `writerMemoryUsed` and `writerMemoryUsage` show the memory held and the percentage of the budget. If not specified, the memory of the write buffers is not limited.";
+
+    public static final String DESC_SINK_SYNC_MODE = "This optional parameter specifies how the operator makes the data that it writes durable. The parameter can be set with the following values. \\n"
+            + "* `hflush` The data is flushed to all datanodes of the write pipeline and becomes visible to new readers. \\n"
+            + "* `hsync` Like `hflush` , and the datanodes also persist the data to disk. This is the strongest and slowest mode. \\n"
+            + "* `none` The operator does not flush explicitly. The data becomes durable when HDFS fills a block or when the file is closed. \\n"
+            + "The `syncPolicy` parameter specifies when the mode is applied. When the operator is in a consistent region, use `hflush` or `hsync` , \\n"
+            + "otherwise data written before a checkpoint might be lost on failure. The default value is `hflush` .";
+
+    public static final String DESC_SINK_SYNC_POLICY = "This optional parameter specifies when the operator applies the `syncMode` to the written data. The parameter can be set with the following values. \\n"
+            + "* `perBuffer` After every write buffer is written to HDFS. \\n"
+            + "* `perBytes` After at least the number of bytes specified by the `syncBytes` parameter is written since the last sync. \\n"
+            + "* `perTime` When at least the time specified by the `syncTime` parameter has passed since the last sync. The time is checked when a write buffer is written to HDFS. \\n"
+            + "* `onDrain` Only when a consistent region drains. Files are always made durable when they are closed. \\n"
+            + "Syncing less often avoids a round trip through the datanode pipeline for every buffer and increases the throughput. \\n"
+            + "In all policies the files are synced on drain. The default value is `perBuffer` .";
+
+    public static final String DESC_SINK_SYNC_BYTES = "This optional parameter specifies the number of bytes that are written between two syncs when the `syncPolicy` parameter is `perBytes` .";
+
+    public static final String DESC_SINK_SYNC_TIME = "This optional parameter specifies the minimum time, in seconds, between two syncs when the `syncPolicy` parameter is `perTime` .";
+
+    public static final String DESC_SINK_MAX_FLUSH_DELAY = "This optional parameter specifies the maximum time, in seconds, that written tuples are held back in the write buffer before they are written to HDFS. \\n"
+            + "Once the content of a file has waited for this time, the write buffer is written even if it is not full, and the file is synced as specified by the `syncMode` parameter, \\n"
+            + "whatever the `syncPolicy` . This bounds the time until readers that follow the file see the tuples of a sink that receives few tuples. \\n"
+            + "The age of the content is checked periodically by a timer that all operators in the PE share, without a thread per operator, so the content may wait up to a quarter of the time longer. \\n"
+            + "The parameter cannot be used with the `parquet` , `avro` and `sequence` formats. If not specified, the write buffer is written when it is full, on drain, or when the file is closed.";
+
+    public static final String DESC_SINK_WRITE_BUFFER_SIZE = "This optional parameter specifies the size, in bytes, of the buffers that the operator uses to write to a file. \\n"
+            + "Tuples are collected in a buffer and the full buffer is written to HDFS by a separate thread while the operator fills the next buffer. \\n"
+            + "Small buffers save memory when many files or operators write at a low rate, large buffers reduce the number of writes to HDFS. \\n"
+            + "If the `adaptiveBuffering` parameter is `true` , the value is the maximum buffer size. The default value is `16777216` (16 MB).";
+
+    public static final String DESC_SINK_WRITE_BUFFER_COUNT = "This optional parameter specifies the number of write buffers per file, including the buffer that is being filled and the buffers that are being written to HDFS. \\n"
+            + "When all buffers are being written, the operator waits until one of them is available again. \\n"
+            + "More buffers absorb short stalls of HDFS at the cost of memory. The buffers are allocated when they are needed. \\n"
+            + "A tuple that is larger than a buffer is written directly, it uses as many buffers of this budget as it would fill while it is written. \\n"
+            + "The metric `nWriteStalls` counts how often the operator had to wait. \\n"
+            + "If the `adaptiveBuffering` parameter is `true` , the value is the maximum number of buffers. The default value is `3` .";
+
+    public static final String DESC_SINK_ADAPTIVE_BUFFERING = "This optional parameter specifies whether the operator adapts the size and the number of the write buffers to the load. \\n"
+            + "If set to `true` , a file starts with two buffers of 64 KB. When the operator has to wait for a buffer, or writing a buffer to HDFS takes longer than filling it, \\n"
+            + "first the number of buffers and then the size of the buffers grows, up to the values of the `writeBufferCount` and `writeBufferSize` parameters. \\n"
+            + "When filling the buffers takes much longer than writing them for a while, the buffers shrink again. \\n"
+            + "The default value is `false` , the operator uses buffers of the size `writeBufferSize` .";
+
+    public static final String DESC_SINK_COMPRESSION = "This optional parameter specifies the compression of the files that the operator writes, using the Hadoop compression codecs. \\n"
+            + "The parameter can be set with the following values: `gzip` , `bzip2` , `snappy` , `lz4` and `zstd` . \\n"
+            + "The operator compresses the data itself, so no `Compress` operator is needed in front of it. The file name is not changed, \\n"
+            + "specify the extension of the format, for example `.gz` , so that Hadoop tools recognize the compression. \\n"
+            + "Each sync of the data, see the `syncMode` parameter, ends a compressed block, so the data written so far can be decompressed. \\n"
+            + "The `bytesPerFile` parameter applies to the uncompressed data. \\n"
+            + "The codecs `snappy` and `zstd` may require the native Hadoop library on the host. If not specified, the files are not compressed.";
+
+    public static final String DESC_SINK_COMPRESSION_THREADS = "This optional parameter specifies the number of threads that compress the data when the `compression` parameter is `gzip` or `zstd` . \\n"
+            + "With more than one thread, each write buffer is compressed on its own into a complete gzip member or zstd frame, \\n"
+            + "and the compressed blocks are written to the file in order. The file is a valid concatenation of blocks that tools read as one stream. \\n"
+            + "The threads are shared by all files of the operator. A file compresses at most as many buffers at the same time as it has write buffers, \\n"
+            + "so set the `writeBufferCount` parameter to at least the number of threads plus one. \\n"
+            + "The default value is `1` , the data is compressed as one stream by the thread that writes the file.";
+
+    public static final String DESC_SINK_FILE_BLOCK_SIZE = "This optional parameter specifies the block size, in bytes, of the files that the operator creates, for example `536870912` (512 MB) for large files. \\n"
+            + "Fewer, larger blocks reduce the load of the NameNode and the number of tasks that read the files. The value must be a multiple of the checksum size of HDFS, usually 512 bytes. \\n"
+            + "If not specified, the files get the default block size of the file system.";
+
+    public static final String DESC_SINK_FILE_REPLICATION = "This optional parameter specifies the number of replicas of the blocks of the files that the operator creates. \\n"
+            + "Files that are only kept for a short time can use fewer replicas than the default of the file system to save disk space and network bandwidth. \\n"
+            + "The parameter cannot be used with `erasureCodingPolicy` . If not specified, the files get the default replication of the file system.";
+
+    public static final String DESC_SINK_FILE_BUFFER_SIZE = "This optional parameter specifies the size, in bytes, of the buffer of the HDFS client stream of the files that the operator creates. \\n"
+            + "It is independent of the write buffers of the operator, see the `writeBufferSize` parameter. If not specified, the value of `io.file.buffer.size` is used.";
+
+    public static final String DESC_SINK_STORAGE_POLICY = "This optional parameter specifies the HDFS storage policy of the files that the operator creates, for example `HOT` , `WARM` , `COLD` , `ONE_SSD` or `ALL_SSD` . \\n"
+            + "The policy `LAZY_PERSIST` writes the blocks of a file to the memory of the datanodes first and persists them to disk later, with a single replica. \\n"
+            + "It suits scratch output that can be written again, because data that is not persisted yet is lost when a datanode restarts. \\n"
+            + "Files that are appended keep their policy. If not specified, the files get the policy of their directory.";
+
+    public static final String DESC_SINK_ERASURE_CODING_POLICY = "This optional parameter specifies the name of the HDFS erasure coding policy of the files that the operator creates, for example `RS-6-3-1024k` . \\n"
+            + "The policy must be enabled on the cluster. Erasure coded files use less disk space than replicated files, but their data cannot be synced before the file is closed, \\n"
+            + "so the `syncMode` parameter has no effect. The parameter cannot be used with `fileReplication` nor `spillDirectory` , and requires HDFS. \\n"
+            + "If not specified, the files get the policy of their directory.";
+
+    public static final String DESC_SINK_EXACTLY_ONCE = "This optional parameter specifies whether the operator writes every tuple exactly once when it is a member of a consistent region. \\n"
+            + "If set to `true` , the tuples between two checkpoints are written to hidden part files in the directory of the file, named after the file, the operator and the checkpoint. \\n"
+            + "A drain closes the parts, which makes them durable. When the checkpoint is complete in the whole region, the parts are committed in order: \\n"
+            + "the first part of a file is renamed to the file, the following parts are appended to it with the HDFS `concat` operation, both of which are atomic. \\n"
+            + "A reset deletes the parts that were written after the checkpoint, instead of truncating the file, so replayed tuples are not written twice. \\n"
+            + "Files appear, grow and are reported on the output port only when a checkpoint is committed. \\n"
+            + "The file system must support the `concat` operation, as HDFS does through the `hdfs` and `webhdfs` schemes, otherwise the operator fails to initialize. \\n"
+            + "The parameter cannot be used with `fileAttributeName` . The default value is `false` , the operator appends to the file of the checkpoint after a reset.";
+
+    public static final String DESC_SINK_SPILL_DIRECTORY = "This optional parameter specifies a local directory where the operator keeps a copy of the data that is not synced to HDFS yet. \\n"
+            + "When writing to HDFS fails, for example during a NameNode failover or when the write pipeline breaks, the operator continues to write to the local spill file \\n"
+            + "instead of dropping the data. Every two seconds the operator opens the HDFS file again, truncates it to the data that was synced, \\n"
+            + "writes the content of the spill file in order and continues to write to HDFS. When a spill file reaches the `spillMaxSize` , the operator tries once more to write it to HDFS. \\n"
+            + "If HDFS is still not available, the write buffers of the file are held until HDFS is back, so the operator applies back pressure to its input port instead of losing data. \\n"
+            + "A file that is closed while HDFS is not available is closed once its spill file is written. When the operator shuts down while HDFS is still not available, \\n"
+            + "or when the spill file cannot be written, the file fails: its spill file is kept in the directory and the operator fails. A relative path is in the data directory of the application. \\n"
+            + "The parameter requires a `format` that is written by the write buffers, and a `syncMode` other than `none` . It cannot be used in a consistent region. \\n"
+            + "If not specified, the data of a failed write is lost.";
+
+    public static final String DESC_SINK_SPILL_MAX_SIZE = "This optional parameter specifies the maximum number of bytes of the spill file of a file when the `spillDirectory` parameter is set. \\n"
+            + "While HDFS is available, the file is synced before its spill file exceeds this size. The default value is `1073741824` (1 GB).";
+
+    public static final String DESC_SINK_FORMAT = "This optional parameter specifies the format of the files that the operator writes. The parameter can be set with the following values. \\n"
+            + "* `raw` The value of the data attribute is written. Strings are followed by a newline, blobs are written as they are. \\n"
+            + "* `parquet` The tuples are written as rows of a Parquet file. Every attribute, except the attribute specified by `fileAttributeName` , becomes a column with the name of the attribute. \\n"
+            + "The attributes can be of type boolean, integer, float32, float64, rstring, ustring, enum, blob and timestamp. Timestamps are stored in microseconds. \\n"
+            + "The rows are buffered in memory and written in row groups, see the `parquetRowGroupSize` parameter. The column chunks are compressed with the codec of the `compression` parameter, \\n"
+            + "`bzip2` is not supported. A Parquet file can be read once it is closed, so the format cannot be used in a consistent region. \\n"
+            + "The `bytesPerFile` parameter applies to the encoded size, including the buffered row group. \\n"
+            + "* `avro` The tuples are written as records of an Avro object container file. Every attribute, except the attribute specified by `fileAttributeName` , becomes a field with the name of the attribute. \\n"
+            + "The attributes can be of the same types as for `parquet` . Timestamps are stored as `timestamp-micros` . \\n"
+            + "The records are written in blocks, see the `avroSyncInterval` parameter. The blocks are compressed with the codec of the `compression` parameter, \\n"
+            + "`gzip` selects the Avro `deflate` codec and `lz4` is not supported. The header of the file cannot be rewritten after a reset, so the format cannot be used in a consistent region. \\n"
+            + "The `bytesPerFile` parameter applies to the written blocks. \\n"
+            + "* `sequence` The tuples are written as key/value pairs of a Hadoop SequenceFile. The value is the attribute specified by `valueAttributeName` , \\n"
+            + "the key is the attribute specified by `keyAttributeName` , or `NullWritable` if that parameter is not set. Other attributes are not written. \\n"
+            + "The key and value can be of type boolean, int32, int64, float32, float64, rstring, ustring and blob, and are written as the Writable of the same type, `Text` or `BytesWritable` . \\n"
+            + "If the `compression` parameter is set, the records or blocks are compressed with that codec, see the `sequenceCompressionType` parameter. \\n"
+            + "Sync markers are written about every `sequenceBlockSize` bytes, so the files can be split. A SequenceFile cannot be appended after a reset, so the format cannot be used in a consistent region. \\n"
+            + "The `bytesPerFile` parameter applies to the written records and blocks. \\n"
+            + "* `csv` Every attribute, except the attribute specified by `fileAttributeName` , is written as a value of one line, separated by the `delimiter` . \\n"
+            + "Strings that contain a quote, a line break or a character of the delimiter are quoted, and quotes in them are doubled. \\n"
+            + "* `json` Every tuple is written as a JSON object on one line, with a field for every attribute, except the attribute specified by `fileAttributeName` . \\n"
+            + "Float values that are not a number or infinite are written as `null` . \\n"
+            + "* `delimited` Like `csv` , but the values are never quoted. \\n"
+            + "The text formats write UTF-8 and support attributes of type boolean, integer, float32, float64, rstring, ustring, enum and timestamp, \\n"
+            + "timestamps are written as microseconds since the epoch. The lines are compressed with the `compression` parameter like `raw` text, and can be used in a consistent region. \\n"
+            + "The default value is `raw` .";
+
+    public static final String DESC_SINK_DELIMITER = "This optional parameter specifies the separator of the values when the `format` parameter is `csv` or `delimited` . \\n"
+            + "The default value is `,` .";
+
+    public static final String DESC_SINK_PARQUET_ROW_GROUP_SIZE = "This optional parameter specifies the size, in bytes, of the row groups when the `format` parameter is `parquet` . \\n"
+            + "The rows are buffered in memory until the row group has this size, then the row group is written to the file. \\n"
+            + "Larger row groups compress better and are read faster, but need more memory. The default value is `134217728` (128 MB).";
+
+    public static final String DESC_SINK_PARQUET_MAX_MEMORY = "This optional parameter specifies the maximum number of bytes that the open Parquet files of the operator buffer in memory. \\n"
+            + "If the `fileAttributeName` parameter is used, the row group size of each file is reduced, so that the row groups of `maxOpenFiles` files fit into this limit. \\n"
+            + "If not specified, each file buffers up to `parquetRowGroupSize` bytes.";
+
+    public static final String DESC_SINK_PARQUET_DICTIONARY_ENCODING = "This optional parameter specifies whether the Parquet writer uses dictionary encoding. \\n"
+            + "The writer encodes each column with a dictionary as long as the dictionary stays small, and falls back to plain encoding for columns with many distinct values. \\n"
+            + "The default value is `true` .";
+
+    public static final String DESC_SINK_AVRO_SYNC_INTERVAL = "This optional parameter specifies the approximate size, in bytes, of the blocks of an Avro file when the `format` parameter is `avro` . \\n"
+            + "The records are encoded into a block in memory, when the block reaches this size it is compressed and written to the file followed by a sync marker. \\n"
+            + "Readers can split the file at the sync markers. Larger blocks compress better, smaller blocks are written to the file sooner. The default value is `64000` .";
+
+    public static final String DESC_SINK_KEY_ATTR_NAME = "This optional parameter specifies the name of the attribute that is written as the key when the `format` parameter is `sequence` . \\n"
+            + "If not specified, the key of all records is `NullWritable` .";
+
+    public static final String DESC_SINK_VALUE_ATTR_NAME = "This parameter specifies the name of the attribute that is written as the value when the `format` parameter is `sequence` . \\n"
+            + "It is required by the `sequence` format.";
+
+    public static final String DESC_SINK_SEQUENCE_COMPRESSION_TYPE = "This optional parameter specifies how a SequenceFile is compressed when the `compression` parameter is set. The parameter can be set with the following values. \\n"
+            + "* `record` Each value is compressed on its own, keys are not compressed. \\n"
+            + "* `block` Keys and values are buffered and compressed together in blocks of `sequenceBlockSize` bytes, which compresses much better. \\n"
+            + "The default value is `block` .";
+
+    public static final String DESC_SINK_SEQUENCE_BLOCK_SIZE = "This optional parameter specifies the number of bytes of keys and values that are buffered in memory before a block of a SequenceFile is compressed and written. \\n"
+            + "A sync marker follows each block. Without block compression, a sync marker is written after about this number of bytes. \\n"
+            + "The default value is `1000000` .";
 
     public static final String DESC_SINK_FILE = "This parameter specifies the name of the file that the operator writes to. \\n"
             + "The `file` parameter can optionally contain the following variables, which the operator evaluates at runtime to generate the file name:\\n"
@@ -196,7 +468,8 @@ public class IHdfsConstants {
             + "* %PROCID        The process ID of the processing element. \\n"
             + "* %PEID         The processing element ID. \\n"
             + "* %PELAUNCHNUM    The PE launch count. \\n"
-            + "* %TIME         The time when the file is created.  If the `timeFormat` parameter is not specified, the default time format is `yyyyMMdd_HHmmss` . \\n\\n"
+            + "* %TIME         The time when the file is created.  If the `timeFormat` parameter is not specified, the default time format is `yyyyMMdd_HHmmss` . \\n"
+            + "* %STRIPE       The number of the stripe that writes the file, from 0 to `writerParallelism` - 1. It is 0 if the `writerParallelism` parameter is not set. \\n\\n"
             +
 
             "For example, if you specify a `file` parameter of `myFile%FILENUM%TIME.txt`, and the first three files are created in the afternoon on November 30, 2014, \\n"
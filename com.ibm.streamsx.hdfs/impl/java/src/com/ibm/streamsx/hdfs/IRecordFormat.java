@@ -0,0 +1,21 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A record oriented file format, configured once per operator.  Creates the
+ * writer of every file that the operator writes in this format.
+ */
+public interface IRecordFormat {
+
+	/**
+	 * @param out	stream of the new file, the writer owns and closes it
+	 * @return a writer for the file
+	 */
+	public IRecordWriter createWriter(OutputStream out) throws IOException;
+}
@@ -0,0 +1,36 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import java.io.IOException;
+
+import com.ibm.streams.operator.Tuple;
+
+/**
+ * Writes whole tuples to a file in a record oriented format, used by 
+ * {@link HdfsFile} instead of the line oriented {@link AsyncBufferWriter}.
+ */
+public interface IRecordWriter {
+
+	public void write(Tuple tuple) throws IOException;
+
+	/**
+	 * Make the records written so far durable, as far as the format allows.
+	 */
+	public void flush() throws IOException;
+
+	/**
+	 * Write the pending records and the end of the file, and close the stream.
+	 */
+	public void close() throws IOException;
+
+	/**
+	 * @return number of bytes written to the file, including the records
+	 * that are buffered by the writer
+	 */
+	public long getDataSize();
+
+	public boolean isClosed();
+}
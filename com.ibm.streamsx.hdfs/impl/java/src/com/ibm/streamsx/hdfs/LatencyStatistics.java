@@ -0,0 +1,53 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.streams.operator.metrics.Metric;
+
+/**
+ * Durations of an operation, like a flush or a rename, recorded by any thread.
+ * The maximum and the average are kept for a window that ends every time they
+ * are published to metrics, the total is kept since the start.
+ */
+public class LatencyStatistics {
+
+	private long fTotal = 0;
+	private long fWindowMax = 0;
+	private long fWindowSum = 0;
+	private long fWindowCount = 0;
+
+	/**
+	 * @param nanos	duration of one operation in nanoseconds
+	 */
+	public synchronized void record(long nanos) {
+		fTotal += nanos;
+		fWindowSum += nanos;
+		fWindowCount++;
+		if (nanos > fWindowMax) {
+			fWindowMax = nanos;
+		}
+	}
+
+	/**
+	 * @return the sum of all durations in milliseconds
+	 */
+	public synchronized long getTotalMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(fTotal);
+	}
+
+	/**
+	 * Set the metrics to the maximum and the average duration of the window in
+	 * milliseconds, 0 if nothing was recorded, and start a new window.
+	 */
+	public synchronized void publish(Metric max, Metric avg) {
+		max.setValue(TimeUnit.NANOSECONDS.toMillis(fWindowMax));
+		avg.setValue(fWindowCount > 0 ? TimeUnit.NANOSECONDS.toMillis(fWindowSum / fWindowCount) : 0);
+		fWindowMax = 0;
+		fWindowSum = 0;
+		fWindowCount = 0;
+	}
+}
@@ -0,0 +1,207 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
+import org.apache.parquet.schema.Types;
+
+import com.ibm.streams.operator.Attribute;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.Type.MetaType;
+
+/**
+ * Parquet file format.  Every attribute of the input tuple, except the one with
+ * the file name, becomes a required column of the same name.
+ *
+ * Integers map to INT32 or INT64 with the integer annotation of their width and
+ * sign, floats to FLOAT and DOUBLE, strings and enums to BINARY with the string
+ * annotation, blobs to BINARY, and timestamps to INT64 with the timestamp annotation
+ * in microseconds.  Other types, like collections, tuples and decimals, are not supported.
+ */
+public class ParquetRecordFormat implements IRecordFormat {
+
+	private final MessageType fSchema;
+	// input attributes that are written, in column order
+	private final int[] fAttributeIndexes;
+	private final MetaType[] fAttributeTypes;
+	private final String[] fColumnNames;
+
+	private final Configuration fConf;
+	private final CompressionCodecName fCodecName;
+	private final long fRowGroupSize;
+	private final boolean fDictionaryEncoding;
+
+	/**
+	 * @param schema				schema of the input port
+	 * @param excludedIndexes		indexes of the attributes that are not written
+	 * @param conf					Hadoop configuration of the file system
+	 * @param codecName				compression of the column chunks
+	 * @param rowGroupSize			number of bytes buffered in memory before a row group is written
+	 * @param dictionaryEncoding	use dictionary encoding for the columns where it pays off
+	 */
+	public ParquetRecordFormat(StreamSchema schema, Collection<Integer> excludedIndexes, Configuration conf,
+			CompressionCodecName codecName, long rowGroupSize, boolean dictionaryEncoding) {
+		List<Type> columns = new ArrayList<Type>();
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		for (Attribute attribute : schema) {
+			if (!excludedIndexes.contains(attribute.getIndex())) {
+				columns.add(toParquetType(attribute.getName(), attribute.getType().getMetaType()));
+				attributes.add(attribute);
+			}
+		}
+		fSchema = new MessageType("tuple", columns);
+
+		fAttributeIndexes = new int[attributes.size()];
+		fAttributeTypes = new MetaType[attributes.size()];
+		fColumnNames = new String[attributes.size()];
+		for (int i = 0; i < attributes.size(); i++) {
+			fAttributeIndexes[i] = attributes.get(i).getIndex();
+			fAttributeTypes[i] = attributes.get(i).getType().getMetaType();
+			fColumnNames[i] = attributes.get(i).getName();
+		}
+
+		fConf = conf;
+		fCodecName = codecName;
+		fRowGroupSize = rowGroupSize;
+		fDictionaryEncoding = dictionaryEncoding;
+	}
+
+	/**
+	 * @return true if attributes of the type can be written to a Parquet file
+	 */
+	public static boolean isSupported(MetaType type) {
+		switch (type) {
+		case BOOLEAN:
+		case INT8:
+		case INT16:
+		case INT32:
+		case INT64:
+		case UINT8:
+		case UINT16:
+		case UINT32:
+		case UINT64:
+		case FLOAT32:
+		case FLOAT64:
+		case RSTRING:
+		case BSTRING:
+		case USTRING:
+		case ENUM:
+		case BLOB:
+		case TIMESTAMP:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @param compression	compression of the operator, null for none
+	 * @return the Parquet codec, or null if Parquet does not support the compression
+	 */
+	public static CompressionCodecName toCodecName(CompressionType compression) {
+		if (compression == null) {
+			return CompressionCodecName.UNCOMPRESSED;
+		}
+		switch (compression) {
+		case gzip:
+			return CompressionCodecName.GZIP;
+		case snappy:
+			return CompressionCodecName.SNAPPY;
+		case lz4:
+			return CompressionCodecName.LZ4_RAW;
+		case zstd:
+			return CompressionCodecName.ZSTD;
+		default:
+			return null;
+		}
+	}
+
+	private static Type toParquetType(String name, MetaType type) {
+		switch (type) {
+		case BOOLEAN:
+			return Types.required(PrimitiveTypeName.BOOLEAN).named(name);
+		case INT8:
+			return Types.required(PrimitiveTypeName.INT32).as(LogicalTypeAnnotation.intType(8, true)).named(name);
+		case INT16:
+			return Types.required(PrimitiveTypeName.INT32).as(LogicalTypeAnnotation.intType(16, true)).named(name);
+		case INT32:
+			return Types.required(PrimitiveTypeName.INT32).as(LogicalTypeAnnotation.intType(32, true)).named(name);
+		case INT64:
+			return Types.required(PrimitiveTypeName.INT64).as(LogicalTypeAnnotation.intType(64, true)).named(name);
+		case UINT8:
+			return Types.required(PrimitiveTypeName.INT32).as(LogicalTypeAnnotation.intType(8, false)).named(name);
+		case UINT16:
+			return Types.required(PrimitiveTypeName.INT32).as(LogicalTypeAnnotation.intType(16, false)).named(name);
+		case UINT32:
+			return Types.required(PrimitiveTypeName.INT32).as(LogicalTypeAnnotation.intType(32, false)).named(name);
+		case UINT64:
+			return Types.required(PrimitiveTypeName.INT64).as(LogicalTypeAnnotation.intType(64, false)).named(name);
+		case FLOAT32:
+			return Types.required(PrimitiveTypeName.FLOAT).named(name);
+		case FLOAT64:
+			return Types.required(PrimitiveTypeName.DOUBLE).named(name);
+		case RSTRING:
+		case BSTRING:
+		case USTRING:
+		case ENUM:
+			return Types.required(PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named(name);
+		case BLOB:
+			return Types.required(PrimitiveTypeName.BINARY).named(name);
+		case TIMESTAMP:
+			return Types.required(PrimitiveTypeName.INT64)
+					.as(LogicalTypeAnnotation.timestampType(true, LogicalTypeAnnotation.TimeUnit.MICROS)).named(name);
+		default:
+			throw new IllegalArgumentException("Unsupported type " + type);
+		}
+	}
+
+	@Override
+	public IRecordWriter createWriter(OutputStream out) throws IOException {
+		return new ParquetRecordWriter(this, out);
+	}
+
+	MessageType getSchema() {
+		return fSchema;
+	}
+
+	int[] getAttributeIndexes() {
+		return fAttributeIndexes;
+	}
+
+	MetaType[] getAttributeTypes() {
+		return fAttributeTypes;
+	}
+
+	String[] getColumnNames() {
+		return fColumnNames;
+	}
+
+	Configuration getConf() {
+		return fConf;
+	}
+
+	CompressionCodecName getCodecName() {
+		return fCodecName;
+	}
+
+	long getRowGroupSize() {
+		return fRowGroupSize;
+	}
+
+	boolean isDictionaryEncoding() {
+		return fDictionaryEncoding;
+	}
+}
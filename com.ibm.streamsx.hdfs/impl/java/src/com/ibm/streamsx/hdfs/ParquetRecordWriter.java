@@ -0,0 +1,265 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type.MetaType;
+import com.ibm.streams.operator.types.RString;
+import com.ibm.streams.operator.types.Timestamp;
+
+/**
+ * Writes tuples to a Parquet file.  The rows are buffered in memory until the
+ * row group size is reached, then the row group is encoded column by column and
+ * written to the stream of the file, so the stream sees few large writes.
+ */
+public class ParquetRecordWriter implements IRecordWriter {
+
+	private final ParquetWriter<Tuple> fWriter;
+	private final CountingOutputStream fOut;
+	private boolean fIsClosed = false;
+
+	ParquetRecordWriter(ParquetRecordFormat format, OutputStream out) throws IOException {
+		fOut = new CountingOutputStream(out);
+		fWriter = new Builder(new StreamOutputFile(fOut), format)
+				.withConf(format.getConf())
+				.withWriteMode(ParquetFileWriter.Mode.OVERWRITE)
+				.withCompressionCodec(format.getCodecName())
+				.withRowGroupSize(format.getRowGroupSize())
+				.withDictionaryEncoding(format.isDictionaryEncoding())
+				.build();
+	}
+
+	@Override
+	public void write(Tuple tuple) throws IOException {
+		fWriter.write(tuple);
+	}
+
+	/**
+	 * Only complete row groups are in the file, the rows of the current
+	 * row group are written when it is full or the file is closed.
+	 */
+	@Override
+	public void flush() throws IOException {
+		fOut.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!fIsClosed) {
+			fIsClosed = true;
+			// writes the last row group and the footer, and closes the stream
+			fWriter.close();
+		}
+	}
+
+	@Override
+	public long getDataSize() {
+		return fWriter.getDataSize();
+	}
+
+	@Override
+	public boolean isClosed() {
+		return fIsClosed;
+	}
+
+	private static class Builder extends ParquetWriter.Builder<Tuple, Builder> {
+
+		private final ParquetRecordFormat fFormat;
+
+		private Builder(OutputFile file, ParquetRecordFormat format) {
+			super(file);
+			fFormat = format;
+		}
+
+		@Override
+		protected Builder self() {
+			return this;
+		}
+
+		@Override
+		protected WriteSupport<Tuple> getWriteSupport(Configuration conf) {
+			return new TupleWriteSupport(fFormat);
+		}
+	}
+
+	/**
+	 * Hands the attributes of a tuple to Parquet, using the column layout
+	 * computed once by the format.
+	 */
+	private static class TupleWriteSupport extends WriteSupport<Tuple> {
+
+		private final ParquetRecordFormat fFormat;
+		private final int[] fIndexes;
+		private final MetaType[] fTypes;
+		private final String[] fNames;
+		private RecordConsumer fConsumer;
+
+		private TupleWriteSupport(ParquetRecordFormat format) {
+			fFormat = format;
+			fIndexes = format.getAttributeIndexes();
+			fTypes = format.getAttributeTypes();
+			fNames = format.getColumnNames();
+		}
+
+		@Override
+		public WriteContext init(Configuration configuration) {
+			return new WriteContext(fFormat.getSchema(), new HashMap<String, String>());
+		}
+
+		@Override
+		public void prepareForWrite(RecordConsumer recordConsumer) {
+			fConsumer = recordConsumer;
+		}
+
+		@Override
+		public void write(Tuple tuple) {
+			fConsumer.startMessage();
+			for (int i = 0; i < fIndexes.length; i++) {
+				int index = fIndexes[i];
+				fConsumer.startField(fNames[i], i);
+				switch (fTypes[i]) {
+				case BOOLEAN:
+					fConsumer.addBoolean(tuple.getBoolean(index));
+					break;
+				case INT8:
+					fConsumer.addInteger(tuple.getByte(index));
+					break;
+				case UINT8:
+					fConsumer.addInteger(tuple.getByte(index) & 0xFF);
+					break;
+				case INT16:
+					fConsumer.addInteger(tuple.getShort(index));
+					break;
+				case UINT16:
+					fConsumer.addInteger(tuple.getShort(index) & 0xFFFF);
+					break;
+				case INT32:
+				case UINT32:
+					fConsumer.addInteger(tuple.getInt(index));
+					break;
+				case INT64:
+				case UINT64:
+					fConsumer.addLong(tuple.getLong(index));
+					break;
+				case FLOAT32:
+					fConsumer.addFloat(tuple.getFloat(index));
+					break;
+				case FLOAT64:
+					fConsumer.addDouble(tuple.getDouble(index));
+					break;
+				case RSTRING:
+				case BSTRING:
+					// the UTF-8 bytes of the string, without decoding
+					fConsumer.addBinary(Binary.fromConstantByteArray(((RString) tuple.getObject(index)).getData()));
+					break;
+				case USTRING:
+				case ENUM:
+					fConsumer.addBinary(Binary.fromString(tuple.getString(index)));
+					break;
+				case BLOB:
+					fConsumer.addBinary(Binary.fromConstantByteBuffer(tuple.getBlob(index).getByteBuffer()));
+					break;
+				case TIMESTAMP:
+					Timestamp ts = tuple.getTimestamp(index);
+					fConsumer.addLong(ts.getSeconds() * 1000000L + ts.getNanoseconds() / 1000);
+					break;
+				default:
+					throw new IllegalStateException("Unsupported type " + fTypes[i]);
+				}
+				fConsumer.endField(fNames[i], i);
+			}
+			fConsumer.endMessage();
+		}
+	}
+
+	/**
+	 * The file, already created by the operator, as seen by Parquet.
+	 */
+	private static class StreamOutputFile implements OutputFile {
+
+		private final PositionOutputStream fStream;
+
+		private StreamOutputFile(PositionOutputStream stream) {
+			fStream = stream;
+		}
+
+		@Override
+		public PositionOutputStream create(long blockSizeHint) throws IOException {
+			return fStream;
+		}
+
+		@Override
+		public PositionOutputStream createOrOverwrite(long blockSizeHint) throws IOException {
+			return fStream;
+		}
+
+		@Override
+		public boolean supportsBlockSize() {
+			return false;
+		}
+
+		@Override
+		public long defaultBlockSize() {
+			return 0;
+		}
+	}
+
+	/**
+	 * Keeps track of the position in the file, which Parquet records in the footer.
+	 */
+	private static class CountingOutputStream extends PositionOutputStream {
+
+		private final OutputStream fOut;
+		private long fPos = 0;
+
+		private CountingOutputStream(OutputStream out) {
+			fOut = out;
+		}
+
+		@Override
+		public long getPos() throws IOException {
+			return fPos;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			fOut.write(b);
+			fPos++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			fOut.write(b, off, len);
+			fPos += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (fOut instanceof FSDataOutputStream)
+				((FSDataOutputStream) fOut).hflush();
+			else
+				fOut.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			fOut.close();
+		}
+	}
+}
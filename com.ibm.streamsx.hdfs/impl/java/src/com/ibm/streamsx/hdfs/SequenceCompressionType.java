@@ -0,0 +1,28 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import org.apache.hadoop.io.SequenceFile;
+
+/**
+ * How a SequenceFile written by HDFS2FileSink is compressed, when the
+ * compression parameter is set.
+ */
+public enum SequenceCompressionType {
+	/** each value is compressed on its own */
+	record(SequenceFile.CompressionType.RECORD),
+	/** keys and values are buffered and compressed in blocks */
+	block(SequenceFile.CompressionType.BLOCK);
+
+	private final SequenceFile.CompressionType fType;
+
+	private SequenceCompressionType(SequenceFile.CompressionType type) {
+		fType = type;
+	}
+
+	public SequenceFile.CompressionType getType() {
+		return fType;
+	}
+}
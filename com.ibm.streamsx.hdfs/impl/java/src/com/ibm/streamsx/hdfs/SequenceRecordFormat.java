@@ -0,0 +1,148 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.compress.CompressionCodec;
+
+import com.ibm.streams.operator.Type.MetaType;
+
+/**
+ * Hadoop SequenceFile format.  One attribute of the input tuple is written as the
+ * key, and one as the value.  Without a key attribute, the key is NullWritable.
+ *
+ * Strings map to Text, blobs to BytesWritable, and boolean, int32, int64, float32
+ * and float64 to the Writable of the same Java type.  Other types are not supported.
+ */
+public class SequenceRecordFormat implements IRecordFormat {
+
+	// Hadoop property of the size of the compressed blocks
+	private static final String BLOCK_SIZE_KEY = "io.seqfile.compress.blocksize";
+
+	private final int fKeyIndex;
+	private final MetaType fKeyType;
+	private final int fValueIndex;
+	private final MetaType fValueType;
+
+	private final Configuration fConf;
+	private final SequenceFile.CompressionType fCompressionType;
+	private final CompressionCodec fCodec;
+	private final int fSyncInterval;
+
+	/**
+	 * @param keyIndex			index of the key attribute, -1 for none
+	 * @param keyType			type of the key attribute, ignored without key
+	 * @param valueIndex		index of the value attribute
+	 * @param valueType			type of the value attribute
+	 * @param conf				Hadoop configuration of the file system
+	 * @param compressionType	NONE, RECORD or BLOCK
+	 * @param codec				codec of the records or blocks, null without compression
+	 * @param blockSize			bytes of keys and values buffered before a block is compressed, 
+	 * 							and bytes between sync markers without block compression
+	 */
+	public SequenceRecordFormat(int keyIndex, MetaType keyType, int valueIndex, MetaType valueType,
+			Configuration conf, SequenceFile.CompressionType compressionType, CompressionCodec codec, int blockSize) {
+		fKeyIndex = keyIndex;
+		fKeyType = keyType;
+		fValueIndex = valueIndex;
+		fValueType = valueType;
+		// the writer reads the block size from the configuration
+		fConf = new Configuration(conf);
+		fConf.setInt(BLOCK_SIZE_KEY, blockSize);
+		fCompressionType = compressionType;
+		fCodec = codec;
+		fSyncInterval = blockSize;
+	}
+
+	/**
+	 * @return true if attributes of the type can be written as key or value
+	 */
+	public static boolean isSupported(MetaType type) {
+		return getWritableClass(type) != null;
+	}
+
+	/**
+	 * @return the Writable of the type, null if not supported
+	 */
+	static Class<? extends Writable> getWritableClass(MetaType type) {
+		switch (type) {
+		case BOOLEAN:
+			return BooleanWritable.class;
+		case INT32:
+			return IntWritable.class;
+		case INT64:
+			return LongWritable.class;
+		case FLOAT32:
+			return FloatWritable.class;
+		case FLOAT64:
+			return DoubleWritable.class;
+		case RSTRING:
+		case USTRING:
+			return Text.class;
+		case BLOB:
+			return BytesWritable.class;
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public IRecordWriter createWriter(OutputStream out) throws IOException {
+		return new SequenceRecordWriter(this, out);
+	}
+
+	int getKeyIndex() {
+		return fKeyIndex;
+	}
+
+	Class<? extends Writable> getKeyClass() {
+		return fKeyIndex < 0 ? NullWritable.class : getWritableClass(fKeyType);
+	}
+
+	MetaType getKeyType() {
+		return fKeyType;
+	}
+
+	int getValueIndex() {
+		return fValueIndex;
+	}
+
+	Class<? extends Writable> getValueClass() {
+		return getWritableClass(fValueType);
+	}
+
+	MetaType getValueType() {
+		return fValueType;
+	}
+
+	Configuration getConf() {
+		return fConf;
+	}
+
+	SequenceFile.CompressionType getCompressionType() {
+		return fCompressionType;
+	}
+
+	CompressionCodec getCodec() {
+		return fCodec;
+	}
+
+	int getSyncInterval() {
+		return fSyncInterval;
+	}
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type.MetaType;
+import com.ibm.streams.operator.types.RString;
+
+/**
+ * Writes tuples as key/value pairs of a Hadoop SequenceFile.  The key and value
+ * Writables are reused for all tuples.
+ */
+public class SequenceRecordWriter implements IRecordWriter {
+
+	private final SequenceFile.Writer fWriter;
+	private final FSDataOutputStream fOut;
+
+	private final int fKeyIndex;
+	private final MetaType fKeyType;
+	private final Writable fKey;
+	private final int fValueIndex;
+	private final MetaType fValueType;
+	private final Writable fValue;
+
+	private boolean fIsClosed = false;
+
+	SequenceRecordWriter(SequenceRecordFormat format, OutputStream out) throws IOException {
+		fOut = (out instanceof FSDataOutputStream) ? (FSDataOutputStream) out : new FSDataOutputStream(out, null);
+		fWriter = SequenceFile.createWriter(format.getConf(),
+				SequenceFile.Writer.stream(fOut),
+				SequenceFile.Writer.keyClass(format.getKeyClass()),
+				SequenceFile.Writer.valueClass(format.getValueClass()),
+				SequenceFile.Writer.compression(format.getCompressionType(), format.getCodec()),
+				SequenceFile.Writer.syncInterval(format.getSyncInterval()));
+
+		fKeyIndex = format.getKeyIndex();
+		fKeyType = format.getKeyType();
+		fKey = fKeyIndex < 0 ? NullWritable.get() : newWritable(format.getKeyClass());
+		fValueIndex = format.getValueIndex();
+		fValueType = format.getValueType();
+		fValue = newWritable(format.getValueClass());
+	}
+
+	private static Writable newWritable(Class<? extends Writable> writableClass) throws IOException {
+		try {
+			return writableClass.newInstance();
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void write(Tuple tuple) throws IOException {
+		if (fKeyIndex >= 0) {
+			set(fKey, fKeyType, tuple, fKeyIndex);
+		}
+		set(fValue, fValueType, tuple, fValueIndex);
+		fWriter.append(fKey, fValue);
+	}
+
+	private static void set(Writable writable, MetaType type, Tuple tuple, int index) {
+		switch (type) {
+		case BOOLEAN:
+			((BooleanWritable) writable).set(tuple.getBoolean(index));
+			break;
+		case INT32:
+			((IntWritable) writable).set(tuple.getInt(index));
+			break;
+		case INT64:
+			((LongWritable) writable).set(tuple.getLong(index));
+			break;
+		case FLOAT32:
+			((FloatWritable) writable).set(tuple.getFloat(index));
+			break;
+		case FLOAT64:
+			((DoubleWritable) writable).set(tuple.getDouble(index));
+			break;
+		case RSTRING:
+			// Text holds UTF-8, copy the bytes of the rstring as they are
+			((Text) writable).set(((RString) tuple.getObject(index)).getData());
+			break;
+		case USTRING:
+			((Text) writable).set(tuple.getString(index));
+			break;
+		case BLOB:
+			ByteBuffer buffer = tuple.getBlob(index).getByteBuffer();
+			BytesWritable bytes = (BytesWritable) writable;
+			if (buffer.hasArray()) {
+				bytes.set(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			} else {
+				int length = buffer.remaining();
+				bytes.setSize(length);
+				buffer.get(bytes.getBytes(), 0, length);
+			}
+			break;
+		default:
+			throw new IllegalStateException("Unsupported type " + type);
+		}
+	}
+
+	/**
+	 * Writes the current block followed by a sync marker, and flushes the file,
+	 * a reader sees all tuples written so far.
+	 */
+	@Override
+	public void flush() throws IOException {
+		fWriter.sync();
+		fWriter.hflush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!fIsClosed) {
+			fIsClosed = true;
+			// the writer does not close a stream it did not open
+			try {
+				fWriter.close();
+			} finally {
+				fOut.close();
+			}
+		}
+	}
+
+	/**
+	 * The current block is not included, it is at most the block size.
+	 */
+	@Override
+	public long getDataSize() {
+		try {
+			return fWriter.getLength();
+		} catch (IOException e) {
+			return fOut.size();
+		}
+	}
+
+	@Override
+	public boolean isClosed() {
+		return fIsClosed;
+	}
+}
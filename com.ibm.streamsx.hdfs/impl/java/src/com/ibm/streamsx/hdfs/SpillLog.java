@@ -0,0 +1,115 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Local file that holds the content of a writer that is not durable on the
+ * file system yet, the content written since the last sync, and all content
+ * while the stream of the file fails.  The content is appended exactly as it
+ * is written to the stream, so replaying it continues the file where the last
+ * sync left it.
+ *
+ * The file is created by the first append.  Not thread safe, only the flush
+ * thread of the writer uses the log.
+ */
+class SpillLog {
+
+	private static final int REPLAY_CHUNK_SIZE = 1024 * 1024;
+
+	private final File fDirectory;
+	private final long fMaxSize;
+	private File fFile;
+	private FileChannel fChannel;
+	private long fSize = 0;
+
+	/**
+	 * @param directory	local directory of the log file
+	 * @param maxSize	number of bytes the log holds before the writes wait for the stream
+	 */
+	SpillLog(File directory, long maxSize) {
+		fDirectory = directory;
+		fMaxSize = maxSize;
+	}
+
+	/**
+	 * @return true if the content fits into the log, content larger than the
+	 * whole log fits into an empty log
+	 */
+	boolean fits(long length) {
+		return fSize == 0 || fSize + length <= fMaxSize;
+	}
+
+	void append(byte[] src, int offset, int length) throws IOException {
+		if (fChannel == null) {
+			fFile = File.createTempFile("hdfs-", ".spill", fDirectory);
+			fChannel = FileChannel.open(fFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+		ByteBuffer content = ByteBuffer.wrap(src, offset, length);
+		while (content.hasRemaining()) {
+			fChannel.write(content, fSize + content.position() - offset);
+		}
+		fSize += length;
+	}
+
+	/**
+	 * Write the whole content of the log to the stream, the log is not changed.
+	 */
+	void replay(OutputStream out) throws IOException {
+		if (fSize == 0) {
+			return;
+		}
+		byte[] chunk = new byte[(int) Math.min(fSize, REPLAY_CHUNK_SIZE)];
+		long position = 0;
+		while (position < fSize) {
+			ByteBuffer content = ByteBuffer.wrap(chunk, 0, (int) Math.min(chunk.length, fSize - position));
+			while (content.hasRemaining()) {
+				if (fChannel.read(content, position + content.position()) < 0) {
+					throw new EOFException(fFile.getPath());
+				}
+			}
+			out.write(chunk, 0, content.position());
+			position += content.position();
+		}
+	}
+
+	/**
+	 * Drop the content, once it is durable on the file system.
+	 */
+	void clear() throws IOException {
+		if (fSize > 0) {
+			fChannel.truncate(0);
+			fSize = 0;
+		}
+	}
+
+	long size() {
+		return fSize;
+	}
+
+	String getPath() {
+		return (fFile != null) ? fFile.getPath() : fDirectory.getPath();
+	}
+
+	/**
+	 * @param delete	true to delete the log file, false to keep its content on disk
+	 */
+	void close(boolean delete) throws IOException {
+		if (fChannel != null) {
+			fChannel.close();
+			fChannel = null;
+			if (delete) {
+				fFile.delete();
+			}
+		}
+	}
+}
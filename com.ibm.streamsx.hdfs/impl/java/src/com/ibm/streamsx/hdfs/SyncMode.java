@@ -0,0 +1,17 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+/**
+ * How the {@link AsyncBufferWriter} makes written data durable.
+ */
+public enum SyncMode {
+	/** no explicit flush, data becomes durable when the file is closed */
+	none,
+	/** hflush, data is visible to new readers and in the memory of all datanodes */
+	hflush,
+	/** hsync, data is persisted to disk on all datanodes */
+	hsync
+}
@@ -0,0 +1,19 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+/**
+ * When the {@link AsyncBufferWriter} applies its {@link SyncMode}.
+ */
+public enum SyncPolicy {
+	/** after every buffer that is written */
+	perBuffer,
+	/** after a configured number of bytes is written */
+	perBytes,
+	/** after a configured time since the last sync, checked when a buffer is written */
+	perTime,
+	/** only on drain of a consistent region, the file is synced on close */
+	onDrain
+}
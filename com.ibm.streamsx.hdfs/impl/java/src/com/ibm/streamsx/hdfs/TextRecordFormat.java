@@ -0,0 +1,124 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.ibm.streams.operator.Attribute;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.Type.MetaType;
+
+/**
+ * Text formats that write every attribute of the input tuple, except the one with
+ * the file name, as one line: csv, json lines and delimited.  The text is UTF-8.
+ *
+ * The layout is computed once per schema, the separators, and for json the names 
+ * of the fields, are kept as bytes and written as they are.
+ */
+public class TextRecordFormat {
+
+	private final FileFormat fFormat;
+	// input attributes that are written, in order
+	private final int[] fAttributeIndexes;
+	private final MetaType[] fAttributeTypes;
+	// written before each attribute, and after the last one
+	private final byte[][] fPrefixes;
+	private final byte[] fSuffix;
+	private final byte[] fDelimiter;
+
+	/**
+	 * @param schema			schema of the input port
+	 * @param excludedIndexes	indexes of the attributes that are not written
+	 * @param format			csv, json or delimited
+	 * @param delimiter			separator of the values for csv and delimited
+	 */
+	public TextRecordFormat(StreamSchema schema, Collection<Integer> excludedIndexes, FileFormat format, String delimiter) {
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		for (Attribute attribute : schema) {
+			if (!excludedIndexes.contains(attribute.getIndex())) {
+				attributes.add(attribute);
+			}
+		}
+
+		fFormat = format;
+		fDelimiter = delimiter.getBytes(StandardCharsets.UTF_8);
+		fAttributeIndexes = new int[attributes.size()];
+		fAttributeTypes = new MetaType[attributes.size()];
+		fPrefixes = new byte[attributes.size()][];
+		for (int i = 0; i < attributes.size(); i++) {
+			fAttributeIndexes[i] = attributes.get(i).getIndex();
+			fAttributeTypes[i] = attributes.get(i).getType().getMetaType();
+			if (format == FileFormat.json) {
+				// attribute names are identifiers, they need no escaping
+				String prefix = (i == 0 ? "{" : ",") + "\"" + attributes.get(i).getName() + "\":";
+				fPrefixes[i] = prefix.getBytes(StandardCharsets.UTF_8);
+			} else {
+				fPrefixes[i] = (i == 0) ? new byte[0] : fDelimiter;
+			}
+		}
+		fSuffix = (format == FileFormat.json) ? "}".getBytes(StandardCharsets.UTF_8) : new byte[0];
+	}
+
+	/**
+	 * @return true if attributes of the type can be written as text
+	 */
+	public static boolean isSupported(MetaType type) {
+		switch (type) {
+		case BOOLEAN:
+		case INT8:
+		case INT16:
+		case INT32:
+		case INT64:
+		case UINT8:
+		case UINT16:
+		case UINT32:
+		case UINT64:
+		case FLOAT32:
+		case FLOAT64:
+		case RSTRING:
+		case USTRING:
+		case ENUM:
+		case TIMESTAMP:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @param out	writer of the file
+	 * @return a writer of the tuples, with its own scratch buffers
+	 */
+	public TextRecordWriter createWriter(AsyncBufferWriter out) {
+		return new TextRecordWriter(this, out);
+	}
+
+	FileFormat getFormat() {
+		return fFormat;
+	}
+
+	int[] getAttributeIndexes() {
+		return fAttributeIndexes;
+	}
+
+	MetaType[] getAttributeTypes() {
+		return fAttributeTypes;
+	}
+
+	byte[][] getPrefixes() {
+		return fPrefixes;
+	}
+
+	byte[] getSuffix() {
+		return fSuffix;
+	}
+
+	byte[] getDelimiter() {
+		return fDelimiter;
+	}
+}
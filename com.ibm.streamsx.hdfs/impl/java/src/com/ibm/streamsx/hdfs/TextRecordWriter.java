@@ -0,0 +1,294 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type.MetaType;
+import com.ibm.streams.operator.types.RString;
+import com.ibm.streams.operator.types.Timestamp;
+
+/**
+ * Writes tuples as lines of a text format directly into the write buffers.  
+ * Numbers are formatted into scratch buffers that are reused for all tuples, 
+ * rstring values are written from their UTF-8 bytes.
+ */
+public class TextRecordWriter {
+
+	private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+	private static final byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+	private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+	private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+	private static final byte QUOTE = '"';
+
+	private final AsyncBufferWriter fOut;
+	private final FileFormat fFormat;
+	private final int[] fIndexes;
+	private final MetaType[] fTypes;
+	private final byte[][] fPrefixes;
+	private final byte[] fSuffix;
+	private final byte[] fDelimiter;
+
+	// scratch buffers
+	private final byte[] fDigits = new byte[20];
+	private final StringBuilder fNumber = new StringBuilder(32);
+	private final CharsetEncoder fEncoder = StandardCharsets.UTF_8.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private CharBuffer fChars = CharBuffer.allocate(256);
+	private ByteBuffer fBytes = ByteBuffer.allocate(256 * 3);
+
+	// bytes of the current tuple
+	private long fLength;
+
+	TextRecordWriter(TextRecordFormat format, AsyncBufferWriter out) {
+		fOut = out;
+		fFormat = format.getFormat();
+		fIndexes = format.getAttributeIndexes();
+		fTypes = format.getAttributeTypes();
+		fPrefixes = format.getPrefixes();
+		fSuffix = format.getSuffix();
+		fDelimiter = format.getDelimiter();
+	}
+
+	/**
+	 * Write the tuple followed by a newline.
+	 * @return the number of bytes of the tuple, without the newline
+	 * @throws IOException
+	 */
+	public long write(Tuple tuple) throws IOException {
+		fLength = 0;
+		for (int i = 0; i < fIndexes.length; i++) {
+			put(fPrefixes[i], 0, fPrefixes[i].length);
+			int index = fIndexes[i];
+			switch (fTypes[i]) {
+			case BOOLEAN:
+				byte[] value = tuple.getBoolean(index) ? TRUE : FALSE;
+				put(value, 0, value.length);
+				break;
+			case INT8:
+				putLong(tuple.getByte(index));
+				break;
+			case UINT8:
+				putLong(tuple.getByte(index) & 0xFF);
+				break;
+			case INT16:
+				putLong(tuple.getShort(index));
+				break;
+			case UINT16:
+				putLong(tuple.getShort(index) & 0xFFFF);
+				break;
+			case INT32:
+				putLong(tuple.getInt(index));
+				break;
+			case UINT32:
+				putLong(tuple.getInt(index) & 0xFFFFFFFFL);
+				break;
+			case INT64:
+				putLong(tuple.getLong(index));
+				break;
+			case UINT64:
+				putUnsignedLong(tuple.getLong(index));
+				break;
+			case FLOAT32:
+				float f = tuple.getFloat(index);
+				if (fFormat == FileFormat.json && (Float.isNaN(f) || Float.isInfinite(f))) {
+					put(NULL, 0, NULL.length);
+				} else {
+					fNumber.setLength(0);
+					putNumber(fNumber.append(f));
+				}
+				break;
+			case FLOAT64:
+				double d = tuple.getDouble(index);
+				if (fFormat == FileFormat.json && (Double.isNaN(d) || Double.isInfinite(d))) {
+					put(NULL, 0, NULL.length);
+				} else {
+					fNumber.setLength(0);
+					putNumber(fNumber.append(d));
+				}
+				break;
+			case RSTRING:
+				byte[] data = ((RString) tuple.getObject(index)).getData();
+				putString(data, data.length);
+				break;
+			case USTRING:
+			case ENUM:
+				putString(tuple.getString(index));
+				break;
+			case TIMESTAMP:
+				// microseconds since the epoch
+				Timestamp ts = tuple.getTimestamp(index);
+				putLong(ts.getSeconds() * 1000000L + ts.getNanoseconds() / 1000);
+				break;
+			default:
+				throw new IllegalStateException("Unsupported type " + fTypes[i]);
+			}
+		}
+		put(fSuffix, 0, fSuffix.length);
+		fOut.writeNewline();
+		return fLength;
+	}
+
+	private void put(byte[] src, int offset, int length) throws IOException {
+		fOut.append(src, offset, length);
+		fLength += length;
+	}
+
+	private void put(byte b) throws IOException {
+		fOut.append(b);
+		fLength++;
+	}
+
+	private void putLong(long v) throws IOException {
+		int pos = fDigits.length;
+		// negative numbers cover the whole range
+		boolean negative = v < 0;
+		if (!negative)
+			v = -v;
+		do {
+			fDigits[--pos] = (byte) ('0' - (v % 10));
+			v /= 10;
+		} while (v != 0);
+		if (negative)
+			fDigits[--pos] = '-';
+		put(fDigits, pos, fDigits.length - pos);
+	}
+
+	private void putUnsignedLong(long v) throws IOException {
+		if (v >= 0) {
+			putLong(v);
+			return;
+		}
+		long quotient = (v >>> 1) / 5;
+		putLong(quotient);
+		put((byte) ('0' + (v - quotient * 10)));
+	}
+
+	/**
+	 * Numbers are ASCII, the characters are written as bytes.
+	 */
+	private void putNumber(StringBuilder number) throws IOException {
+		for (int i = 0; i < number.length(); i++) {
+			put((byte) number.charAt(i));
+		}
+	}
+
+	private void putString(String str) throws IOException {
+		int length = str.length();
+		if (fChars.capacity() < length) {
+			fChars = CharBuffer.allocate(Math.max(length, fChars.capacity() * 2));
+		}
+		fChars.clear();
+		str.getChars(0, length, fChars.array(), 0);
+		fChars.limit(length);
+
+		int maxBytes = (int) (length * fEncoder.maxBytesPerChar());
+		if (fBytes.capacity() < maxBytes) {
+			fBytes = ByteBuffer.allocate(Math.max(maxBytes, fBytes.capacity() * 2));
+		}
+		fBytes.clear();
+		fEncoder.reset();
+		fEncoder.encode(fChars, fBytes, true);
+		fEncoder.flush(fBytes);
+		putString(fBytes.array(), fBytes.position());
+	}
+
+	private void putString(byte[] data, int length) throws IOException {
+		switch (fFormat) {
+		case csv:
+			putCsv(data, length);
+			break;
+		case json:
+			putJson(data, length);
+			break;
+		default:
+			put(data, 0, length);
+			break;
+		}
+	}
+
+	/**
+	 * Values with a quote, a line break or a byte of the delimiter are quoted, 
+	 * quotes are doubled.
+	 */
+	private void putCsv(byte[] data, int length) throws IOException {
+		boolean quote = false;
+		for (int i = 0; i < length && !quote; i++) {
+			byte b = data[i];
+			quote = (b == QUOTE || b == '\n' || b == '\r' || isDelimiterByte(b));
+		}
+		if (!quote) {
+			put(data, 0, length);
+			return;
+		}
+		put(QUOTE);
+		int start = 0;
+		for (int i = 0; i < length; i++) {
+			if (data[i] == QUOTE) {
+				// write up to and including the quote, it is written again with the next run
+				put(data, start, i + 1 - start);
+				start = i;
+			}
+		}
+		put(data, start, length - start);
+		put(QUOTE);
+	}
+
+	private boolean isDelimiterByte(byte b) {
+		for (int i = 0; i < fDelimiter.length; i++) {
+			if (fDelimiter[i] == b)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Quotes, backslashes and control characters are escaped, other 
+	 * characters are written as UTF-8.
+	 */
+	private void putJson(byte[] data, int length) throws IOException {
+		put(QUOTE);
+		int start = 0;
+		for (int i = 0; i < length; i++) {
+			byte b = data[i];
+			if (b == QUOTE || b == '\\' || (b >= 0 && b < 0x20)) {
+				put(data, start, i - start);
+				start = i + 1;
+				put((byte) '\\');
+				switch (b) {
+				case QUOTE:
+				case '\\':
+					put(b);
+					break;
+				case '\n':
+					put((byte) 'n');
+					break;
+				case '\r':
+					put((byte) 'r');
+					break;
+				case '\t':
+					put((byte) 't');
+					break;
+				default:
+					put((byte) 'u');
+					put((byte) '0');
+					put((byte) '0');
+					put(HEX[b >> 4]);
+					put(HEX[b & 0xF]);
+					break;
+				}
+			}
+		}
+		put(data, start, length - start);
+		put(QUOTE);
+	}
+}
@@ -7,20 +7,33 @@ package com.ibm.streamsx.hdfs.client;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.fs.CreateFlag;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
 
 import com.ibm.streamsx.hdfs.client.auth.AuthenticationHelperFactory;
 import com.ibm.streamsx.hdfs.client.auth.IAuthenticationHelper;
+import com.ibm.streamsx.hdfs.client.webhdfs.WebHdfsFileSystem;
 
 abstract class AbstractHdfsClient implements IHdfsClient {
 
+	// how long and how often to check that the lease of a file is recovered
+	private static final long RECOVERY_TIMEOUT = 5 * 60 * 1000;
+	private static final long RECOVERY_POLL_INTERVAL = 100;
+
 	public FileSystem fFileSystem;
 	protected boolean fIsDisconnected;
 	protected IAuthenticationHelper fAuthHelper;
@@ -46,12 +59,21 @@ abstract class AbstractHdfsClient implements IHdfsClient {
 
 	@Override
 	public OutputStream getOutputStream(String filePath, boolean append) throws IOException {
+		return getOutputStream(filePath, append, null);
+	}
+
+	/**
+	 * The options apply to files that are created, a file that is appended
+	 * keeps its attributes.
+	 */
+	@Override
+	public OutputStream getOutputStream(String filePath, boolean append, HdfsCreateOptions options) throws IOException {
 
 		if (fIsDisconnected)
 			return null;
 
 		if (!append) {
-			return fFileSystem.create(new Path(filePath));
+			return create(new Path(filePath), options);
 		} else {
 			// TODO: The client supports append, but the operator does not
 			// cannot get it to work reliably
@@ -60,12 +82,56 @@ abstract class AbstractHdfsClient implements IHdfsClient {
 			if (fFileSystem.exists(path)) {
 				return fFileSystem.append(path);
 			} else {
-				OutputStream stream = fFileSystem.create(path);
+				OutputStream stream = create(path, options);
 				return stream;
 			}
 		}
 	}
 
+	/**
+	 * Create or overwrite the file, with the defaults of the file system for
+	 * the options that are not set.
+	 */
+	private FSDataOutputStream create(Path path, HdfsCreateOptions options) throws IOException {
+		if (options == null || options.isDefault()) {
+			return fFileSystem.create(path);
+		}
+
+		Configuration conf = fFileSystem.getConf();
+		int bufferSize = (options.getBufferSize() > 0) ? options.getBufferSize()
+				: conf.getInt(CommonConfigurationKeysPublic.IO_FILE_BUFFER_SIZE_KEY,
+						CommonConfigurationKeysPublic.IO_FILE_BUFFER_SIZE_DEFAULT);
+		long blockSize = (options.getBlockSize() > 0) ? options.getBlockSize() : fFileSystem.getDefaultBlockSize(path);
+
+		FSDataOutputStream stream;
+		if (options.getErasureCodingPolicy() != null) {
+			// the replication of an erasure coded file is given by the policy
+			if (!(fFileSystem instanceof DistributedFileSystem)) {
+				throw new IOException("Erasure coding is not supported by the file system: " + fFileSystem.getUri());
+			}
+			stream = ((DistributedFileSystem) fFileSystem).createFile(path).create().overwrite(true).recursive()
+					.ecPolicyName(options.getErasureCodingPolicy()).bufferSize(bufferSize).blockSize(blockSize)
+					.build();
+		} else {
+			short replication = (options.getReplication() > 0) ? options.getReplication()
+					: fFileSystem.getDefaultReplication(path);
+			EnumSet<CreateFlag> flags = EnumSet.of(CreateFlag.CREATE, CreateFlag.OVERWRITE);
+			// a lazy persist file keeps its blocks in memory, which is only
+			// requested when the file is created
+			if (options.isLazyPersist()) {
+				flags.add(CreateFlag.LAZY_PERSIST);
+			}
+			stream = fFileSystem.create(path, FsPermission.getFileDefault().applyUMask(FsPermission.getUMask(conf)),
+					flags, bufferSize, replication, blockSize, null);
+		}
+
+		// the policy applies to the blocks written after it is set, there are none yet
+		if (options.getStoragePolicy() != null && !options.isLazyPersist()) {
+			fFileSystem.setStoragePolicy(path, options.getStoragePolicy());
+		}
+		return stream;
+	}
+
 	@Override
 	public FileStatus[] scanDirectory(String dirPath, String filter) throws IOException {
 
@@ -133,6 +199,75 @@ abstract class AbstractHdfsClient implements IHdfsClient {
 		return fFileSystem.delete(f, recursive);
 	}
 
+	/**
+	 * Cut the file to the given length, if it is longer, and wait until it can
+	 * be appended.  The file may still be open by a writer that failed, its
+	 * lease is recovered first.  When the new length is not at a block boundary,
+	 * HDFS recovers the last block in the background, the file is closed when done.
+	 */
+	@Override
+	public void truncate(String filePath, long length) throws IOException {
+		if (fIsDisconnected)
+			return;
+
+		Path path = new Path(filePath);
+		if (fFileSystem instanceof DistributedFileSystem) {
+			DistributedFileSystem dfs = (DistributedFileSystem) fFileSystem;
+			if (!dfs.isFileClosed(path) && !dfs.recoverLease(path)) {
+				waitUntilClosed(dfs, path);
+			}
+		}
+		if (fFileSystem.getFileStatus(path).getLen() <= length)
+			return;
+
+		if (!fFileSystem.truncate(path, length) && fFileSystem instanceof DistributedFileSystem) {
+			waitUntilClosed((DistributedFileSystem) fFileSystem, path);
+		}
+	}
+
+	/**
+	 * Append the content of the sources to the target, in order, and remove the
+	 * sources.  On HDFS the NameNode moves the blocks in one atomic operation, the
+	 * files must be closed and the sources must not be empty.  File systems that
+	 * do not support it throw an UnsupportedOperationException, see
+	 * {@link #canConcat()}.
+	 */
+	@Override
+	public void concat(String target, String[] sources) throws IOException {
+		if (fIsDisconnected)
+			return;
+
+		Path[] sourcePaths = new Path[sources.length];
+		for (int i = 0; i < sources.length; i++) {
+			sourcePaths[i] = new Path(sources[i]);
+		}
+		fFileSystem.concat(new Path(target), sourcePaths);
+	}
+
+	/**
+	 * @return true if the file system concatenates files atomically, which HDFS
+	 * does through the Java client and through WebHDFS
+	 */
+	@Override
+	public boolean canConcat() {
+		return fFileSystem instanceof DistributedFileSystem || fFileSystem instanceof WebHdfsFileSystem;
+	}
+
+	private void waitUntilClosed(DistributedFileSystem dfs, Path path) throws IOException {
+		long deadline = System.currentTimeMillis() + RECOVERY_TIMEOUT;
+		while (!dfs.isFileClosed(path)) {
+			if (System.currentTimeMillis() > deadline) {
+				throw new IOException("File not closed after recovery: " + path);
+			}
+			try {
+				Thread.sleep(RECOVERY_POLL_INTERVAL);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for recovery of file: " + path);
+			}
+		}
+	}
+
 	@Override
 	public boolean isDirectory(String filePath) throws IOException {
 
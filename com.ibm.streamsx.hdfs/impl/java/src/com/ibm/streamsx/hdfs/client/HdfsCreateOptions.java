@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (C) 2014-2019, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+
+package com.ibm.streamsx.hdfs.client;
+
+/**
+ * Attributes of a file that are set when it is created, instead of the
+ * defaults of the file system.  A value that is not set, 0 or null, keeps
+ * the default.
+ */
+public class HdfsCreateOptions {
+
+	// storage policy that is requested by a flag of the create call
+	public static final String LAZY_PERSIST = "LAZY_PERSIST";
+
+	private final long fBlockSize;
+	private final short fReplication;
+	private final int fBufferSize;
+	private final String fStoragePolicy;
+	private final String fErasureCodingPolicy;
+
+	/**
+	 * @param blockSize				size of the blocks of the file in bytes
+	 * @param replication			number of replicas of the blocks
+	 * @param bufferSize			size of the buffer of the output stream in bytes
+	 * @param storagePolicy			name of the storage policy, like HOT, ALL_SSD or LAZY_PERSIST
+	 * @param erasureCodingPolicy	name of the erasure coding policy, only supported by HDFS
+	 */
+	public HdfsCreateOptions(long blockSize, short replication, int bufferSize, String storagePolicy,
+			String erasureCodingPolicy) {
+		fBlockSize = blockSize;
+		fReplication = replication;
+		fBufferSize = bufferSize;
+		fStoragePolicy = storagePolicy;
+		fErasureCodingPolicy = erasureCodingPolicy;
+	}
+
+	public long getBlockSize() {
+		return fBlockSize;
+	}
+
+	public short getReplication() {
+		return fReplication;
+	}
+
+	public int getBufferSize() {
+		return fBufferSize;
+	}
+
+	public String getStoragePolicy() {
+		return fStoragePolicy;
+	}
+
+	public String getErasureCodingPolicy() {
+		return fErasureCodingPolicy;
+	}
+
+	public boolean isLazyPersist() {
+		return LAZY_PERSIST.equalsIgnoreCase(fStoragePolicy);
+	}
+
+	/**
+	 * @return true if no option is set, the file is created with the defaults
+	 */
+	public boolean isDefault() {
+		return fBlockSize <= 0 && fReplication <= 0 && fBufferSize <= 0 && fStoragePolicy == null
+				&& fErasureCodingPolicy == null;
+	}
+}
@@ -21,6 +21,8 @@ public interface IHdfsClient {
 
 	public OutputStream getOutputStream(String filePath, boolean append) throws IOException;
 
+	public OutputStream getOutputStream(String filePath, boolean append, HdfsCreateOptions options) throws IOException;
+
 	public FileStatus[] scanDirectory(String dirPath, String filter) throws IOException;
 
 	public boolean exists(String filePath) throws IOException;
@@ -33,6 +35,12 @@ public interface IHdfsClient {
 
 	public boolean delete(String filePath, boolean recursive) throws IOException;
 
+	public void truncate(String filePath, long length) throws IOException;
+
+	public void concat(String target, String[] sources) throws IOException;
+
+	public boolean canConcat();
+
 	public void disconnect() throws Exception;
 
 	public void setConnectionProperty(String name, String value);
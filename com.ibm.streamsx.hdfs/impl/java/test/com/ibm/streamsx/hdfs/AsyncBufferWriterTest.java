@@ -0,0 +1,260 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncBufferWriterTest {
+
+	private static final byte[] NEWLINE = "\n".getBytes();
+
+	// content of the file, the stream fails while the file system is down
+	private final ByteArrayOutputStream fFile = new ByteArrayOutputStream();
+	private volatile boolean fDown = false;
+	private final AtomicInteger fSyncs = new AtomicInteger();
+
+	private File fSpillDirectory;
+	private FileTimerScheduler fScheduler;
+
+	private class FlakyStream extends OutputStream {
+		@Override
+		public void write(int b) throws IOException {
+			check();
+			fFile.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			check();
+			fFile.write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			check();
+			fSyncs.incrementAndGet();
+		}
+
+		private void check() throws IOException {
+			if (fDown) {
+				throw new IOException("File system is down");
+			}
+		}
+	}
+
+	@Before
+	public void createSpillDirectory() throws Exception {
+		fSpillDirectory = Files.createTempDirectory("spill").toFile();
+		fScheduler = new FileTimerScheduler(Executors.defaultThreadFactory());
+	}
+
+	@After
+	public void deleteSpillDirectory() throws Exception {
+		fScheduler.shutdown();
+		for (File file : fSpillDirectory.listFiles()) {
+			file.delete();
+		}
+		fSpillDirectory.delete();
+	}
+
+	private FSDataOutputStream openStream() throws IOException {
+		return new FSDataOutputStream(new FlakyStream(), null, fFile.size());
+	}
+
+	private AsyncBufferWriter createWriter(int size, int bufferCount) {
+		return new AsyncBufferWriter(new FlakyStream(), size, bufferCount, false, Executors.defaultThreadFactory(),
+				NEWLINE, new BufferPool(0));
+	}
+
+	/**
+	 * @return a writer with a spill log, which continues the file at the synced length
+	 */
+	private AsyncBufferWriter createSpillingWriter(int size, long maxSpillSize) throws IOException {
+		AsyncBufferWriter writer = new AsyncBufferWriter(openStream(), size, 2, false,
+				Executors.defaultThreadFactory(), NEWLINE, new BufferPool(0));
+		writer.setSync(SyncMode.hflush, SyncPolicy.perBuffer, 0, 0);
+		writer.setSpill(new SpillLog(fSpillDirectory, maxSpillSize), new AsyncBufferWriter.StreamReopener() {
+			@Override
+			public FSDataOutputStream reopen(long length) throws IOException {
+				if (fDown) {
+					throw new IOException("File system is still down");
+				}
+				synchronized (fFile) {
+					byte[] content = fFile.toByteArray();
+					fFile.reset();
+					fFile.write(content, 0, (int) length);
+				}
+				return openStream();
+			}
+		}, fScheduler);
+		return writer;
+	}
+
+	/**
+	 * Write the lines on a thread of their own, the file system goes down after
+	 * the given line.
+	 */
+	private Thread startWriting(final AsyncBufferWriter writer, final int lines, final int downAfter,
+			final StringBuilder expected, final AtomicReference<IOException> failure) {
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < lines; i++) {
+						String line = "line-" + i;
+						writer.write(line.getBytes());
+						synchronized (expected) {
+							expected.append(line).append('\n');
+						}
+						if (i == downAfter) {
+							fDown = true;
+						}
+					}
+					writer.close();
+				} catch (IOException e) {
+					failure.set(e);
+				}
+			}
+		};
+		thread.start();
+		return thread;
+	}
+
+	private void waitFor(AtomicInteger counter, int value) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (counter.get() < value && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	public void contentIsWrittenInOrder() throws Exception {
+		AsyncBufferWriter writer = createWriter(16, 3);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			// some lines do not fit into a buffer and are written directly
+			StringBuilder line = new StringBuilder("line-").append(i);
+			for (int j = 0; j < i % 7; j++) {
+				line.append("-padding");
+			}
+			writer.write(line.toString().getBytes());
+			expected.append(line).append('\n');
+		}
+		writer.close();
+
+		assertEquals(expected.toString(), fFile.toString());
+	}
+
+	@Test
+	public void flushAllSyncsRegardlessOfThePolicy() throws Exception {
+		AsyncBufferWriter writer = createWriter(1024, 2);
+		writer.setSync(SyncMode.hflush, SyncPolicy.perBytes, 1024 * 1024, 0);
+		writer.write("abc".getBytes());
+		assertEquals(0, fFile.size());
+
+		writer.flushAll();
+		assertEquals("abc\n", fFile.toString());
+		assertEquals(1, fSyncs.get());
+
+		// the writer continues after the barrier
+		writer.write("def".getBytes());
+		writer.close();
+		assertEquals("abc\ndef\n", fFile.toString());
+	}
+
+	@Test
+	public void lingeringContentIsSyncedAfterTheDelay() throws Exception {
+		AsyncBufferWriter writer = createWriter(1024, 2);
+		writer.setSync(SyncMode.hflush, SyncPolicy.perBytes, 1024 * 1024, 0);
+		writer.write("x".getBytes());
+
+		assertFalse(writer.flushIfLingering(100));
+		Thread.sleep(150);
+		assertTrue(writer.flushIfLingering(100));
+		waitFor(fSyncs, 1);
+		assertEquals("x\n", fFile.toString());
+
+		// nothing lingers once the content is synced
+		assertFalse(writer.flushIfLingering(0));
+		writer.close();
+	}
+
+	@Test
+	public void spilledContentIsReplayedInOrder() throws Exception {
+		AsyncBufferWriter writer = createSpillingWriter(64, 1024 * 1024);
+		StringBuilder expected = new StringBuilder();
+		AtomicReference<IOException> failure = new AtomicReference<IOException>();
+		Thread thread = startWriting(writer, 100, 20, expected, failure);
+
+		// the spill log takes the content while the file system is down
+		Thread.sleep(500);
+		assertTrue(fFile.size() < expected.length());
+		fDown = false;
+		thread.join(10000);
+
+		assertFalse(thread.isAlive());
+		assertNull(failure.get());
+		assertEquals(expected.toString(), fFile.toString());
+		assertEquals(0, fSpillDirectory.listFiles().length);
+	}
+
+	@Test
+	public void fullSpillLogBlocksTheWriterUntilTheStreamIsBack() throws Exception {
+		AsyncBufferWriter writer = createSpillingWriter(100, 200);
+		StringBuilder expected = new StringBuilder();
+		AtomicReference<IOException> failure = new AtomicReference<IOException>();
+		Thread thread = startWriting(writer, 200, 20, expected, failure);
+
+		// the writer waits for the stream instead of dropping content
+		Thread.sleep(3000);
+		assertTrue(thread.isAlive());
+		synchronized (expected) {
+			assertTrue(expected.indexOf("line-199\n") < 0);
+		}
+		fDown = false;
+		thread.join(10000);
+
+		assertFalse(thread.isAlive());
+		assertNull(failure.get());
+		assertEquals(expected.toString(), fFile.toString());
+	}
+
+	@Test
+	public void spillLogIsKeptWhenTheOperatorShutsDown() throws Exception {
+		AsyncBufferWriter writer = createSpillingWriter(100, 200);
+		StringBuilder expected = new StringBuilder();
+		AtomicReference<IOException> failure = new AtomicReference<IOException>();
+		Thread thread = startWriting(writer, 200, 20, expected, failure);
+
+		Thread.sleep(1000);
+		assertTrue(thread.isAlive());
+		fScheduler.shutdown();
+		thread.join(10000);
+
+		assertFalse(thread.isAlive());
+		assertNotNull(failure.get());
+		File[] spills = fSpillDirectory.listFiles();
+		assertEquals(1, spills.length);
+		assertTrue(spills[0].length() > 0);
+	}
+}
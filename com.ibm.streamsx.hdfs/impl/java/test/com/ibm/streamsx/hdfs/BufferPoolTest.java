@@ -0,0 +1,113 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class BufferPoolTest {
+
+	@Test
+	public void releasedBufferIsReused() {
+		BufferPool pool = new BufferPool(1000);
+		byte[] buffer = pool.acquire(100);
+		pool.release(buffer);
+		assertEquals(100, pool.getPooledBytes());
+
+		assertSame(buffer, pool.acquire(100));
+		assertNotSame(buffer, pool.acquire(100));
+		assertEquals(1, pool.getHits());
+		assertEquals(2, pool.getMisses());
+		assertEquals(200, pool.getLeasedBytes());
+	}
+
+	@Test
+	public void poolKeepsAtMostMaxPooledBytes() {
+		BufferPool pool = new BufferPool(150);
+		byte[] first = pool.acquire(100);
+		byte[] second = pool.acquire(100);
+		pool.release(first);
+		pool.release(second);
+
+		assertEquals(100, pool.getPooledBytes());
+		assertEquals(0, pool.getLeasedBytes());
+	}
+
+	@Test
+	public void tryAcquireStaysWithinTheBudget() {
+		BufferPool pool = new BufferPool(0, 250);
+		assertNotNull(pool.tryAcquire(100));
+		assertNotNull(pool.tryAcquire(100));
+
+		assertNull(pool.tryAcquire(100));
+		assertEquals(200, pool.getLeasedBytes());
+		// the buffer that is filled is always granted
+		assertNotNull(pool.acquire(100));
+		assertEquals(300, pool.getLeasedBytes());
+	}
+
+	@Test
+	public void idleBuffersCountAgainstTheBudget() {
+		BufferPool pool = new BufferPool(1000, 300);
+		pool.release(pool.acquire(250));
+		assertEquals(250, pool.getPooledBytes());
+
+		byte[] buffer = pool.acquire(100);
+		pool.release(buffer);
+		assertEquals(250, pool.getPooledBytes());
+	}
+
+	@Test
+	public void exchangeKeepsTheSmallerBufferWithoutRoom() {
+		BufferPool pool = new BufferPool(0, 300);
+		byte[] buffer = pool.acquire(100);
+		pool.acquire(150);
+
+		assertSame(buffer, pool.exchange(buffer, 250));
+		assertEquals(250, pool.getLeasedBytes());
+		assertEquals(50, pool.exchange(buffer, 50).length);
+		assertEquals(200, pool.getLeasedBytes());
+	}
+
+	@Test
+	public void pressureStartsAtMostOfTheBudget() {
+		BufferPool pool = new BufferPool(0, 1000);
+		byte[] buffer = pool.acquire(900);
+		assertFalse(pool.isUnderPressure());
+		pool.acquire(1);
+		assertTrue(pool.isUnderPressure());
+
+		pool.release(buffer);
+		assertFalse(pool.isUnderPressure());
+	}
+
+	@Test
+	public void writerIsAskedToFlushUnderPressure() throws Exception {
+		BufferPool pool = new BufferPool(0, 1000);
+		final ByteArrayOutputStream file = new ByteArrayOutputStream();
+		AsyncBufferWriter writer = new AsyncBufferWriter(file, 500, 1, false, Executors.defaultThreadFactory(),
+				"\n".getBytes(), pool);
+		writer.write("buffered".getBytes());
+
+		pool.acquire(450);
+		writer.shrinkIfRequested();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (file.size() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals("buffered\n", file.toString());
+		writer.close();
+	}
+}
@@ -0,0 +1,232 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EpochPartsTest {
+
+	private File fDirectory;
+	private String fTarget;
+	private final LocalHdfsClient fClient = new LocalHdfsClient();
+	private final List<String> fCommittedFiles = new ArrayList<String>();
+
+	@Before
+	public void createDirectory() throws Exception {
+		fDirectory = Files.createTempDirectory("parts").toFile();
+		fTarget = fDirectory.getPath() + "/out.txt";
+	}
+
+	@After
+	public void deleteDirectory() {
+		for (File file : fDirectory.listFiles()) {
+			file.delete();
+		}
+		fDirectory.delete();
+	}
+
+	private EpochParts createParts() {
+		return new EpochParts(fClient, "sink", new LatencyStatistics(), new EpochParts.CommitListener() {
+			@Override
+			public void fileCommitted(String target) {
+				fCommittedFiles.add(target);
+			}
+		});
+	}
+
+	/**
+	 * Write the content to a new part of the target and close it.
+	 */
+	private String writePart(EpochParts parts, String content, boolean last) throws IOException {
+		String path = parts.newPartPath(fTarget);
+		write(path, content);
+		parts.partClosed(path, fTarget, !content.isEmpty(), last);
+		return path;
+	}
+
+	private static void write(String path, String content) throws IOException {
+		Files.write(new File(path).toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String read(String path) throws IOException {
+		return new String(Files.readAllBytes(new File(path).toPath()), StandardCharsets.UTF_8);
+	}
+
+	private static byte[] checkpoint(EpochParts parts, long id) throws IOException {
+		ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(checkpoint);
+		parts.checkpoint(id, out);
+		out.close();
+		return checkpoint.toByteArray();
+	}
+
+	private static ObjectInputStream restore(byte[] checkpoint) throws IOException {
+		return new ObjectInputStream(new ByteArrayInputStream(checkpoint));
+	}
+
+	private List<String> listDirectory() {
+		List<String> names = new ArrayList<String>(Arrays.asList(fDirectory.list()));
+		Collections.sort(names);
+		return names;
+	}
+
+	@Test
+	public void partsAreHiddenAndLabeledWithTheEpoch() throws Exception {
+		EpochParts parts = createParts();
+		assertEquals(fDirectory.getPath() + "/.out.txt.sink.epoch-0-0", parts.newPartPath(fTarget));
+		assertEquals(fDirectory.getPath() + "/.out.txt.sink.epoch-0-1", parts.newPartPath(fTarget));
+		checkpoint(parts, 4);
+		assertEquals(fDirectory.getPath() + "/.out.txt.sink.epoch-4-2", parts.newPartPath(fTarget));
+	}
+
+	@Test
+	public void partsAreCommittedInOrderOfTheCheckpoints() throws Exception {
+		EpochParts parts = createParts();
+		String first = writePart(parts, "a\n", false);
+		checkpoint(parts, 1);
+		String second = writePart(parts, "b\n", true);
+		checkpoint(parts, 2);
+
+		parts.commit(1);
+		assertEquals("a\n", read(fTarget));
+		assertFalse(new File(first).exists());
+		// the file is reported once its last part is committed
+		assertEquals(Collections.emptyList(), fCommittedFiles);
+
+		parts.commit(2);
+		assertEquals("a\nb\n", read(fTarget));
+		assertFalse(new File(second).exists());
+		assertEquals(Arrays.asList(fTarget), fCommittedFiles);
+
+		// committing again does nothing
+		parts.commit(2);
+		assertEquals("a\nb\n", read(fTarget));
+		assertEquals(1, fCommittedFiles.size());
+	}
+
+	@Test
+	public void firstPartReplacesAnExistingFile() throws Exception {
+		write(fTarget, "old\n");
+		EpochParts parts = createParts();
+		writePart(parts, "new\n", true);
+		checkpoint(parts, 1);
+
+		parts.commit(1);
+		assertEquals("new\n", read(fTarget));
+	}
+
+	@Test
+	public void emptyLastPartIsDeletedAndEndsTheFile() throws Exception {
+		EpochParts parts = createParts();
+		writePart(parts, "a\n", false);
+		checkpoint(parts, 1);
+		String empty = writePart(parts, "", true);
+		assertFalse(new File(empty).exists());
+		checkpoint(parts, 2);
+
+		parts.commit(2);
+		assertEquals("a\n", read(fTarget));
+		assertEquals(Arrays.asList(fTarget), fCommittedFiles);
+	}
+
+	@Test
+	public void failedPartIsCommittedAgain() throws Exception {
+		EpochParts parts = createParts();
+		String part = writePart(parts, "a\n", true);
+		checkpoint(parts, 1);
+
+		fClient.failRenames = true;
+		try {
+			parts.commit(1);
+			fail("The commit of the part did not fail");
+		} catch (IOException e) {
+			// expected, the part stays uncommitted
+		}
+		assertTrue(new File(part).exists());
+		assertFalse(new File(fTarget).exists());
+
+		fClient.failRenames = false;
+		parts.commit(1);
+		assertEquals("a\n", read(fTarget));
+		assertEquals(Arrays.asList(fTarget), fCommittedFiles);
+	}
+
+	@Test
+	public void resetCommitsTheCheckpointAndDeletesLaterParts() throws Exception {
+		EpochParts parts = createParts();
+		writePart(parts, "a\n", false);
+		byte[] checkpoint = checkpoint(parts, 1);
+		writePart(parts, "b\n", false);
+		// parts that a previous launch left, of this operator and of another one
+		write(fDirectory.getPath() + "/.out.txt.sink.epoch-5-0", "c\n");
+		write(fDirectory.getPath() + "/.out.txt.other.epoch-5-0", "d\n");
+
+		// the PE restarts, the checkpoint was not retired
+		EpochParts restarted = createParts();
+		restarted.reset(1, restore(checkpoint), fTarget);
+
+		assertEquals(Arrays.asList(".out.txt.other.epoch-5-0", "out.txt"), listDirectory());
+		assertEquals("a\n", read(fTarget));
+		// the file continues, it is reported with its last part
+		assertEquals(Collections.emptyList(), fCommittedFiles);
+
+		// the file continues with a part of the epoch after the checkpoint
+		writePart(restarted, "e\n", true);
+		checkpoint(restarted, 2);
+		restarted.commit(2);
+		assertEquals("a\ne\n", read(fTarget));
+		assertEquals(Arrays.asList(fTarget), fCommittedFiles);
+	}
+
+	@Test
+	public void resetDropsThePartsThatAreNotCheckpointed() throws Exception {
+		EpochParts parts = createParts();
+		writePart(parts, "a\n", true);
+		byte[] checkpoint = checkpoint(parts, 1);
+		writePart(parts, "b\n", true);
+		checkpoint(parts, 2);
+
+		parts.reset(1, restore(checkpoint), null);
+		parts.commit(2);
+		assertEquals(Arrays.asList("out.txt"), listDirectory());
+		assertEquals("a\n", read(fTarget));
+		assertEquals(Arrays.asList(fTarget), fCommittedFiles);
+	}
+
+	@Test
+	public void resetToInitialStateDeletesAllParts() throws Exception {
+		EpochParts parts = createParts();
+		writePart(parts, "a\n", true);
+		checkpoint(parts, 1);
+		writePart(parts, "b\n", false);
+		write(fDirectory.getPath() + "/.out.txt.sink.epoch-0-7", "c\n");
+
+		parts.resetToInitialState(fTarget);
+		parts.commit(1);
+		assertEquals(Collections.emptyList(), listDirectory());
+		assertEquals(Collections.emptyList(), fCommittedFiles);
+		assertEquals(fDirectory.getPath() + "/.out.txt.sink.epoch-0-2", parts.newPartPath(fTarget));
+	}
+}
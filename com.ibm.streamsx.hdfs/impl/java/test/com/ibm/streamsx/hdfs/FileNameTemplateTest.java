@@ -0,0 +1,84 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class FileNameTemplateTest {
+
+	private static final DateTimeFormatter DAY = FileNameTemplate.ofTimeFormat("yyyyMMdd").withZone(ZoneOffset.UTC);
+
+	@Test
+	public void staticVariablesAreResolvedOnce() {
+		Map<String, String> staticValues = new HashMap<String, String>();
+		staticValues.put(IHdfsConstants.FILE_VAR_HOST, "host1");
+		staticValues.put(IHdfsConstants.FILE_VAR_PEID, "7");
+		FileNameTemplate template = new FileNameTemplate("/data/%HOST/out-%PEID-%FILENUM.txt", staticValues, DAY);
+
+		assertEquals("/data/host1/out-7-3.txt", template.format(Instant.EPOCH, 3, 0));
+		assertEquals("/data/host1/out-7-4.txt", template.format(Instant.EPOCH, 4, 0));
+	}
+
+	@Test
+	public void timeAndStripeAreResolvedPerName() {
+		FileNameTemplate template = new FileNameTemplate("%TIME_%STRIPE.csv", Collections.<String, String> emptyMap(),
+				DAY);
+
+		assertEquals("19700102_5.csv", template.format(Instant.ofEpochSecond(86400), 0, 5));
+	}
+
+	@Test
+	public void unknownVariablesAreKept() {
+		FileNameTemplate template = new FileNameTemplate("a%b%%FILENUM%", Collections.<String, String> emptyMap(), DAY);
+
+		assertEquals("a%b%7%", template.format(Instant.EPOCH, 7, 0));
+	}
+
+	@Test
+	public void nameWithoutVariablesIsTheTemplate() {
+		FileNameTemplate template = new FileNameTemplate("/data/out.txt", Collections.<String, String> emptyMap(), DAY);
+
+		assertSame(template.format(Instant.EPOCH, 1, 0), template.format(Instant.now(), 2, 3));
+		assertEquals("/data/out.txt", template.format(Instant.EPOCH, 1, 0));
+	}
+
+	@Test
+	public void timeFormatFormatsLikeSimpleDateFormat() {
+		String[] patterns = { "yyyyMMdd_HHmmss", "yyyy-MM-dd'T'HH:mm:ss.SSSZ", "yy/M/d u E EEEE a h:m:s S SS SSSS",
+				"YYYY-'W'ww-u", "G MMM MMMM LLL D DDD F W w k K z zzzz X XX XXX", "'it''s' '' HH",
+				"yyy y yyyyy MMMMM EEEEE", "hh 'o''clock' a" };
+		long[] times = { 0L, 1417363200123L, 1700000000999L, 1230768000000L, 1262217600000L };
+		for (String pattern : patterns) {
+			DateTimeFormatter formatter = FileNameTemplate.ofTimeFormat(pattern).withZone(ZoneId.systemDefault());
+			for (long time : times) {
+				assertEquals(pattern, new SimpleDateFormat(pattern).format(new Date(time)),
+						formatter.format(Instant.ofEpochMilli(time)));
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownPatternLetterIsRejected() {
+		FileNameTemplate.ofTimeFormat("yyyy q");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unterminatedQuoteIsRejected() {
+		FileNameTemplate.ofTimeFormat("yyyy'MM");
+	}
+}
@@ -0,0 +1,88 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.ibm.streams.operator.Type.MetaType;
+
+public class HdfsFilePoolTest {
+
+	private static HdfsFile file(String path) {
+		return new HdfsFile(null, path, null, null, 0, MetaType.RSTRING);
+	}
+
+	@Test
+	public void eldestIsTheLeastRecentlyUsedFile() {
+		HdfsFilePool pool = new HdfsFilePool(3);
+		HdfsFile a = file("/a");
+		HdfsFile b = file("/b");
+		HdfsFile c = file("/c");
+		pool.put("a", a);
+		pool.put("b", b);
+		pool.put("c", c);
+		assertSame(a, pool.eldest());
+
+		assertSame(a, pool.get("a"));
+		assertSame(b, pool.eldest());
+		assertEquals(Arrays.asList(b, c, a), pool.files());
+	}
+
+	@Test
+	public void poolIsFullAtTheMaximum() {
+		HdfsFilePool pool = new HdfsFilePool(2);
+		pool.put("a", file("/a"));
+		assertFalse(pool.isFull());
+		pool.put("b", file("/b"));
+		assertTrue(pool.isFull());
+
+		assertFalse(new HdfsFilePool(0).isFull());
+		assertEquals(1, new HdfsFilePool(0).getMaxOpenFiles());
+	}
+
+	@Test
+	public void fileIsRemovedRegardlessOfItsKey() {
+		HdfsFilePool pool = new HdfsFilePool(2);
+		HdfsFile a = file("/a");
+		pool.put("key", a);
+
+		assertTrue(pool.remove(a));
+		assertFalse(pool.remove(a));
+		assertFalse(pool.contains(a));
+		assertNull(pool.get("key"));
+		assertNull(pool.eldest());
+	}
+
+	@Test
+	public void idleFilesAreThoseUnusedSinceTheTime() throws Exception {
+		HdfsFilePool pool = new HdfsFilePool(3);
+		HdfsFile a = file("/a");
+		HdfsFile b = file("/b");
+		HdfsFile c = file("/c");
+		pool.put("a", a);
+		pool.put("b", b);
+		Thread.sleep(20);
+		long before = System.currentTimeMillis();
+		Thread.sleep(20);
+		pool.put("c", c);
+
+		assertEquals(Arrays.asList(a, b), pool.idleFiles(before));
+		assertEquals(Collections.<HdfsFile> emptyList(), pool.idleFiles(0));
+
+		// using a file ends its idle time
+		pool.get("a");
+		assertEquals(Arrays.asList(b), pool.idleFiles(before));
+		assertEquals(Arrays.asList(b, c, a), pool.idleFiles(System.currentTimeMillis() + 1));
+	}
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.Type.MetaType;
+
+public class HivePartitionerTest {
+
+	private static final StreamSchema SCHEMA = TestTuples.schema("data", MetaType.USTRING, "dt", MetaType.USTRING,
+			"hour", MetaType.INT32);
+
+	@Test
+	public void partitionHasALevelPerAttribute() {
+		HivePartitioner partitioner = new HivePartitioner(SCHEMA, Arrays.asList("dt", "hour"));
+
+		assertEquals("dt=2026-10-18/hour=7", partitioner.getPartition(TestTuples.tuple(SCHEMA, "x", "2026-10-18", 7)));
+		assertEquals(1, partitioner.getIndexes()[0]);
+	}
+
+	@Test
+	public void specialCharactersAreEscaped() {
+		HivePartitioner partitioner = new HivePartitioner(SCHEMA, Arrays.asList("dt"));
+
+		assertEquals("dt=a%2Fb%3Ac%25FILENUM%3D%01 ok",
+				partitioner.getPartition(TestTuples.tuple(SCHEMA, "x", "a/b:c%FILENUM=\u0001 ok", 0)));
+		assertEquals("dt=" + IHdfsConstants.PARTITION_DEFAULT_VALUE,
+				partitioner.getPartition(TestTuples.tuple(SCHEMA, "x", "", 0)));
+	}
+
+	@Test
+	public void unsignedValuesAreWrittenWithoutSign() {
+		StreamSchema schema = TestTuples.schema("u8", MetaType.UINT8, "u16", MetaType.UINT16, "u32", MetaType.UINT32,
+				"u64", MetaType.UINT64);
+		HivePartitioner partitioner = new HivePartitioner(schema, Arrays.asList("u8", "u16", "u32", "u64"));
+
+		assertEquals("u8=255/u16=65535/u32=4294967295/u64=18446744073709551615",
+				partitioner.getPartition(TestTuples.tuple(schema, (byte) -1, (short) -1, -1, -1L)));
+	}
+
+	@Test
+	public void samePartitionIsReused() {
+		HivePartitioner partitioner = new HivePartitioner(SCHEMA, Arrays.asList("dt", "hour"));
+		String partition = partitioner.getPartition(TestTuples.tuple(SCHEMA, "x", "2026-10-18", 7));
+
+		assertSame(partition, partitioner.getPartition(TestTuples.tuple(SCHEMA, "y", "2026-10-18", 7)));
+		String next = partitioner.getPartition(TestTuples.tuple(SCHEMA, "x", "2026-10-18", 8));
+		assertNotSame(partition, next);
+		assertEquals("dt=2026-10-18/hour=8", next);
+	}
+
+	@Test
+	public void onlyScalarTypesSelectPartitions() {
+		assertTrue(HivePartitioner.isSupported(MetaType.RSTRING));
+		assertTrue(HivePartitioner.isSupported(MetaType.UINT64));
+		assertFalse(HivePartitioner.isSupported(MetaType.FLOAT64));
+		assertFalse(HivePartitioner.isSupported(MetaType.TIMESTAMP));
+	}
+}
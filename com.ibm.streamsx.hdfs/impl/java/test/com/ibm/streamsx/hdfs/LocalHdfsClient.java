@@ -0,0 +1,135 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import com.ibm.streamsx.hdfs.client.HdfsCreateOptions;
+import com.ibm.streamsx.hdfs.client.IHdfsClient;
+
+/**
+ * Client of the local file system for the unit tests, the paths are local paths.
+ * Concatenating appends the sources to the target and deletes them, like HDFS.
+ */
+class LocalHdfsClient implements IHdfsClient {
+
+	// the renames fail while set
+	volatile boolean failRenames = false;
+
+	@Override
+	public FileSystem connect(String fileSystemUri, String hdfsUser, String configPath) {
+		return null;
+	}
+
+	@Override
+	public InputStream getInputStream(String filePath) throws IOException {
+		return new FileInputStream(filePath);
+	}
+
+	@Override
+	public OutputStream getOutputStream(String filePath, boolean append) throws IOException {
+		return new FileOutputStream(filePath, append);
+	}
+
+	@Override
+	public OutputStream getOutputStream(String filePath, boolean append, HdfsCreateOptions options)
+			throws IOException {
+		return getOutputStream(filePath, append);
+	}
+
+	@Override
+	public FileStatus[] scanDirectory(String dirPath, String filter) throws IOException {
+		List<FileStatus> statuses = new ArrayList<FileStatus>();
+		File[] files = new File(dirPath).listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (filter == null || filter.isEmpty() || file.getName().matches(filter)) {
+					statuses.add(new FileStatus(file.length(), file.isDirectory(), 1, 0, file.lastModified(),
+							new Path(file.getPath())));
+				}
+			}
+		}
+		return statuses.toArray(new FileStatus[statuses.size()]);
+	}
+
+	@Override
+	public boolean exists(String filePath) {
+		return new File(filePath).exists();
+	}
+
+	@Override
+	public boolean isDirectory(String filePath) {
+		return new File(filePath).isDirectory();
+	}
+
+	@Override
+	public long getFileSize(String filename) {
+		return new File(filename).length();
+	}
+
+	@Override
+	public boolean rename(String src, String dst) {
+		return !failRenames && new File(src).renameTo(new File(dst));
+	}
+
+	@Override
+	public boolean delete(String filePath, boolean recursive) {
+		return new File(filePath).delete();
+	}
+
+	@Override
+	public void truncate(String filePath, long length) throws IOException {
+		try (FileChannel channel = FileChannel.open(new File(filePath).toPath(), StandardOpenOption.WRITE)) {
+			channel.truncate(length);
+		}
+	}
+
+	@Override
+	public void concat(String target, String[] sources) throws IOException {
+		for (String source : sources) {
+			Files.write(new File(target).toPath(), Files.readAllBytes(new File(source).toPath()),
+					StandardOpenOption.APPEND);
+			delete(source, false);
+		}
+	}
+
+	@Override
+	public boolean canConcat() {
+		return true;
+	}
+
+	@Override
+	public void disconnect() {
+	}
+
+	@Override
+	public void setConnectionProperty(String name, String value) {
+	}
+
+	@Override
+	public String getConnectionProperty(String name) {
+		return null;
+	}
+
+	@Override
+	public Map<String, String> getConnectionProperties() {
+		return null;
+	}
+}
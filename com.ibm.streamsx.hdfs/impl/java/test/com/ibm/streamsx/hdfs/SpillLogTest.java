@@ -0,0 +1,114 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SpillLogTest {
+
+	private File fDirectory;
+
+	@Before
+	public void createDirectory() throws Exception {
+		fDirectory = Files.createTempDirectory("spill").toFile();
+	}
+
+	@After
+	public void deleteDirectory() {
+		for (File file : fDirectory.listFiles()) {
+			file.delete();
+		}
+		fDirectory.delete();
+	}
+
+	@Test
+	public void replayWritesTheContentInOrder() throws Exception {
+		SpillLog log = new SpillLog(fDirectory, 1000);
+		log.append("hello ".getBytes(), 0, 6);
+		log.append("xworldx".getBytes(), 1, 5);
+		assertEquals(11, log.size());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		log.replay(out);
+		assertEquals("hello world", out.toString());
+
+		// the log is not changed by the replay
+		out.reset();
+		log.replay(out);
+		assertEquals("hello world", out.toString());
+		log.close(true);
+	}
+
+	@Test
+	public void replayCopiesLargeContentInChunks() throws Exception {
+		SpillLog log = new SpillLog(fDirectory, Long.MAX_VALUE);
+		byte[] content = new byte[3 * 1024 * 1024 + 17];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+		log.append(content, 0, content.length);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		log.replay(out);
+		assertArrayEquals(content, out.toByteArray());
+		log.close(true);
+	}
+
+	@Test
+	public void clearDropsTheContent() throws Exception {
+		SpillLog log = new SpillLog(fDirectory, 1000);
+		log.append("synced".getBytes(), 0, 6);
+		log.clear();
+		assertEquals(0, log.size());
+		log.append("next".getBytes(), 0, 4);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		log.replay(out);
+		assertEquals("next", out.toString());
+		log.close(true);
+	}
+
+	@Test
+	public void contentFitsUpToTheMaximumSize() throws Exception {
+		SpillLog log = new SpillLog(fDirectory, 10);
+		// content larger than the log fits into an empty log
+		assertTrue(log.fits(100));
+		log.append("123456".getBytes(), 0, 6);
+
+		assertTrue(log.fits(4));
+		assertFalse(log.fits(5));
+		log.close(true);
+	}
+
+	@Test
+	public void fileIsCreatedByTheFirstAppendAndKeptOnRequest() throws Exception {
+		SpillLog log = new SpillLog(fDirectory, 1000);
+		assertEquals(fDirectory.getPath(), log.getPath());
+		assertEquals(0, fDirectory.listFiles().length);
+
+		log.append("kept".getBytes(), 0, 4);
+		File file = new File(log.getPath());
+		assertTrue(file.exists());
+		log.close(false);
+		assertEquals(4, file.length());
+
+		log = new SpillLog(fDirectory, 1000);
+		log.append("deleted".getBytes(), 0, 7);
+		file = new File(log.getPath());
+		log.close(true);
+		assertFalse(file.exists());
+	}
+}
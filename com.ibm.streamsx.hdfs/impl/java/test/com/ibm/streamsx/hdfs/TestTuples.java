@@ -0,0 +1,135 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.ibm.streams.operator.Attribute;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type;
+import com.ibm.streams.operator.Type.MetaType;
+
+/**
+ * Schemas and tuples for the unit tests, which run without the Streams runtime.
+ * The tuples hold the values in the Java types of the Streams Java Operator API.
+ */
+class TestTuples {
+
+	/**
+	 * @param namesAndTypes	name and meta type of each attribute, in order
+	 */
+	static StreamSchema schema(Object... namesAndTypes) {
+		final List<Attribute> attributes = new ArrayList<Attribute>();
+		for (int i = 0; i < namesAndTypes.length; i += 2) {
+			attributes.add(attribute(attributes.size(), (String) namesAndTypes[i], (MetaType) namesAndTypes[i + 1]));
+		}
+		return proxy(StreamSchema.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				String name = method.getName();
+				if (name.equals("getAttributeCount")) {
+					return attributes.size();
+				}
+				if (name.equals("getAttribute") && args[0] instanceof Integer) {
+					return attributes.get((Integer) args[0]);
+				}
+				if (name.equals("getAttribute")) {
+					for (Attribute attribute : attributes) {
+						if (attribute.getName().equals(args[0])) {
+							return attribute;
+						}
+					}
+					return null;
+				}
+				if (name.equals("getAttributeNames")) {
+					Set<String> names = new LinkedHashSet<String>();
+					for (Attribute attribute : attributes) {
+						names.add(attribute.getName());
+					}
+					return names;
+				}
+				if (name.equals("iterator")) {
+					return attributes.iterator();
+				}
+				return objectMethod(proxy, method, args);
+			}
+		});
+	}
+
+	/**
+	 * @param values	the value of each attribute, in order
+	 */
+	static Tuple tuple(final StreamSchema schema, final Object... values) {
+		return proxy(Tuple.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				String name = method.getName();
+				if (name.equals("getStreamSchema")) {
+					return schema;
+				}
+				if (name.startsWith("get") && args != null && args.length == 1) {
+					int index = (args[0] instanceof Integer) ? (Integer) args[0]
+							: schema.getAttribute((String) args[0]).getIndex();
+					return name.equals("getString") ? values[index].toString() : values[index];
+				}
+				return objectMethod(proxy, method, args);
+			}
+		});
+	}
+
+	private static Attribute attribute(final int index, final String name, final MetaType metaType) {
+		final Type type = proxy(Type.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("getMetaType")) {
+					return metaType;
+				}
+				if (method.getName().equals("getLanguageType")) {
+					return metaType.name().toLowerCase();
+				}
+				return objectMethod(proxy, method, args);
+			}
+		});
+		return proxy(Attribute.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("getIndex")) {
+					return index;
+				}
+				if (method.getName().equals("getName")) {
+					return name;
+				}
+				if (method.getName().equals("getType")) {
+					return type;
+				}
+				return objectMethod(proxy, method, args);
+			}
+		});
+	}
+
+	private static Object objectMethod(Object proxy, Method method, Object[] args) {
+		if (method.getName().equals("equals")) {
+			return proxy == args[0];
+		}
+		if (method.getName().equals("hashCode")) {
+			return System.identityHashCode(proxy);
+		}
+		if (method.getName().equals("toString")) {
+			return method.getDeclaringClass().getSimpleName();
+		}
+		throw new UnsupportedOperationException(method.toString());
+	}
+
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(TestTuples.class.getClassLoader(), new Class<?>[] { type }, handler));
+	}
+}
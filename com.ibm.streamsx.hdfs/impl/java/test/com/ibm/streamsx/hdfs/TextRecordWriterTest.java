@@ -0,0 +1,112 @@
+/*******************************************************************************
+* Copyright (C) 2014-2019, International Business Machines Corporation
+* All Rights Reserved
+*******************************************************************************/
+package com.ibm.streamsx.hdfs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type.MetaType;
+import com.ibm.streams.operator.types.RString;
+import com.ibm.streams.operator.types.Timestamp;
+
+public class TextRecordWriterTest {
+
+	/**
+	 * @return the lines of the tuples written in the format
+	 */
+	private static String write(StreamSchema schema, Collection<Integer> excluded, FileFormat format, String delimiter,
+			Object[]... tuples) throws Exception {
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		// small buffers, so that values are split across buffers
+		AsyncBufferWriter out = new AsyncBufferWriter(file, 16, 2, false, Executors.defaultThreadFactory(),
+				"\n".getBytes(), new BufferPool(0));
+		TextRecordWriter writer = new TextRecordFormat(schema, excluded, format, delimiter).createWriter(out);
+		for (Object[] values : tuples) {
+			Tuple tuple = TestTuples.tuple(schema, values);
+			writer.write(tuple);
+		}
+		out.close();
+		return new String(file.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void csvValuesAreQuotedWhereNeeded() throws Exception {
+		StreamSchema schema = TestTuples.schema("a", MetaType.RSTRING, "b", MetaType.USTRING, "c", MetaType.INT32);
+
+		assertEquals("plain,\"say \"\"hi\"\", ok\",-5\n\"two\nlines\",,0\n",
+				write(schema, Collections.<Integer> emptySet(), FileFormat.csv, ",",
+						new Object[] { new RString("plain"), "say \"hi\", ok", -5 },
+						new Object[] { new RString("two\nlines"), "", 0 }));
+	}
+
+	@Test
+	public void csvQuotesValuesWithTheDelimiter() throws Exception {
+		StreamSchema schema = TestTuples.schema("a", MetaType.RSTRING, "b", MetaType.RSTRING);
+
+		assertEquals("\"a|b\"|a,b\n", write(schema, Collections.<Integer> emptySet(), FileFormat.csv, "|",
+				new Object[] { new RString("a|b"), new RString("a,b") }));
+	}
+
+	@Test
+	public void delimitedValuesAreNeverQuoted() throws Exception {
+		StreamSchema schema = TestTuples.schema("a", MetaType.RSTRING, "b", MetaType.RSTRING);
+
+		assertEquals("a\"b\ta|b\n", write(schema, Collections.<Integer> emptySet(), FileFormat.delimited, "\t",
+				new Object[] { new RString("a\"b"), new RString("a|b") }));
+	}
+
+	@Test
+	public void jsonStringsAreEscaped() throws Exception {
+		StreamSchema schema = TestTuples.schema("s", MetaType.RSTRING, "u", MetaType.USTRING, "n", MetaType.INT64);
+
+		assertEquals("{\"s\":\"q\\\"b\\\\n\\n\\t\\u0001\",\"u\":\"caf\u00e9\",\"n\":1}\n",
+				write(schema, Collections.<Integer> emptySet(), FileFormat.json, ",",
+						new Object[] { new RString("q\"b\\n\n\t\u0001"), "caf\u00e9", 1L }));
+	}
+
+	@Test
+	public void unsignedValuesAreWrittenWithoutSign() throws Exception {
+		StreamSchema schema = TestTuples.schema("u8", MetaType.UINT8, "u16", MetaType.UINT16, "u32", MetaType.UINT32,
+				"u64", MetaType.UINT64, "i64", MetaType.INT64, "i8", MetaType.INT8);
+
+		assertEquals("255,65535,4294967295,18446744073709551615,-9223372036854775808,-128\n"
+				+ "1,2,3,9223372036854775807,0,127\n",
+				write(schema, Collections.<Integer> emptySet(), FileFormat.csv, ",",
+						new Object[] { (byte) -1, (short) -1, -1, -1L, Long.MIN_VALUE, Byte.MIN_VALUE },
+						new Object[] { (byte) 1, (short) 2, 3, Long.MAX_VALUE, 0L, Byte.MAX_VALUE }));
+	}
+
+	@Test
+	public void nonFiniteNumbersAreNullInJson() throws Exception {
+		StreamSchema schema = TestTuples.schema("f", MetaType.FLOAT32, "d", MetaType.FLOAT64, "b", MetaType.BOOLEAN);
+
+		assertEquals("{\"f\":null,\"d\":null,\"b\":true}\n{\"f\":1.5,\"d\":-0.25,\"b\":false}\n",
+				write(schema, Collections.<Integer> emptySet(), FileFormat.json, ",",
+						new Object[] { Float.NaN, Double.POSITIVE_INFINITY, true },
+						new Object[] { 1.5f, -0.25d, false }));
+		assertEquals("NaN,Infinity\n", write(TestTuples.schema("f", MetaType.FLOAT32, "d", MetaType.FLOAT64),
+				Collections.<Integer> emptySet(), FileFormat.csv, ",",
+				new Object[] { Float.NaN, Double.POSITIVE_INFINITY }));
+	}
+
+	@Test
+	public void excludedAttributesAreNotWritten() throws Exception {
+		StreamSchema schema = TestTuples.schema("file", MetaType.RSTRING, "ts", MetaType.TIMESTAMP, "n",
+				MetaType.INT16);
+
+		assertEquals("{\"ts\":1500000,\"n\":-2}\n", write(schema, Arrays.asList(0), FileFormat.json, ",",
+				new Object[] { new RString("/data/out.json"), new Timestamp(1, 500000000), (short) -2 }));
+	}
+}